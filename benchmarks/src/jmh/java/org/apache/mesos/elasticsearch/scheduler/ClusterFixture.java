@@ -0,0 +1,92 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.common.cli.ElasticsearchCLIParameter;
+import org.apache.mesos.elasticsearch.common.cli.ZookeeperCLIParameter;
+import org.apache.mesos.elasticsearch.scheduler.cluster.NodeLivenessProbe;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.state.TestSerializableStateImpl;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+
+import java.util.Arrays;
+
+/**
+ * A registered framework with a cluster of running tasks, all in memory. Every task runs on its own slave. The tasks
+ * point at 127.0.0.1 with ports nothing listens on, so health checks of the cluster fail fast. The liveness probe has
+ * run once, and is not scheduled.
+ */
+public class ClusterFixture {
+    public static final String HOSTNAME = "localhost";
+
+    public final Configuration configuration;
+    public final FrameworkState frameworkState;
+    public final ClusterState clusterState;
+    public final TaskInfoFactory taskInfoFactory;
+    public final NodeLivenessProbe livenessProbe;
+    public final Clock clock = new Clock();
+
+    /**
+     * @param taskCount the number of running tasks. The configured cluster size is the smallest odd number that is at
+     *                  least as large, since elasticsearch requires an odd number of nodes.
+     * @param args      additional configuration arguments
+     */
+    public ClusterFixture(int taskCount, String... args) {
+        String[] configurationArgs = Arrays.copyOf(new String[]{
+                ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "zk://localhost:2181/mesos",
+                ElasticsearchCLIParameter.ELASTICSEARCH_NODES, Integer.toString(taskCount | 1)
+        }, 4 + args.length);
+        System.arraycopy(args, 0, configurationArgs, 4, args.length);
+        configuration = new Configuration(configurationArgs);
+
+        TestSerializableStateImpl state = new TestSerializableStateImpl();
+        frameworkState = new FrameworkState(state);
+        frameworkState.markRegistered(Protos.FrameworkID.newBuilder().setValue("benchmark-framework").build(), null);
+        clusterState = new ClusterState(state, frameworkState);
+        taskInfoFactory = new TaskInfoFactory(clusterState);
+
+        Protos.TaskInfo template = taskInfoFactory.createTask(configuration, frameworkState, offer("template"), clock);
+        for (int i = 0; i < taskCount; i++) {
+            Protos.TaskInfo taskInfo = Protos.TaskInfo.newBuilder(template)
+                    .setTaskId(Protos.TaskID.newBuilder().setValue("elasticsearch_" + HOSTNAME + "_" + i))
+                    .setSlaveId(Protos.SlaveID.newBuilder().setValue("slave-" + i))
+                    .build();
+            clusterState.addTask(taskInfo);
+            clusterState.update(Protos.TaskStatus.newBuilder()
+                    .setTaskId(taskInfo.getTaskId())
+                    .setState(Protos.TaskState.TASK_RUNNING)
+                    .build());
+        }
+        clusterState.flush();
+        livenessProbe = new NodeLivenessProbe(clusterState, configuration);
+        livenessProbe.run();
+    }
+
+    /**
+     * @return an offer from the given slave, large enough for a task
+     */
+    public static Protos.Offer offer(String slaveId) {
+        return Protos.Offer.newBuilder()
+                .setId(Protos.OfferID.newBuilder().setValue("offer-" + slaveId))
+                .setFrameworkId(Protos.FrameworkID.newBuilder().setValue("benchmark-framework"))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue(slaveId))
+                .setHostname(HOSTNAME)
+                .addResources(scalar(Resources.RESOURCE_CPUS, 8))
+                .addResources(scalar(Resources.RESOURCE_MEM, 65536))
+                .addResources(scalar(Resources.RESOURCE_DISK, 1048576))
+                .addResources(Protos.Resource.newBuilder()
+                        .setName(Resources.RESOURCE_PORTS)
+                        .setType(Protos.Value.Type.RANGES)
+                        .setRanges(Protos.Value.Ranges.newBuilder()
+                                .addRange(Protos.Value.Range.newBuilder().setBegin(31000).setEnd(32000))))
+                .build();
+    }
+
+    private static Protos.Resource scalar(String name, double value) {
+        return Protos.Resource.newBuilder()
+                .setName(name)
+                .setType(Protos.Value.Type.SCALAR)
+                .setScalar(Protos.Value.Scalar.newBuilder().setValue(value))
+                .build();
+    }
+}
@@ -0,0 +1,36 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the task list shown by the GUI and the tasks endpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClusterStateBenchmark {
+    @Param({"3", "10", "100", "1000"})
+    public int taskCount;
+
+    private ClusterFixture fixture;
+
+    @Setup
+    public void setUp() {
+        fixture = new ClusterFixture(taskCount);
+    }
+
+    @Benchmark
+    public Map<String, Task> getGuiTaskList() {
+        return fixture.clusterState.getGuiTaskList();
+    }
+}
@@ -0,0 +1,42 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the elasticsearch command line arguments of a new node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigurationBenchmark {
+    @Param({"3", "10", "100", "1000"})
+    public int taskCount;
+
+    private ClusterFixture fixture;
+    private Protos.DiscoveryInfo discoveryInfo;
+    private Protos.SlaveID slaveID;
+
+    @Setup
+    public void setUp() {
+        fixture = new ClusterFixture(taskCount);
+        Protos.TaskInfo taskInfo = fixture.clusterState.getTaskList().get(0);
+        discoveryInfo = taskInfo.getDiscovery();
+        slaveID = Protos.SlaveID.newBuilder().setValue("new-slave").build();
+    }
+
+    @Benchmark
+    public List<String> esArguments() {
+        return fixture.configuration.esArguments(fixture.clusterState, discoveryInfo, slaveID);
+    }
+}
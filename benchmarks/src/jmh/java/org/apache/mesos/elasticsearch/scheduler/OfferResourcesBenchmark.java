@@ -0,0 +1,64 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resource checks of the offer rules and the port selection of the task builder, once by scanning the protobuf
+ * resources for every check, and once against the resources of the offer parsed into an {@link OfferResources}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OfferResourcesBenchmark {
+    private static final double CPUS = 1;
+    private static final double MEM = 256;
+    private static final double DISK = 1024;
+    private static final int HTTP_PORT = 31200;
+    private static final int TRANSPORT_PORT = 31300;
+
+    private Protos.Offer offer;
+    private ResourceCheck cpus;
+    private ResourceCheck mem;
+    private ResourceCheck disk;
+
+    @Setup
+    public void setUp() {
+        offer = ClusterFixture.offer("new-slave");
+        cpus = new ResourceCheck(Resources.RESOURCE_CPUS);
+        mem = new ResourceCheck(Resources.RESOURCE_MEM);
+        disk = new ResourceCheck(Resources.RESOURCE_DISK);
+    }
+
+    @Benchmark
+    public void matchProtobuf(Blackhole blackhole) {
+        List<Protos.Resource> resources = offer.getResourcesList();
+        blackhole.consume(cpus.isEnough(resources, CPUS));
+        blackhole.consume(mem.isEnough(resources, MEM));
+        blackhole.consume(disk.isEnough(resources, DISK));
+        blackhole.consume(Resources.isPortAvailable(resources, HTTP_PORT));
+        blackhole.consume(Resources.isPortAvailable(resources, TRANSPORT_PORT));
+        blackhole.consume(Resources.selectTwoPortsFromRange(resources));
+    }
+
+    @Benchmark
+    public void matchParsed(Blackhole blackhole) {
+        OfferResources resources = OfferResources.of(offer, "*");
+        blackhole.consume(resources.isEnoughCpus(CPUS));
+        blackhole.consume(resources.isEnoughMem(MEM));
+        blackhole.consume(resources.isEnoughDisk(DISK));
+        blackhole.consume(resources.isPortAvailable(HTTP_PORT));
+        blackhole.consume(resources.isPortAvailable(TRANSPORT_PORT));
+        blackhole.consume(resources.selectTwoPorts());
+    }
+}
@@ -0,0 +1,67 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of an offer from a slave that already runs a task (declined by the first rule) and from a new slave
+ * (evaluated by every rule, including the cached liveness of the first node), and of a batch of offers from new slaves
+ * against one snapshot, as in a single resource offer callback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OfferStrategyBenchmark {
+    private static final int OFFERS_PER_CALLBACK = 10;
+
+    @Param({"3", "10", "100", "1000"})
+    public int taskCount;
+
+    private OfferStrategy offerStrategy;
+    private Protos.Offer busySlaveOffer;
+    private Protos.Offer newSlaveOffer;
+    private Protos.Offer[] newSlaveOffers;
+    private ClusterState clusterState;
+
+    @Setup
+    public void setUp() {
+        ClusterFixture fixture = new ClusterFixture(taskCount);
+        offerStrategy = new OfferStrategyNormal(fixture.configuration, fixture.clusterState, fixture.livenessProbe);
+        busySlaveOffer = ClusterFixture.offer("slave-" + (taskCount - 1));
+        newSlaveOffer = ClusterFixture.offer("new-slave");
+        newSlaveOffers = new Protos.Offer[OFFERS_PER_CALLBACK];
+        for (int i = 0; i < OFFERS_PER_CALLBACK; i++) {
+            newSlaveOffers[i] = ClusterFixture.offer("new-slave-" + i);
+        }
+        clusterState = fixture.clusterState;
+    }
+
+    @Benchmark
+    public OfferStrategy.OfferResult evaluateBusySlave() {
+        return offerStrategy.evaluate(busySlaveOffer);
+    }
+
+    @Benchmark
+    public OfferStrategy.OfferResult evaluateNewSlave() {
+        return offerStrategy.evaluate(newSlaveOffer);
+    }
+
+    @Benchmark
+    public void evaluateOfferBatch(Blackhole blackhole) {
+        ClusterSnapshot cluster = new ClusterSnapshot(clusterState.getTaskList());
+        for (Protos.Offer offer : newSlaveOffers) {
+            blackhole.consume(offerStrategy.evaluate(cluster, offer));
+        }
+    }
+}
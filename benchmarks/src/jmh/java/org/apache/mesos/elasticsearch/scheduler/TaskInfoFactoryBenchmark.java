@@ -0,0 +1,47 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of the TaskInfo for a new node, and parsing of a TaskInfo for the GUI.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TaskInfoFactoryBenchmark {
+    @Param({"3", "10", "100", "1000"})
+    public int taskCount;
+
+    private ClusterFixture fixture;
+    private Protos.Offer offer;
+    private Protos.TaskInfo taskInfo;
+    private Protos.TaskStatus taskStatus;
+
+    @Setup
+    public void setUp() {
+        fixture = new ClusterFixture(taskCount);
+        offer = ClusterFixture.offer("new-slave");
+        taskInfo = fixture.clusterState.getTaskList().get(0);
+        taskStatus = fixture.clusterState.getStatus(taskInfo.getTaskId()).getStatus();
+    }
+
+    @Benchmark
+    public Protos.TaskInfo createTask() {
+        return fixture.taskInfoFactory.createTask(fixture.configuration, fixture.frameworkState, offer, fixture.clock);
+    }
+
+    @Benchmark
+    public Task parse() {
+        return TaskInfoFactory.parse(taskInfo, taskStatus, fixture.clock);
+    }
+}
@@ -0,0 +1,78 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a task list with each of the state codecs: java serialization, protobuf, and protobuf
+ * compressed with deflate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StateCodecBenchmark {
+    @Param({"10", "100", "1000"})
+    public int taskCount;
+
+    @Param({"java", "protobuf", "deflate"})
+    public String codec;
+
+    private StateSerializer serializer;
+    private ArrayList<Protos.TaskInfo> taskInfos;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (codec) {
+            case "java":
+                serializer = new StateSerializer(Integer.MAX_VALUE, new JavaSerializationStateCodec());
+                break;
+            case "protobuf":
+                serializer = new StateSerializer(Integer.MAX_VALUE);
+                break;
+            default:
+                serializer = new StateSerializer();
+        }
+        taskInfos = taskInfos(taskCount);
+        bytes = serializer.serialize(taskInfos);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return serializer.serialize(taskInfos);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException, ClassNotFoundException {
+        return serializer.deserialize(bytes);
+    }
+
+    private static ArrayList<Protos.TaskInfo> taskInfos(int count) {
+        ArrayList<Protos.TaskInfo> taskInfos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Protos.TaskInfo template = ProtoTestUtil.getTaskInfoExternalVolume(i);
+            Protos.CommandInfo.Builder command = Protos.CommandInfo.newBuilder(template.getCommand());
+            for (int arg = 0; arg < 25; arg++) {
+                command.addArguments("--default.setting" + arg + "=value" + arg);
+            }
+            taskInfos.add(Protos.TaskInfo.newBuilder(template)
+                    .setTaskId(Protos.TaskID.newBuilder().setValue("elasticsearch_host" + i + "_20160101T000000.000Z"))
+                    .setSlaveId(Protos.SlaveID.newBuilder().setValue("slave-" + i))
+                    .setCommand(command)
+                    .build());
+        }
+        return taskInfos;
+    }
+}
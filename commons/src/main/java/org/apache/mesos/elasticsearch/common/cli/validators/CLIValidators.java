@@ -44,6 +44,30 @@ public class CLIValidators {
         }
     }
 
+    /**
+     * Validates a number that is zero or greater. For type Double
+     */
+    public static class NonNegativeDouble implements IValueValidator<Double> {
+        @Override
+        public void validate(String name, Double value) throws ParameterException {
+            if (value < 0) {
+                throw new ParameterException("Parameter " + name + " should not be negative (found " + value + ")");
+            }
+        }
+    }
+
+    /**
+     * Validates a number that is zero or greater. For type Long
+     */
+    public static class NonNegativeLong implements IValueValidator<Long> {
+        @Override
+        public void validate(String name, Long value) throws ParameterException {
+            if (value < 0) {
+                throw new ParameterException("Parameter " + name + " should not be negative (found " + value + ")");
+            }
+        }
+    }
+
     /**
      * Validates a positive number. For type Integer
      */
@@ -86,4 +110,60 @@ public class CLIValidators {
         }
     }
 
+    /**
+     * Ensures that the string is a comma delimited list of names, or empty. Names may only contain letters, digits, '.',
+     * '_' and '-'.
+     */
+    public static class NameList implements IParameterValidator {
+        @Override
+        public void validate(String name, String value) throws ParameterException {
+            if (value.replace(" ", "").isEmpty()) {
+                return;
+            }
+            for (String element : value.split(",", -1)) {
+                if (!element.trim().matches("[A-Za-z0-9._-]+")) {
+                    throw new ParameterException("Parameter " + name + " must be in the format 'name,name' (found " + value + ")");
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensures that the string is a comma delimited list of 'key:value' pairs, or empty.
+     */
+    public static class KeyValueList implements IParameterValidator {
+        @Override
+        public void validate(String name, String value) throws ParameterException {
+            if (value.replace(" ", "").isEmpty()) {
+                return;
+            }
+            for (String pair : value.split(",")) {
+                String[] keyValue = pair.split(":");
+                if (keyValue.length != 2 || keyValue[0].trim().isEmpty() || keyValue[1].trim().isEmpty()) {
+                    throw new ParameterException("Parameter " + name + " must be in the format 'key:value,key:value' (found " + value + ")");
+                }
+                validateValue(name, keyValue[1].trim());
+            }
+        }
+
+        protected void validateValue(String name, String value) throws ParameterException {
+        }
+    }
+
+    /**
+     * Ensures that the string is a comma delimited list of 'key:value' pairs with positive integer values, or empty.
+     */
+    public static class KeyPositiveIntegerList extends KeyValueList {
+        @Override
+        protected void validateValue(String name, String value) throws ParameterException {
+            try {
+                if (Integer.parseInt(value) <= 0) {
+                    throw new ParameterException("Parameter " + name + " values should be greater than zero (found " + value + ")");
+                }
+            } catch (NumberFormatException e) {
+                throw new ParameterException("Parameter " + name + " values must be integers (found " + value + ")");
+            }
+        }
+    }
+
 }
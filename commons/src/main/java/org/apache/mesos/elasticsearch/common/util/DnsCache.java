@@ -0,0 +1,213 @@
+package org.apache.mesos.elasticsearch.common.util;
+
+import org.apache.log4j.Logger;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches forward and reverse DNS lookups, so that a slow or flaky DNS server does not stall offer handling or the web UI.
+ *
+ * Successful lookups are cached for {@code positiveTtlMs}, failed lookups for {@code negativeTtlMs}. Once an entry has
+ * expired it is still served, and refreshed in the background, for up to {@code maxStaleMs}; after that the lookup is
+ * made again by the caller. Only lookups of hosts that have never been seen, or not for a long time, block. A failed
+ * refresh keeps the expired address, so a single DNS failure does not make a known host unresolvable.
+ */
+public class DnsCache {
+    private static final Logger LOG = Logger.getLogger(DnsCache.class);
+    public static final long DEFAULT_POSITIVE_TTL_MS = TimeUnit.MINUTES.toMillis(1);
+    public static final long DEFAULT_NEGATIVE_TTL_MS = TimeUnit.SECONDS.toMillis(10);
+    public static final long DEFAULT_MAX_STALE_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final DnsCache DEFAULT = new DnsCache();
+
+    private final long positiveTtlMs;
+    private final long negativeTtlMs;
+    private final long maxStaleMs;
+    private final Lookup<String, InetAddress> forwardLookup;
+    private final Lookup<InetAddress, String> reverseLookup;
+    private final LongSupplier clock;
+    private final Executor refreshExecutor;
+    private final Map<String, Entry<InetAddress>> forward = new ConcurrentHashMap<>();
+    private final Map<InetAddress, Entry<String>> reverse = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public DnsCache() {
+        this(DEFAULT_POSITIVE_TTL_MS, DEFAULT_NEGATIVE_TTL_MS, DEFAULT_MAX_STALE_MS,
+                InetAddress::getByName,
+                InetAddress::getHostName,
+                System::currentTimeMillis,
+                Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "dns-cache-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    public DnsCache(long positiveTtlMs, long negativeTtlMs, long maxStaleMs, Lookup<String, InetAddress> forwardLookup,
+                    Lookup<InetAddress, String> reverseLookup, LongSupplier clock, Executor refreshExecutor) {
+        this.positiveTtlMs = positiveTtlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        this.maxStaleMs = maxStaleMs;
+        this.forwardLookup = forwardLookup;
+        this.reverseLookup = reverseLookup;
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * @return the cache shared by everything in this process
+     */
+    public static DnsCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the address of the host, or empty if it cannot be resolved
+     */
+    public Optional<InetAddress> resolve(String hostname) {
+        return Optional.ofNullable(get(forward, hostname, forwardLookup));
+    }
+
+    /**
+     * Like {@code new InetSocketAddress(hostname, port)}, but resolved through the cache.
+     * @return a resolved address, or an unresolved one if the host cannot be resolved
+     */
+    public InetSocketAddress socketAddress(String hostname, int port) {
+        return resolve(hostname)
+                .map(address -> new InetSocketAddress(address, port))
+                .orElseGet(() -> InetSocketAddress.createUnresolved(hostname, port));
+    }
+
+    /**
+     * Like {@link InetAddress#getHostName()}, but resolved through the cache.
+     * @return the host name of the address, or its textual IP address if it has none
+     */
+    public String hostName(InetAddress address) {
+        final String hostName = get(reverse, address, reverseLookup);
+        return hostName == null ? address.getHostAddress() : hostName;
+    }
+
+    /**
+     * Like {@code address.getAddress().getHostName()}, but only looks up addresses that were not created with a host
+     * name, and then through the cache.
+     */
+    public String hostName(InetSocketAddress address) {
+        final String hostString = address.getHostString();
+        if (!hostString.equals(address.getAddress().getHostAddress())) {
+            return hostString;
+        }
+        return hostName(address.getAddress());
+    }
+
+    public Metrics getMetrics() {
+        Metrics metrics = new Metrics();
+        metrics.hits = hits.get();
+        metrics.negativeHits = negativeHits.get();
+        metrics.staleHits = staleHits.get();
+        metrics.misses = misses.get();
+        metrics.refreshes = refreshes.get();
+        metrics.failures = failures.get();
+        metrics.size = forward.size() + reverse.size();
+        return metrics;
+    }
+
+    private <K, V> V get(Map<K, Entry<V>> entries, K key, Lookup<K, V> lookup) {
+        final long now = clock.getAsLong();
+        final Entry<V> entry = entries.get(key);
+        if (entry == null || now >= entry.expiresAt + maxStaleMs) {
+            misses.incrementAndGet();
+            return load(entries, key, lookup, null).value;
+        }
+        if (now >= entry.expiresAt) {
+            staleHits.incrementAndGet();
+            if (entry.refreshing.compareAndSet(false, true)) {
+                refreshes.incrementAndGet();
+                try {
+                    refreshExecutor.execute(() -> load(entries, key, lookup, entry));
+                } catch (RuntimeException e) { // E.g. rejected, try again next time
+                    entry.refreshing.set(false);
+                }
+            }
+        } else if (entry.value == null) {
+            negativeHits.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry.value;
+    }
+
+    /**
+     * @param previous the expired entry that is being refreshed, if any. Kept if the lookup fails and it has a value,
+     *                 until it is too stale.
+     */
+    private <K, V> Entry<V> load(Map<K, Entry<V>> entries, K key, Lookup<K, V> lookup, Entry<V> previous) {
+        V value;
+        try {
+            value = lookup.lookup(key);
+        } catch (UnknownHostException | RuntimeException e) {
+            LOG.debug("Unable to resolve " + key + ": " + e);
+            failures.incrementAndGet();
+            value = null;
+        }
+        if (value == null && previous != null && previous.value != null) {
+            previous.refreshing.set(false); // Try again on the next stale hit
+            return previous;
+        }
+        final Entry<V> entry = new Entry<>(value, clock.getAsLong() + (value == null ? negativeTtlMs : positiveTtlMs));
+        entries.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * A DNS lookup
+     * @param <K> what is looked up
+     * @param <V> the result
+     */
+    @FunctionalInterface
+    public interface Lookup<K, V> {
+        V lookup(K key) throws UnknownHostException;
+    }
+
+    /**
+     * A cached lookup. A null value is a failed lookup.
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Snapshot of the cache metrics. Stale hits are counted separately from hits.
+     */
+    public static class Metrics {
+        public long hits;
+        public long negativeHits;
+        public long staleHits;
+        public long misses;
+        public long refreshes;
+        public long failures;
+        public int size;
+    }
+}
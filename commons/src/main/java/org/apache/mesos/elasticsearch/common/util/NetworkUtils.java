@@ -42,7 +42,7 @@ public class NetworkUtils {
         if (useIpAddress) {
             return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
         } else {
-            return "http://" + address.getAddress().getHostName() + ":" + address.getPort();
+            return "http://" + DnsCache.getDefault().hostName(address) + ":" + address.getPort();
         }
     }
 
@@ -0,0 +1,142 @@
+package org.apache.mesos.elasticsearch.common.util;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the DNS cache
+ */
+public class DnsCacheTest {
+    private static final long POSITIVE_TTL = 1000;
+    private static final long NEGATIVE_TTL = 100;
+    private static final long MAX_STALE = 10000;
+
+    private final Map<String, InetAddress> hosts = new HashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private long now = 0;
+    private final DnsCache cache = new DnsCache(POSITIVE_TTL, NEGATIVE_TTL, MAX_STALE, this::lookup, address -> "reverse-" + address.getHostAddress(), () -> now, refreshes::add);
+
+    @Test
+    public void shouldCacheSuccessfulLookups() throws UnknownHostException {
+        hosts.put("host1", address(1));
+        assertEquals(address(1), cache.resolve("host1").get());
+        assertEquals(address(1), cache.resolve("host1").get());
+        assertEquals(1, lookups.get());
+        assertEquals(1, cache.getMetrics().misses);
+        assertEquals(1, cache.getMetrics().hits);
+    }
+
+    @Test
+    public void shouldCacheFailedLookupsForTheNegativeTtl() throws UnknownHostException {
+        assertFalse(cache.resolve("host1").isPresent());
+        assertFalse(cache.resolve("host1").isPresent());
+        assertEquals(1, lookups.get());
+        assertEquals(1, cache.getMetrics().negativeHits);
+        assertEquals(1, cache.getMetrics().failures);
+
+        hosts.put("host1", address(1));
+        now = NEGATIVE_TTL;
+        assertFalse(cache.resolve("host1").isPresent()); // Stale, refreshed in the background
+        refreshes.forEach(Runnable::run);
+        assertEquals(address(1), cache.resolve("host1").get());
+    }
+
+    @Test
+    public void shouldServeExpiredEntriesWhileRefreshingOnce() throws UnknownHostException {
+        hosts.put("host1", address(1));
+        cache.resolve("host1");
+        hosts.put("host1", address(2));
+        now = POSITIVE_TTL;
+
+        assertEquals(address(1), cache.resolve("host1").get());
+        assertEquals(address(1), cache.resolve("host1").get());
+        assertEquals(1, refreshes.size());
+        assertEquals(1, lookups.get());
+
+        refreshes.get(0).run();
+        assertEquals(address(2), cache.resolve("host1").get());
+        assertEquals(2, cache.getMetrics().staleHits);
+        assertEquals(1, cache.getMetrics().refreshes);
+    }
+
+    @Test
+    public void shouldKeepTheExpiredAddressIfTheRefreshFails() throws UnknownHostException {
+        hosts.put("host1", address(1));
+        cache.resolve("host1");
+        hosts.remove("host1");
+        now = POSITIVE_TTL;
+
+        assertEquals(address(1), cache.resolve("host1").get());
+        refreshes.get(0).run();
+        assertEquals(address(1), cache.resolve("host1").get()); // Still stale, refreshed again
+        assertEquals(2, refreshes.size());
+        assertEquals(1, cache.getMetrics().failures);
+
+        hosts.put("host1", address(2));
+        refreshes.get(1).run();
+        assertEquals(address(2), cache.resolve("host1").get());
+
+        hosts.remove("host1");
+        now = POSITIVE_TTL + POSITIVE_TTL + MAX_STALE;
+        assertFalse(cache.resolve("host1").isPresent()); // Too stale to keep serving
+    }
+
+    @Test
+    public void shouldLookupAgainWhenTooStale() throws UnknownHostException {
+        hosts.put("host1", address(1));
+        cache.resolve("host1");
+        hosts.put("host1", address(2));
+        now = POSITIVE_TTL + MAX_STALE;
+
+        assertEquals(address(2), cache.resolve("host1").get());
+        assertTrue(refreshes.isEmpty());
+        assertEquals(2, cache.getMetrics().misses);
+    }
+
+    @Test
+    public void shouldReturnUnresolvedSocketAddressForUnknownHost() {
+        final InetSocketAddress address = cache.socketAddress("unknown", 9200);
+        assertTrue(address.isUnresolved());
+        assertEquals("unknown", address.getHostString());
+        assertEquals(9200, address.getPort());
+    }
+
+    @Test
+    public void shouldCacheReverseLookups() throws UnknownHostException {
+        assertEquals("reverse-10.0.0.1", cache.hostName(address(1)));
+        assertEquals("reverse-10.0.0.1", cache.hostName(address(1)));
+        assertEquals(1, cache.getMetrics().misses);
+        assertEquals(1, cache.getMetrics().hits);
+    }
+
+    @Test
+    public void shouldNotLookupSocketAddressesCreatedWithAHostName() throws UnknownHostException {
+        assertEquals("host1", cache.hostName(new InetSocketAddress(InetAddress.getByAddress("host1", new byte[]{10, 0, 0, 1}), 9200)));
+        assertEquals("reverse-10.0.0.1", cache.hostName(new InetSocketAddress(address(1), 9200)));
+        assertEquals(1, cache.getMetrics().misses);
+    }
+
+    private InetAddress lookup(String hostname) throws UnknownHostException {
+        lookups.incrementAndGet();
+        final InetAddress address = hosts.get(hostname);
+        if (address == null) {
+            throw new UnknownHostException(hostname);
+        }
+        return address;
+    }
+
+    private static InetAddress address(int last) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) last});
+    }
+}
@@ -0,0 +1,45 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Converts the attributes of a Mesos agent, e.g. {@code rack:r1;zone:us-east-1a}, to strings, so that they can be
+ * compared, stored with a task and passed to Elasticsearch.
+ */
+public class AgentAttributes {
+    private AgentAttributes() {
+    }
+
+    /**
+     * @return the value of each attribute by name
+     */
+    public static Map<String, String> toMap(List<Protos.Attribute> attributes) {
+        Map<String, String> map = new HashMap<>();
+        attributes.forEach(attribute -> map.put(attribute.getName(), toString(attribute)));
+        return map;
+    }
+
+    /**
+     * @return the value of the attribute in the format the agent is configured with
+     */
+    public static String toString(Protos.Attribute attribute) {
+        switch (attribute.getType()) {
+            case SCALAR:
+                double value = attribute.getScalar().getValue();
+                return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+            case RANGES:
+                return attribute.getRanges().getRangeList().stream()
+                        .map(range -> range.getBegin() + "-" + range.getEnd())
+                        .collect(Collectors.joining(",", "[", "]"));
+            case SET:
+                return attribute.getSet().getItemList().stream().collect(Collectors.joining(",", "{", "}"));
+            default:
+                return attribute.getText().getValue();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The view of the cluster that the offers of one resource offer callback are evaluated against. It is built once at the
+ * start of the callback, so the rules do not go back to the cluster state for every offer, and is updated locally as
+ * tasks are assigned, so that offers later in the same callback see the tasks launched for earlier ones. It is never
+ * written back; the cluster state remains the source of truth.
+ *
+ * It also holds the parsed resources of the offers, so that each offer is parsed once per callback, however often it
+ * is ranked, evaluated and turned into a task.
+ *
+ * Not thread safe. A snapshot belongs to a single callback.
+ */
+public class ClusterSnapshot {
+    private final List<Protos.TaskInfo> tasks;
+    private final Set<String> slaveIds = new HashSet<>();
+    private final Set<String> relaunchSlaveIds;
+    private Boolean firstNodeResponding; // Null until checked
+    private Set<String> hostnames; // Null until needed
+    private Map<String, Map<String, Integer>> attributeCounts; // Tasks per value per attribute name, null until needed
+    private final Map<Protos.Offer, OfferResources> offerResources = new IdentityHashMap<>();
+
+    public ClusterSnapshot(List<Protos.TaskInfo> tasks) {
+        this(tasks, Collections.emptySet());
+    }
+
+    /**
+     * @param relaunchSlaveIds the agents that lost nodes should be relaunched on, see {@link RelaunchLocality}
+     */
+    public ClusterSnapshot(List<Protos.TaskInfo> tasks, Set<String> relaunchSlaveIds) {
+        this.tasks = new ArrayList<>(tasks);
+        this.relaunchSlaveIds = new HashSet<>(relaunchSlaveIds);
+        tasks.forEach(taskInfo -> slaveIds.add(taskInfo.getSlaveId().getValue()));
+    }
+
+    /**
+     * Records a task that has been assigned during this callback.
+     */
+    public void addTask(Protos.TaskInfo taskInfo) {
+        if (tasks.isEmpty()) {
+            firstNodeResponding = false; // It has only just been launched
+        }
+        tasks.add(taskInfo);
+        slaveIds.add(taskInfo.getSlaveId().getValue());
+        relaunchSlaveIds.remove(taskInfo.getSlaveId().getValue());
+        if (hostnames != null) {
+            hostnames.add(TaskInfoFactory.getHostname(taskInfo));
+        }
+        if (attributeCounts != null) {
+            countAttributes(taskInfo);
+        }
+    }
+
+    /**
+     * @return the resources of the offer, parsed the first time they are asked for
+     */
+    public OfferResources getResources(Protos.Offer offer, String frameworkRole) {
+        return offerResources.computeIfAbsent(offer, key -> OfferResources.of(key, frameworkRole));
+    }
+
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    public List<Protos.TaskInfo> getTasks() {
+        return new ArrayList<>(tasks);
+    }
+
+    public boolean isSlaveRunningTask(Protos.SlaveID slaveID) {
+        return slaveIds.contains(slaveID.getValue());
+    }
+
+    /**
+     * @return the agents that lost nodes are still waiting to be relaunched on
+     */
+    public Set<String> getRelaunchSlaveIds() {
+        return Collections.unmodifiableSet(relaunchSlaveIds);
+    }
+
+    /**
+     * Whether a task runs on the host, whichever agent it runs on. There may be more than one agent per host.
+     */
+    public boolean isHostRunningTask(String hostname) {
+        if (hostnames == null) {
+            hostnames = new HashSet<>();
+            tasks.forEach(taskInfo -> hostnames.add(TaskInfoFactory.getHostname(taskInfo)));
+        }
+        return hostnames.contains(hostname);
+    }
+
+    /**
+     * The number of tasks on agents with the given attribute value. Tasks launched before the attributes were recorded
+     * with the task are not counted.
+     */
+    public int countTasksWithAttribute(String name, String value) {
+        if (attributeCounts == null) {
+            attributeCounts = new HashMap<>();
+            tasks.forEach(this::countAttributes);
+        }
+        return attributeCounts.getOrDefault(name, Collections.emptyMap()).getOrDefault(value, 0);
+    }
+
+    private void countAttributes(Protos.TaskInfo taskInfo) {
+        TaskInfoFactory.getAttributes(taskInfo).forEach((name, value) ->
+                attributeCounts.computeIfAbsent(name, key -> new HashMap<>()).merge(value, 1, Integer::sum));
+    }
+
+    /**
+     * Whether the first node of the cluster responds. The check is only made once per snapshot, however many offers
+     * are evaluated against it, so that all offers in a callback see the same answer.
+     *
+     * @param check the check of the first task, called at most once
+     */
+    public boolean isFirstNodeResponding(Predicate<Protos.TaskInfo> check) {
+        if (tasks.isEmpty()) {
+            return true;
+        }
+        if (firstNodeResponding == null) {
+            firstNodeResponding = check.test(tasks.get(0));
+        }
+        return firstNodeResponding;
+    }
+}
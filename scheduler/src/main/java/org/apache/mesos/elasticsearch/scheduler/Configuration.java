@@ -17,10 +17,14 @@ import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static java.util.Arrays.asList;
@@ -48,6 +52,7 @@ public class Configuration {
     public static final String EXECUTOR_IMAGE = "--elasticsearchDockerImage";
     public static final String EXECUTOR_BINARY = "--elasticsearchBinaryUrl";
     public static final String DEFAULT_EXECUTOR_IMAGE = "elasticsearch:latest";
+    public static final long DEFAULT_PERSISTENT_VOLUME_RELAUNCH_LOCALITY_WINDOW = 600000; // 10 minutes
     public static final String EXECUTOR_FORCE_PULL_IMAGE = "--executorForcePullImage";
     public static final String FRAMEWORK_PRINCIPAL = "--frameworkPrincipal";
     public static final String FRAMEWORK_SECRET_PATH = "--frameworkSecretPath";
@@ -55,6 +60,7 @@ public class Configuration {
     public static final String ES_BINARY = "./elasticsearch-*/bin/elasticsearch";
     private static final Logger LOGGER = Logger.getLogger(Configuration.class);
     public static final String FRAMEWORK_USE_DOCKER = "--frameworkUseDocker";
+    public static final String FRAMEWORK_USE_PERSISTENT_VOLUMES = "--frameworkUsePersistentVolumes";
     public static final String JAVA_HOME = "--javaHome";
     public static final String USE_IP_ADDRESS = "--useIpAddress";
     public static final String ELASTICSEARCH_PORTS = "--elasticsearchPorts";
@@ -64,9 +70,20 @@ public class Configuration {
     public static final String HOST_SANDBOX = "./."; // Due to some protobuf weirdness. Requires './.' Not just '.'
     public static final String HOST_PATH_HOME = HOST_SANDBOX + "/es_home";
     public static final String HOST_PATH_CONF = HOST_SANDBOX;
+    public static final String PERSISTENT_VOLUME_PATH = "data"; // Relative to the sandbox
+    public static final String HOST_PATH_PERSISTENT_VOLUME = HOST_SANDBOX + "/" + PERSISTENT_VOLUME_PATH;
     // **** External Volumes
     public static final String EXTERNAL_VOLUME_DRIVER = "--externalVolumeDriver";
     public static final String EXTERNAL_VOLUME_OPTIONS = "--externalVolumeOptions";
+    public static final String FRAMEWORK_STATE_FILE = "--frameworkStateFile";
+    public static final String OFFER_RULE_ADAPTIVE_ORDERING = "--offerRuleAdaptiveOrdering";
+    public static final String OFFER_WEIGHT_HEADROOM = "--offerWeightHeadroom";
+    public static final String OFFER_WEIGHT_SPREAD = "--offerWeightSpread";
+    public static final String OFFER_WEIGHT_LOCALITY = "--offerWeightLocality";
+    public static final String PLACEMENT_UNIQUE_ATTRIBUTES = "--placementUniqueAttributes";
+    public static final String PLACEMENT_MAX_PER_ATTRIBUTE = "--placementMaxPerAttribute";
+    public static final String PLACEMENT_PREFERRED_ATTRIBUTES = "--placementPreferredAttributes";
+    public static final String RELAUNCH_LOCALITY_WINDOW = "--relaunchLocalityWindow";
 
     // **** ZOOKEEPER
     private final ZookeeperCLIParameter zookeeperCLI = new ZookeeperCLIParameter();
@@ -81,6 +98,7 @@ public class Configuration {
     private int webUiPort = 31100; // Default is more likely to work on a default Mesos installation
     @Parameter(names = {ELASTICSEARCH_PORTS}, description = "Override Mesos provided ES HTTP and transport ports. Format `HTTP_PORT,TRANSPORT_PORT` (comma delimited, both required).", validateWith = CLIValidators.NumericListOfSizeTwo.class)
     private String elasticsearchPorts = ""; // Defaults to Mesos specified ports.
+    private List<Integer> elasticsearchPortsList; // Parsed on first use
 
     // **** FRAMEWORK
     private String version = "1.0.1";
@@ -110,6 +128,8 @@ public class Configuration {
     private String frameworkSecretPath = "";
     @Parameter(names = {FRAMEWORK_USE_DOCKER}, arity = 1, description = "The framework will use docker if true, or jar files if false. If false, the user must ensure that the scheduler jar is available to all slaves.")
     private Boolean isFrameworkUseDocker = true;
+    @Parameter(names = {FRAMEWORK_USE_PERSISTENT_VOLUMES}, arity = 1, description = "If true, cpu, memory and disk are dynamically reserved for the framework role and the data is written to a persistent volume, so that a node relaunched on the same agent gets both back. Requires a framework role other than `*` and a framework principal.")
+    private Boolean isFrameworkUsePersistentVolumes = false;
     private InetSocketAddress frameworkFileServerAddress;
     @Parameter(names = {JAVA_HOME}, description = "When starting in jar mode, if java is not on the path, you can specify the path here. [JAR MODE ONLY]", validateWith = CLIValidators.NotEmptyString.class)
     private String javaHome = "";
@@ -122,6 +142,30 @@ public class Configuration {
     @Parameter(names = {EXTERNAL_VOLUME_OPTIONS}, description = "External volume driver options.")
     private String externalVolumeOption = "";
 
+    // **** Framework state
+    @Parameter(names = {FRAMEWORK_STATE_FILE}, description = "Store the framework state in this local file instead of zookeeper. Only for single scheduler deployments, development and testing.", validateWith = CLIValidators.NotEmptyString.class)
+    private String frameworkStateFile = "";
+
+    // **** Offers
+    @Parameter(names = {OFFER_RULE_ADAPTIVE_ORDERING}, arity = 1, description = "If true, the offer rules that reject offers at the lowest cost are evaluated first, based on observed statistics. If false, they are evaluated in a fixed order.")
+    private Boolean offerRuleAdaptiveOrdering = false;
+    @Parameter(names = {OFFER_WEIGHT_HEADROOM}, description = "Weight of the spare cpu, memory and disk of an agent when ranking the offers in a batch. Offers are only ranked if one of the weights is greater than zero.", validateValueWith = CLIValidators.NonNegativeDouble.class)
+    private double offerWeightHeadroom = 0;
+    @Parameter(names = {OFFER_WEIGHT_SPREAD}, description = "Weight of not placing a node on a host that already runs one, when ranking the offers in a batch.", validateValueWith = CLIValidators.NonNegativeDouble.class)
+    private double offerWeightSpread = 0;
+    @Parameter(names = {OFFER_WEIGHT_LOCALITY}, description = "Weight of persistent or reserved disk for the framework role, where data may already be, when ranking the offers in a batch.", validateValueWith = CLIValidators.NonNegativeDouble.class)
+    private double offerWeightLocality = 0;
+
+    // **** Placement
+    @Parameter(names = {PLACEMENT_UNIQUE_ATTRIBUTES}, description = "Agent attributes of which no two nodes may share a value, e.g. `rack`. Format `ATTRIBUTE,ATTRIBUTE` (comma delimited). Also used as Elasticsearch shard allocation awareness attributes.", validateWith = CLIValidators.NameList.class)
+    private String placementUniqueAttributes = "";
+    @Parameter(names = {PLACEMENT_MAX_PER_ATTRIBUTE}, description = "The maximum number of nodes per value of an agent attribute, e.g. `zone:2`. Format `ATTRIBUTE:MAX,ATTRIBUTE:MAX` (comma delimited). Also used as Elasticsearch shard allocation awareness attributes.", validateWith = CLIValidators.KeyPositiveIntegerList.class)
+    private String placementMaxPerAttribute = "";
+    @Parameter(names = {PLACEMENT_PREFERRED_ATTRIBUTES}, description = "Agent attribute values to place nodes on first, e.g. `zone:us-east-1a`. Format `ATTRIBUTE:VALUE,ATTRIBUTE:VALUE` (comma delimited). Offers from other agents are used when no preferred agent is offered.", validateWith = CLIValidators.KeyValueList.class)
+    private String placementPreferredAttributes = "";
+    @Parameter(names = {RELAUNCH_LOCALITY_WINDOW}, description = "How long to wait for an offer from the agent a node was lost on, where its data is, before relaunching it on another agent (ms). 0 to relaunch on any agent straight away. Default: 600000 with persistent volumes, otherwise 0.", validateValueWith = CLIValidators.NonNegativeLong.class)
+    private Long relaunchLocalityWindow = null;
+
     // ****************** Runtime configuration **********************
     public Configuration(String... args) {
         final JCommander jCommander = new JCommander();
@@ -253,6 +297,17 @@ public class Configuration {
         return isFrameworkUseDocker;
     }
 
+    public Boolean isFrameworkUsePersistentVolumes() {
+        return isFrameworkUsePersistentVolumes;
+    }
+
+    /**
+     * @return the ID of the persistent volume. One per agent, because there is only one node per agent.
+     */
+    public String persistentVolumeId() {
+        return getFrameworkName() + "_" + getElasticsearchClusterName() + "_data";
+    }
+
     public String getFrameworkFileServerAddress() {
         String result = "";
         if (frameworkFileServerAddress != null) {
@@ -281,16 +336,23 @@ public class Configuration {
         }
     }
 
+    /**
+     * @return the ports, parsed once since they are checked for every offer
+     */
     public List<Integer> getElasticsearchPorts() {
-        if (elasticsearchPorts.isEmpty()) {
-            return Collections.emptyList();
-        }
-        String[] portsRaw = elasticsearchPorts.replace(" ", "").split(",");
-        ArrayList<Integer> portsList = new ArrayList<>(2);
-        for (String port : portsRaw) {
-            portsList.add(Integer.parseInt(port));
+        if (elasticsearchPortsList == null) {
+            if (elasticsearchPorts.isEmpty()) {
+                elasticsearchPortsList = Collections.emptyList();
+            } else {
+                String[] portsRaw = elasticsearchPorts.replace(" ", "").split(",");
+                ArrayList<Integer> portsList = new ArrayList<>(2);
+                for (String port : portsRaw) {
+                    portsList.add(Integer.parseInt(port));
+                }
+                elasticsearchPortsList = Collections.unmodifiableList(portsList);
+            }
         }
-        return portsList;
+        return elasticsearchPortsList;
     }
 
     public String getExternalVolumeDriver() {
@@ -301,8 +363,76 @@ public class Configuration {
         return externalVolumeOption;
     }
 
+    public String getFrameworkStateFile() {
+        return frameworkStateFile;
+    }
+
+    public Boolean isOfferRuleAdaptiveOrdering() {
+        return offerRuleAdaptiveOrdering;
+    }
+
+    public double getOfferWeightHeadroom() {
+        return offerWeightHeadroom;
+    }
+
+    public double getOfferWeightSpread() {
+        return offerWeightSpread;
+    }
+
+    public double getOfferWeightLocality() {
+        return offerWeightLocality;
+    }
+
+    public List<String> getPlacementUniqueAttributes() {
+        if (placementUniqueAttributes.replace(" ", "").isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(placementUniqueAttributes.split(",")).map(String::trim).filter(name -> !name.isEmpty()).collect(Collectors.toList());
+    }
+
+    public Map<String, Integer> getPlacementMaxPerAttribute() {
+        Map<String, Integer> maxPerAttribute = new LinkedHashMap<>();
+        splitPairs(placementMaxPerAttribute).forEach((name, max) -> maxPerAttribute.put(name, Integer.parseInt(max)));
+        return maxPerAttribute;
+    }
+
+    public Map<String, String> getPlacementPreferredAttributes() {
+        return splitPairs(placementPreferredAttributes);
+    }
+
+    /**
+     * With persistent volumes a lost node waits for its own agent by default, since a node relaunched elsewhere reserves
+     * new resources and leaves the old ones unused.
+     */
+    public long getRelaunchLocalityWindow() {
+        if (relaunchLocalityWindow != null) {
+            return relaunchLocalityWindow;
+        }
+        return isFrameworkUsePersistentVolumes() ? DEFAULT_PERSISTENT_VOLUME_RELAUNCH_LOCALITY_WINDOW : 0;
+    }
+
+    /**
+     * @return the attributes nodes are spread over, in the order they are configured
+     */
+    public Set<String> getAwarenessAttributes() {
+        Set<String> attributes = new LinkedHashSet<>(getPlacementUniqueAttributes());
+        attributes.addAll(getPlacementMaxPerAttribute().keySet());
+        return attributes;
+    }
+
+    private static Map<String, String> splitPairs(String pairs) {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (!pairs.replace(" ", "").isEmpty()) {
+            for (String pair : pairs.split(",")) {
+                String[] keyValue = pair.split(":", 2);
+                map.put(keyValue[0].trim(), keyValue[1].trim());
+            }
+        }
+        return map;
+    }
+
     public String nativeCommand(List<String> arguments) {
-        String folders = getDataDir() + " " + HOST_SANDBOX;
+        String folders = isFrameworkUsePersistentVolumes() ? HOST_SANDBOX + " " + HOST_PATH_PERSISTENT_VOLUME + "/" : getDataDir() + " " + HOST_SANDBOX; // Trailing slash to follow a linked volume
         String mkdir = "mkdir -p " + folders + "; ";
         String chown = "chown -R nobody " + folders + "; ";
         return mkdir +
@@ -315,6 +445,15 @@ public class Configuration {
     }
 
     public List<String> esArguments(ClusterState clusterState, Protos.DiscoveryInfo discoveryInfo, Protos.SlaveID slaveID) {
+        return esArguments(clusterState, discoveryInfo, slaveID, Collections.emptyMap());
+    }
+
+    /**
+     * @param agentAttributes the attributes of the agent the node is launched on, see {@link AgentAttributes}. The values
+     *                        of the awareness attributes are given to the node, so that Elasticsearch spreads the copies
+     *                        of a shard over them.
+     */
+    public List<String> esArguments(ClusterState clusterState, Protos.DiscoveryInfo discoveryInfo, Protos.SlaveID slaveID, Map<String, String> agentAttributes) {
         List<String> args = new ArrayList<>();
         List<Protos.TaskInfo> taskList = clusterState.getTaskList();
         String hostAddress = "";
@@ -334,9 +473,12 @@ public class Configuration {
         args.add("--default.index.number_of_replicas=0");
         args.add("--default.index.auto_expand_replicas=0-all");
         if (!isFrameworkUseDocker()) {
-            String taskSpecificDataDir = taskSpecificHostDir(slaveID);
             args.add("--path.home=" + HOST_PATH_HOME); // Cannot be overidden
-            args.add("--default.path.data=" + taskSpecificDataDir);
+            if (isFrameworkUsePersistentVolumes()) {
+                args.add("--path.data=" + HOST_PATH_PERSISTENT_VOLUME); // Cannot be overidden
+            } else {
+                args.add("--default.path.data=" + taskSpecificHostDir(slaveID));
+            }
             args.add("--path.conf=" + HOST_PATH_CONF); // Cannot be overidden
         } else {
             args.add("--path.data=" + CONTAINER_PATH_DATA); // Cannot be overidden
@@ -352,7 +494,13 @@ public class Configuration {
         args.add("--default.discovery.zen.fd.ping_interval=1s");
         args.add("--default.discovery.zen.fd.ping_retries=30");
         args.add("--default.discovery.zen.ping.multicast.enabled=false");
-
+        Set<String> awarenessAttributes = getAwarenessAttributes();
+        if (!awarenessAttributes.isEmpty()) {
+            awarenessAttributes.stream()
+                    .filter(agentAttributes::containsKey)
+                    .forEach(name -> args.add("--node." + name + "=" + agentAttributes.get(name))); // Cannot be overidden
+            args.add("--default.cluster.routing.allocation.awareness.attributes=" + String.join(",", awarenessAttributes));
+        }
 
         return args;
     }
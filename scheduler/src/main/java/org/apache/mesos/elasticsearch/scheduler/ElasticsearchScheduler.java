@@ -20,6 +20,7 @@ import java.util.Map;
 public class ElasticsearchScheduler implements Scheduler {
 
     private static final Logger LOGGER = Logger.getLogger(ElasticsearchScheduler.class.toString());
+    public static final long LOAD_RETRY_INTERVAL_MS = 30000;
 
     private final Configuration configuration;
     private final TaskInfoFactory taskInfoFactory;
@@ -28,6 +29,9 @@ public class ElasticsearchScheduler implements Scheduler {
     private OfferStrategy offerStrategy;
     private SerializableState zookeeperStateDriver;
     private TaskReaper taskReaper;
+    private final OfferSuppression offerSuppression = new OfferSuppression();
+    private final RelaunchLocality relaunchLocality;
+    private long lastLoadAttempt = 0; // Only accessed from the driver callbacks
 
     public ElasticsearchScheduler(Configuration configuration, FrameworkState frameworkState, ClusterState clusterState, TaskInfoFactory taskInfoFactory, OfferStrategy offerStrategy, SerializableState zookeeperStateDriver) {
         this.configuration = configuration;
@@ -36,6 +40,7 @@ public class ElasticsearchScheduler implements Scheduler {
         this.taskInfoFactory = taskInfoFactory;
         this.offerStrategy = offerStrategy;
         this.zookeeperStateDriver = zookeeperStateDriver;
+        this.relaunchLocality = new RelaunchLocality(configuration.getRelaunchLocalityWindow());
     }
 
     public Map<String, Task> getTasks() {
@@ -61,6 +66,34 @@ public class ElasticsearchScheduler implements Scheduler {
         taskReaper.run();
     }
 
+    /**
+     * Suppresses or revives offers after the cluster size has changed, see {@link OfferSuppression}.
+     */
+    public void updateOfferSuppression() {
+        final SchedulerDriver driver = frameworkState.getDriver();
+        if (driver != null) {
+            updateOfferSuppression(driver);
+        }
+    }
+
+    public OfferSuppression.Metrics getOfferMetrics() {
+        return offerSuppression.getMetrics();
+    }
+
+    public List<OfferStrategy.RuleMetrics> getOfferRuleMetrics() {
+        return offerStrategy.getRuleMetrics();
+    }
+
+    public RelaunchLocality.Metrics getRelaunchMetrics() {
+        return relaunchLocality.getMetrics();
+    }
+
+    private void updateOfferSuppression(SchedulerDriver driver) {
+        if (clusterState.isReady()) {
+            offerSuppression.update(driver, clusterState.getTaskList().size(), configuration.getElasticsearchNodes());
+        }
+    }
+
     @Override
     public void registered(SchedulerDriver driver, Protos.FrameworkID frameworkId, Protos.MasterInfo masterInfo) {
         LOGGER.info("Framework registered as " + frameworkId.getValue());
@@ -75,11 +108,43 @@ public class ElasticsearchScheduler implements Scheduler {
         driver.requestResources(requests);
 
         frameworkState.markRegistered(frameworkId, driver);
+        offerSuppression.reset(); // A new registration is not suppressed
+        // Scheduler has (re)started, so warm up the in-memory cluster state from zookeeper before any offers arrive
+        lastLoadAttempt = System.currentTimeMillis();
+        logLoaded(clusterState.load());
     }
 
     @Override
     public void reregistered(SchedulerDriver driver, Protos.MasterInfo masterInfo) {
         LOGGER.info("Framework re-registered");
+        offerSuppression.reset(); // The master may have failed over and forgotten about the suppression
+        if (!clusterState.isReady()) {
+            lastLoadAttempt = System.currentTimeMillis();
+            logLoaded(clusterState.load());
+        }
+    }
+
+    /**
+     * Retries loading the cluster state at most every {@link #LOAD_RETRY_INTERVAL_MS}, without waiting for pending
+     * status writes, so that the offer callback is not blocked.
+     */
+    private boolean retryLoad() {
+        final long now = System.currentTimeMillis();
+        if (now - lastLoadAttempt < LOAD_RETRY_INTERVAL_MS) {
+            return false;
+        }
+        lastLoadAttempt = now;
+        final boolean loaded = clusterState.loadIfIdle();
+        logLoaded(loaded);
+        return loaded;
+    }
+
+    private void logLoaded(boolean loaded) {
+        if (loaded) {
+            LOGGER.info("Cluster state ready. Loaded in " + clusterState.getLoadTimeMillis() + "ms");
+        } else {
+            LOGGER.warn("Unable to load cluster state. Offers will be declined until it has been loaded.");
+        }
     }
 
     @Override
@@ -88,23 +153,71 @@ public class ElasticsearchScheduler implements Scheduler {
             LOGGER.debug("Not registered, can't accept resource offers.");
             return;
         }
+        if (!clusterState.isReady() && !retryLoad()) {
+            LOGGER.warn("Cluster state not loaded, declining " + offers.size() + " offers.");
+            offers.forEach(offer -> driver.declineOffer(offer.getId()));
+            return;
+        }
 
-        for (Protos.Offer offer : offers) {
-            final OfferStrategy.OfferResult result = offerStrategy.evaluate(offer);
+        final ClusterSnapshot cluster = new ClusterSnapshot(clusterState.getTaskList(), relaunchLocality.getWaitingSlaveIds()); // Shared by all offers in this callback
+        for (Protos.Offer offer : offerStrategy.rank(cluster, offers)) {
+            final OfferStrategy.OfferResult result = offerStrategy.evaluate(cluster, offer);
 
             if (!result.acceptable) {
-                LOGGER.debug("Declined offer: " + flattenProtobufString(offer.toString()) +
-                        "Reason: " + result.reason.orElse("Unknown"));
-                driver.declineOffer(offer.getId());
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Declined offer: " + flattenProtobufString(offer.toString()) +
+                            "Reason: " + result.reason.orElse("Unknown"));
+                }
+                offerSuppression.declined(result.reason.orElse("Unknown"));
+                final Protos.Filters filters = Protos.Filters.newBuilder().setRefuseSeconds(result.refuseSeconds).build();
+                final List<Protos.Offer.Operation> release = getReleaseOperations(cluster, offer);
+                if (release.isEmpty()) {
+                    driver.declineOffer(offer.getId(), filters);
+                } else {
+                    LOGGER.info("Releasing the resources of an earlier node on " + offer.getHostname() + ": " + release);
+                    driver.acceptOffers(Collections.singleton(offer.getId()), release, filters); // The rest of the offer is declined
+                }
             } else {
-                Protos.TaskInfo taskInfo = taskInfoFactory.createTask(configuration, frameworkState, offer, new Clock());
+                final OfferResources resources = cluster.getResources(offer, configuration.getFrameworkRole());
+                Protos.TaskInfo taskInfo = taskInfoFactory.createTask(configuration, frameworkState, offer, resources, new Clock());
                 LOGGER.debug(taskInfo.toString());
-                driver.launchTasks(Collections.singleton(offer.getId()), Collections.singleton(taskInfo));
-                ESTaskStatus esTask = new ESTaskStatus(zookeeperStateDriver, frameworkState.getFrameworkID(), taskInfo, new StatePath(zookeeperStateDriver)); // Write staging state to zk
-                clusterState.addTask(esTask); // Add tasks to cluster state and write to zk
-                frameworkState.announceNewTask(esTask);
+                if (!clusterState.addTask(taskInfo)) { // Add task to cluster state and write to zk. Must come first, so the status can be garbage collected
+                    LOGGER.warn("Declined offer: " + offer.getId().getValue() + ". Reason: Unable to persist task");
+                    driver.declineOffer(offer.getId());
+                    continue;
+                }
+                clusterState.update(ESTaskStatus.getDefaultStatus(taskInfo)); // Staging status, written behind with the other statuses
+                if (!clusterState.flush()) { // State must be durable before the task is launched
+                    LOGGER.warn("Declined offer: " + offer.getId().getValue() + ". Reason: Unable to persist cluster state");
+                    clusterState.abandonTask(taskInfo);
+                    driver.declineOffer(offer.getId());
+                    continue;
+                }
+                cluster.addTask(taskInfo);
+                relaunchLocality.taskLaunched(offer.getSlaveId());
+                if (configuration.isFrameworkUsePersistentVolumes()) {
+                    driver.acceptOffers(Collections.singleton(offer.getId()), taskInfoFactory.createOperations(configuration, offer, resources, taskInfo), Protos.Filters.getDefaultInstance());
+                } else {
+                    driver.launchTasks(Collections.singleton(offer.getId()), Collections.singleton(taskInfo));
+                }
+                frameworkState.announceNewTask(clusterState.getStatus(taskInfo.getTaskId()));
             }
         }
+        updateOfferSuppression(driver);
+    }
+
+    /**
+     * With persistent volumes, the volume and reservations of a node that is gone stay on its agent. Once the cluster has
+     * all its nodes and no lost node waits for the agent, nothing will use them again, so they are released. While
+     * offers are suppressed they are not offered; they are released the next time they are.
+     */
+    private List<Protos.Offer.Operation> getReleaseOperations(ClusterSnapshot cluster, Protos.Offer offer) {
+        if (!configuration.isFrameworkUsePersistentVolumes()
+                || cluster.getTaskCount() < configuration.getElasticsearchNodes()
+                || cluster.getRelaunchSlaveIds().contains(offer.getSlaveId().getValue())) {
+            return Collections.emptyList();
+        }
+        return taskInfoFactory.createReleaseOperations(configuration, cluster.getResources(offer, configuration.getFrameworkRole()));
     }
 
     private String flattenProtobufString(String s) {
@@ -126,7 +239,11 @@ public class ElasticsearchScheduler implements Scheduler {
                 " " + status.getReason() +
                 " " +
                 " ");
+        if (RelaunchLocality.isLost(status.getState()) && clusterState.exists(status.getTaskId())) {
+            relaunchLocality.taskLost(clusterState.getTask(status.getTaskId()).getSlaveId()); // Before the task is removed
+        }
         frameworkState.announceStatusUpdate(status);
+        updateOfferSuppression(driver); // The task may have been removed
     }
 
     @Override
@@ -166,6 +283,7 @@ public class ElasticsearchScheduler implements Scheduler {
     }
 
     public void shutdown(SchedulerDriver driver) {
+        clusterState.flush(); // Don't race pending status writes with the clean up
         clusterState.getTaskList().stream().forEach(taskInfo -> driver.killTask(taskInfo.getTaskId())); // Kill tasks.
         clusterState.destroy(); // Remove tasks from zk
         frameworkState.destroy(); // Remove framework state from zk.
@@ -3,12 +3,20 @@ package org.apache.mesos.elasticsearch.scheduler;
 import org.apache.log4j.Logger;
 import org.apache.mesos.MesosSchedulerDriver;
 import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.cluster.NodeLivenessProbe;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.state.SerializableFileState;
+import org.apache.mesos.elasticsearch.scheduler.state.SerializableState;
 import org.apache.mesos.elasticsearch.scheduler.state.SerializableZookeeperState;
+import org.apache.mesos.elasticsearch.scheduler.state.StateGarbageCollector;
+import org.apache.mesos.elasticsearch.scheduler.state.StateSerializer;
+import org.apache.mesos.elasticsearch.scheduler.state.StatePath;
+import org.apache.mesos.elasticsearch.scheduler.state.StateSizeStats;
 import org.apache.mesos.state.ZooKeeperState;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -34,6 +42,7 @@ public class Main {
         checkEnv();
 
         configuration = new Configuration(args);
+        checkPersistentVolumes(configuration);
 
         if (!configuration.isFrameworkUseDocker()) {
             final SimpleFileServer simpleFileServer = new SimpleFileServer(Configuration.ES_TAR);
@@ -41,21 +50,21 @@ public class Main {
             configuration.setFrameworkFileServerAddress(simpleFileServer.getAddress());
         }
 
-        final SerializableZookeeperState zookeeperStateDriver = new SerializableZookeeperState(new ZooKeeperState(
-                configuration.getMesosStateZKURL(),
-                configuration.getZookeeperCLI().getZookeeperMesosTimeout(),
-                TimeUnit.MILLISECONDS,
-                "/" + configuration.getFrameworkName() + "/" + configuration.getElasticsearchCLI().getElasticsearchClusterName()));
-        final FrameworkState frameworkState = new FrameworkState(zookeeperStateDriver);
-        final ClusterState clusterState = new ClusterState(zookeeperStateDriver, frameworkState);
+        final StateSizeStats stateSizeStats = new StateSizeStats();
+        final SerializableState zookeeperStateDriver = createStateDriver(stateSizeStats);
+        final StatePath statePath = new StatePath(zookeeperStateDriver); // Shared, so that all writers see the same zNodes
+        final FrameworkState frameworkState = new FrameworkState(zookeeperStateDriver, statePath);
+        final ClusterState clusterState = new ClusterState(zookeeperStateDriver, frameworkState, statePath);
         final TaskInfoFactory taskInfoFactory = new TaskInfoFactory(clusterState);
+        final StateGarbageCollector stateGarbageCollector = new StateGarbageCollector(clusterState);
+        final NodeLivenessProbe livenessProbe = new NodeLivenessProbe(clusterState, configuration);
 
         final ElasticsearchScheduler scheduler = new ElasticsearchScheduler(
                 configuration,
                 frameworkState,
                 clusterState,
                 taskInfoFactory,
-                configuration.getExternalVolumeDriver() != null && configuration.getExternalVolumeDriver().length() > 0 ? new OfferStrategyExternalStorage(configuration, clusterState) : new OfferStrategyNormal(configuration, clusterState),
+                configuration.getExternalVolumeDriver() != null && configuration.getExternalVolumeDriver().length() > 0 ? new OfferStrategyExternalStorage(configuration, clusterState, livenessProbe) : new OfferStrategyNormal(configuration, clusterState, livenessProbe),
                 zookeeperStateDriver);
 
         FrameworkInfoFactory frameworkInfoFactory = new FrameworkInfoFactory(configuration, frameworkState);
@@ -84,16 +93,51 @@ public class Main {
                 .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("scheduler", scheduler))
                 .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("configuration", configuration))
                 .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("frameworkState", frameworkState))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("clusterState", clusterState))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("stateSizeStats", stateSizeStats))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("stateGarbageCollector", stateGarbageCollector))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("nodeLivenessProbe", livenessProbe))
                 .showBanner(false)
                 .run(args);
 
+        stateGarbageCollector.start();
+        livenessProbe.start();
         scheduler.run(schedulerDriver);
     }
 
+    private SerializableState createStateDriver(StateSizeStats stateSizeStats) {
+        if (!configuration.getFrameworkStateFile().isEmpty()) {
+            LOGGER.info("Storing framework state in local file: " + configuration.getFrameworkStateFile());
+            try {
+                return new SerializableFileState(configuration.getFrameworkStateFile());
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to open framework state file: " + configuration.getFrameworkStateFile(), e);
+            }
+        }
+        return new SerializableZookeeperState(new ZooKeeperState(
+                configuration.getMesosStateZKURL(),
+                configuration.getZookeeperCLI().getZookeeperMesosTimeout(),
+                TimeUnit.MILLISECONDS,
+                "/" + configuration.getFrameworkName() + "/" + configuration.getElasticsearchCLI().getElasticsearchClusterName()),
+                new StateSerializer(),
+                stateSizeStats);
+    }
+
     private void checkEnv() {
         checkHeap(env.getJavaHeap());
     }
 
+    private void checkPersistentVolumes(Configuration configuration) {
+        if (configuration.isFrameworkUsePersistentVolumes()) {
+            if (configuration.getFrameworkRole().equals("*") || configuration.getFrameworkPrincipal().isEmpty()) {
+                throw new IllegalArgumentException("Persistent volumes require a framework role other than * and a framework principal");
+            }
+            if (configuration.getExternalVolumeDriver() != null && configuration.getExternalVolumeDriver().length() > 0) {
+                throw new IllegalArgumentException("Persistent volumes cannot be used with an external volume driver");
+            }
+        }
+    }
+
     private void checkHeap(String s) {
         if (s == null || s.isEmpty()) {
             throw new IllegalArgumentException("Scheduler heap space not set!");
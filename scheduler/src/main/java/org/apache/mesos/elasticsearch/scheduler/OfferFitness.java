@@ -0,0 +1,14 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+
+/**
+ * Ranks offers. Of the acceptable offers in a batch, those with the highest score are used first.
+ */
+@FunctionalInterface
+public interface OfferFitness {
+    /**
+     * @return how well suited the agent of the offer is for a new node, the higher the better
+     */
+    double score(ClusterSnapshot cluster, Protos.Offer offer);
+}
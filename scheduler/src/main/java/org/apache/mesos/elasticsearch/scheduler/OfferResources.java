@@ -0,0 +1,284 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The resources of an offer as plain values, so that the offer rules and the task builder read them without scanning the
+ * protobuf resources again and again. The resources are parsed once, on first use.
+ *
+ * Scalars are added up over all roles, since resources that are reserved for the framework role are offered separately
+ * from the rest. The part that is dynamically reserved for the framework role, outside persistent volumes, is kept
+ * separately. Port ranges are kept sorted by their first port.
+ *
+ * Not thread safe. Meant to be used while evaluating a single offer.
+ */
+public class OfferResources {
+    private static final int CPUS = 0;
+    private static final int MEM = 1;
+    private static final int DISK = 2;
+    private static final int SCALARS = 3;
+    private static final Protos.Resource[] NO_VOLUMES = new Protos.Resource[0];
+
+    private final List<Protos.Resource> resources;
+    private final String frameworkRole;
+    private boolean parsed = false;
+
+    private final double[] total = new double[SCALARS];
+    private final double[] reserved = new double[SCALARS];
+    private final boolean[] offered = new boolean[SCALARS];
+    private boolean diskForRole = false;
+    private Protos.Resource[] volumes = NO_VOLUMES;
+    private final List<Protos.Resource> reservations = new ArrayList<>();
+    private int[] portBegins;
+    private int[] portEnds;
+    private long portCount = 0;
+
+    private OfferResources(List<Protos.Resource> resources, String frameworkRole) {
+        this.resources = resources;
+        this.frameworkRole = frameworkRole;
+    }
+
+    public static OfferResources of(Protos.Offer offer, String frameworkRole) {
+        return of(offer.getResourcesList(), frameworkRole);
+    }
+
+    public static OfferResources of(List<Protos.Resource> resources, String frameworkRole) {
+        return new OfferResources(resources, frameworkRole);
+    }
+
+    public double getCpus() {
+        return scalar(total, CPUS);
+    }
+
+    public double getMem() {
+        return scalar(total, MEM);
+    }
+
+    public double getDisk() {
+        return scalar(total, DISK);
+    }
+
+    public boolean isEnoughCpus(double required) {
+        return isEnough(CPUS, required);
+    }
+
+    public boolean isEnoughMem(double required) {
+        return isEnough(MEM, required);
+    }
+
+    public boolean isEnoughDisk(double required) {
+        return isEnough(DISK, required);
+    }
+
+    public double getReservedCpus() {
+        return scalar(reserved, CPUS);
+    }
+
+    public double getReservedMem() {
+        return scalar(reserved, MEM);
+    }
+
+    /**
+     * @return the disk reserved for the framework role that is not used by a persistent volume
+     */
+    public double getReservedDisk() {
+        return scalar(reserved, DISK);
+    }
+
+    /**
+     * @return true if there is disk for the framework role, other than the default role, reserved or in a volume
+     */
+    public boolean hasDiskForRole() {
+        parse();
+        return diskForRole;
+    }
+
+    public boolean hasPersistentVolume() {
+        parse();
+        return volumes.length > 0;
+    }
+
+    public boolean hasPersistentVolume(String persistenceId) {
+        return getPersistentVolume(persistenceId).isPresent();
+    }
+
+    /**
+     * @return the offered volume as is, which is what a task must ask for to use it
+     */
+    public Optional<Protos.Resource> getPersistentVolume(String persistenceId) {
+        parse();
+        for (Protos.Resource volume : volumes) {
+            if (volume.getDisk().getPersistence().getId().equals(persistenceId)) {
+                return Optional.of(volume);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the cpus, mem and disk dynamically reserved for the framework role, outside persistent volumes, as offered
+     */
+    public List<Protos.Resource> getReservations() {
+        parse();
+        return reservations;
+    }
+
+    public long getPortCount() {
+        parse();
+        return portCount;
+    }
+
+    public boolean isPortAvailable(int port) {
+        parse();
+        int low = 0;
+        int high = portBegins.length - 1;
+        while (low <= high) { // Find the last range that starts at or before the port
+            int mid = (low + high) >>> 1;
+            if (portBegins[mid] <= port) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && port <= portEnds[high];
+    }
+
+    /**
+     * @return the lowest two ports, at most two from each range, or fewer if there are not enough
+     */
+    public List<Integer> selectTwoPorts() {
+        parse();
+        List<Integer> ports = new ArrayList<>(2);
+        for (int i = 0; i < portBegins.length && ports.size() < 2; i++) {
+            ports.add(portBegins[i]);
+            if (ports.size() < 2 && portBegins[i] != portEnds[i]) {
+                ports.add(portBegins[i] + 1);
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * @return the lowest port
+     * @throws NoSuchElementException if there are no ports
+     */
+    public int selectOnePort() {
+        parse();
+        if (portBegins.length == 0) {
+            throw new NoSuchElementException("No ports in offer");
+        }
+        return portBegins[0];
+    }
+
+    private boolean isEnough(int index, double required) {
+        parse();
+        return offered[index] && total[index] >= required;
+    }
+
+    private double scalar(double[] values, int index) {
+        parse();
+        return values[index];
+    }
+
+    private void parse() {
+        if (parsed) {
+            return;
+        }
+        parsed = true;
+        int ranges = 0;
+        int volumeCount = 0;
+        for (int i = 0; i < resources.size(); i++) {
+            Protos.Resource resource = resources.get(i);
+            if (resource.getName().equals(Resources.RESOURCE_PORTS)) {
+                ranges += resource.getRanges().getRangeCount();
+            } else if (isVolume(resource)) {
+                volumeCount++;
+            }
+        }
+        portBegins = new int[ranges];
+        portEnds = new int[ranges];
+        if (volumeCount > 0) {
+            volumes = new Protos.Resource[volumeCount];
+        }
+
+        int range = 0;
+        int volume = 0;
+        for (int i = 0; i < resources.size(); i++) {
+            Protos.Resource resource = resources.get(i);
+            String name = resource.getName();
+            if (name.equals(Resources.RESOURCE_PORTS)) {
+                for (Protos.Value.Range portRange : resource.getRanges().getRangeList()) {
+                    portBegins[range] = (int) portRange.getBegin();
+                    portEnds[range] = (int) portRange.getEnd();
+                    portCount += portRange.getEnd() - portRange.getBegin() + 1;
+                    range++;
+                }
+                continue;
+            }
+            int index = scalarIndex(name);
+            if (index < 0 || !resource.hasScalar()) {
+                continue;
+            }
+            offered[index] = true;
+            total[index] += resource.getScalar().getValue();
+            boolean forRole = resource.getRole().equals(frameworkRole);
+            boolean isVolume = isVolume(resource);
+            if (isVolume) {
+                volumes[volume++] = resource;
+            } else if (forRole && resource.hasReservation()) {
+                reserved[index] += resource.getScalar().getValue();
+                reservations.add(resource);
+            }
+            if (index == DISK && (isVolume || forRole && !frameworkRole.equals("*"))) {
+                diskForRole = true;
+            }
+        }
+        sortPorts();
+    }
+
+    private void sortPorts() {
+        for (int i = 1; i < portBegins.length; i++) { // Insertion sort, there are only ever a few ranges
+            int begin = portBegins[i];
+            int end = portEnds[i];
+            int j = i - 1;
+            while (j >= 0 && portBegins[j] > begin) {
+                portBegins[j + 1] = portBegins[j];
+                portEnds[j + 1] = portEnds[j];
+                j--;
+            }
+            portBegins[j + 1] = begin;
+            portEnds[j + 1] = end;
+        }
+    }
+
+    private static boolean isVolume(Protos.Resource resource) {
+        return resource.hasDisk() && resource.getDisk().hasPersistence() && scalarIndex(resource.getName()) >= 0 && resource.hasScalar();
+    }
+
+    private static int scalarIndex(String name) {
+        switch (name) {
+            case Resources.RESOURCE_CPUS:
+                return CPUS;
+            case Resources.RESOURCE_MEM:
+                return MEM;
+            case Resources.RESOURCE_DISK:
+                return DISK;
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        parse();
+        return "cpus=" + total[CPUS] + ", mem=" + total[MEM] + ", disk=" + total[DISK] + ", ports=" + portCount
+                + ", volumes=" + Arrays.stream(volumes).map(volume -> volume.getDisk().getPersistence().getId()).collect(Collectors.toList());
+    }
+}
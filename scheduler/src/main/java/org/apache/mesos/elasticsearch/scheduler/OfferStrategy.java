@@ -1,117 +1,232 @@
 package org.apache.mesos.elasticsearch.scheduler;
 
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos;
-import org.apache.mesos.elasticsearch.common.util.NetworkUtils;
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
+import org.apache.mesos.elasticsearch.scheduler.cluster.NodeLivenessProbe;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 
-import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 /**
  * Offer strategy
  */
 public class OfferStrategy {
     protected static final Logger LOGGER = Logger.getLogger(ElasticsearchScheduler.class.toString());
-    public static final int DUMMY_PORT = 80;
+    public static final double REFUSE_SECONDS_DEFAULT = 5; // The Mesos default
+    public static final double REFUSE_SECONDS_RESOURCES = 30; // Resources on an agent may be freed at any time
+    public static final double REFUSE_SECONDS_UNTIL_REVIVED = 300; // Declined until a node is needed, see OfferSuppression
     protected ClusterState clusterState;
     protected Configuration configuration;
+    protected NodeLivenessProbe livenessProbe;
+    protected OfferFitness fitness; // Null to use offers in the order they arrive
+
+    public static final int REORDER_INTERVAL = 1000; // Evaluations between reorderings of the rules, if adaptive
 
     protected List<OfferRule> acceptanceRules = null;
+    private volatile List<OfferRule> ruleOrder = null; // The order the rules are evaluated in
+    private final LongAdder evaluations = new LongAdder();
 
     protected boolean isHostnameResolveable(String hostname) {
         LOGGER.debug("Attempting to resolve hostname: " + hostname);
-        InetSocketAddress address = new InetSocketAddress(hostname, DUMMY_PORT);
-        return !address.isUnresolved();
-    }
-
-    protected boolean isAtLeastOneESNodeRunning() {
-        // If this is the first, do not check
-        final Map<String, Task> taskList = clusterState.getGuiTaskList();
-        if (taskList.size() == 0) {
-            return true;
-        } else {
-            try {
-                // TODO (PNW): Better get HTTP address method. We do this everywhere.
-                InetSocketAddress clientAddress = taskList.get(clusterState.getTaskList().get(0).getTaskId().getValue()).getClientAddress();
-                String hostAddress = NetworkUtils.addressToString(clientAddress, configuration.getIsUseIpAddress());
-                return Unirest.get(hostAddress).asString().getStatus() == 200;
-            } catch (UnirestException e) {
-                return false;
-            }
-        }
+        return DnsCache.getDefault().resolve(hostname).isPresent();
     }
 
-    protected OfferStrategy(Configuration configuration, ClusterState clusterState) {
+    protected OfferStrategy(Configuration configuration, ClusterState clusterState, NodeLivenessProbe livenessProbe) {
         this.clusterState = clusterState;
         this.configuration = configuration;
+        this.livenessProbe = livenessProbe;
+        this.fitness = WeightedOfferFitness.isEnabled(configuration) ? new WeightedOfferFitness(configuration) : null;
+    }
+
+    public void setFitness(OfferFitness fitness) {
+        this.fitness = fitness;
+    }
+
+    /**
+     * Orders a batch of offers, best first, by the fitness function if there is one. Evaluating the offers in this order
+     * launches nodes on the best acceptable offers; the rest are declined, e.g. once the cluster size has been reached.
+     *
+     * Final, so that it is not stubbed out in mocks; the ranking is controlled through the fitness function.
+     */
+    public final List<Protos.Offer> rank(ClusterSnapshot cluster, List<Protos.Offer> offers) {
+        if (fitness == null || offers.size() < 2) {
+            return offers;
+        }
+        final Map<Protos.Offer, Double> scores = new IdentityHashMap<>();
+        offers.forEach(offer -> scores.put(offer, fitness.score(cluster, offer)));
+        final List<Protos.Offer> ranked = new ArrayList<>(offers);
+        ranked.sort(Comparator.comparingDouble((Protos.Offer offer) -> scores.get(offer)).reversed());
+        if (LOGGER.isDebugEnabled()) {
+            ranked.forEach(offer -> LOGGER.debug("Offer " + offer.getId().getValue() + " from " + offer.getHostname() + " scored " + scores.get(offer)));
+        }
+        return ranked;
     }
 
     protected OfferResult evaluate(Protos.Offer offer) {
-        final Optional<OfferRule> decline = acceptanceRules.stream().filter(offerRule -> offerRule.rule.accepts(offer)).limit(1).findFirst();
-        if (decline.isPresent()) {
-            return OfferResult.decline(decline.get().declineReason);
+        return evaluate(new ClusterSnapshot(clusterState.getTaskList()), offer);
+    }
+
+    /**
+     * Evaluates an offer against a snapshot of the cluster, see {@link ClusterSnapshot}. The caller is responsible for
+     * adding any task it launches for the offer to the snapshot. The resources of the offer are parsed once per
+     * snapshot, see {@link ClusterSnapshot#getResources(Protos.Offer, String)}.
+     */
+    protected OfferResult evaluate(ClusterSnapshot cluster, Protos.Offer offer) {
+        final OfferResources resources = cluster.getResources(offer, configuration.getFrameworkRole());
+        final List<OfferRule> rules = nextRuleOrder();
+        for (int i = 0; i < rules.size(); i++) {
+            final OfferRule offerRule = rules.get(i);
+            final long start = System.nanoTime();
+            final boolean declined = offerRule.rule.accepts(cluster, offer, resources);
+            offerRule.record(System.nanoTime() - start, declined);
+            if (declined) {
+                return OfferResult.decline(offerRule.declineReason, offerRule.refuseSeconds);
+            }
         }
 
         LOGGER.info("Accepted offer: " + offer.getHostname());
         return OfferResult.accept();
     }
 
+    /**
+     * @return the statistics of each rule, in the order the rules are currently evaluated in. Does not affect the order.
+     */
+    public List<RuleMetrics> getRuleMetrics() {
+        return getRuleOrder().stream().map(RuleMetrics::new).collect(Collectors.toList());
+    }
+
+    /**
+     * The rules in the order they are given, or, with adaptive ordering enabled, reordered every
+     * {@link #REORDER_INTERVAL} evaluations so that the rules that reject offers at the lowest cost come first. An offer
+     * is only accepted if it passes every rule, so the order only affects how quickly, and for which reason, an offer is
+     * declined. The statistics of a rule only cover the offers that reached it.
+     *
+     * Counts an evaluation, so must only be called to evaluate an offer.
+     */
+    private List<OfferRule> nextRuleOrder() {
+        evaluations.increment();
+        if (configuration.isOfferRuleAdaptiveOrdering() && evaluations.sum() % REORDER_INTERVAL == 0) {
+            final List<OfferRule> reordered = new ArrayList<>(acceptanceRules);
+            reordered.sort(Comparator.comparingDouble(OfferRule::getNanosPerRejection)); // Stable, so ties keep the given order
+            ruleOrder = reordered;
+        }
+        return getRuleOrder();
+    }
+
+    private List<OfferRule> getRuleOrder() {
+        if (ruleOrder == null) {
+            ruleOrder = new ArrayList<>(acceptanceRules);
+        }
+        return ruleOrder;
+    }
+
     /**
      * Offer result
      */
     protected static class OfferResult {
         final boolean acceptable;
         final Optional<String> reason;
+        final double refuseSeconds;
 
-        private OfferResult(boolean acceptable, Optional<String> reason) {
+        private OfferResult(boolean acceptable, Optional<String> reason, double refuseSeconds) {
             this.acceptable = acceptable;
             this.reason = reason;
+            this.refuseSeconds = refuseSeconds;
         }
 
         public static OfferResult accept() {
-            return new OfferResult(true, Optional.<String>empty());
+            return new OfferResult(true, Optional.<String>empty(), 0);
         }
 
         public static OfferResult decline(String reason) {
-            return new OfferResult(false, Optional.of(reason));
+            return decline(reason, REFUSE_SECONDS_DEFAULT);
+        }
+
+        /**
+         * @param refuseSeconds how long the master should not offer the resources again
+         */
+        public static OfferResult decline(String reason, double refuseSeconds) {
+            return new OfferResult(false, Optional.of(reason), refuseSeconds);
         }
     }
 
-    protected boolean isHostAlreadyRunningTask(Protos.Offer offer) {
-        Boolean result = false;
-        List<Protos.TaskInfo> stateList = clusterState.getTaskList();
-        for (Protos.TaskInfo t : stateList) {
-            if (t.getSlaveId().equals(offer.getSlaveId())) {
-                result = true;
-            }
+    protected boolean isHostAlreadyRunningTask(ClusterSnapshot cluster, Protos.Offer offer) {
+        return cluster.isSlaveRunningTask(offer.getSlaveId());
+    }
+
+    /**
+     * Agents without one of the attributes are not constrained by it.
+     */
+    protected boolean isAttributeValueAlreadyRunningTask(ClusterSnapshot cluster, Protos.Offer offer) {
+        final List<String> uniqueAttributes = configuration.getPlacementUniqueAttributes();
+        if (uniqueAttributes.isEmpty()) {
+            return false;
         }
-        return result;
+        final Map<String, String> attributes = AgentAttributes.toMap(offer.getAttributesList());
+        return uniqueAttributes.stream()
+                .anyMatch(name -> attributes.containsKey(name) && cluster.countTasksWithAttribute(name, attributes.get(name)) > 0);
+    }
+
+    protected boolean isAttributeValueFull(ClusterSnapshot cluster, Protos.Offer offer) {
+        final Map<String, Integer> maxPerAttribute = configuration.getPlacementMaxPerAttribute();
+        if (maxPerAttribute.isEmpty()) {
+            return false;
+        }
+        final Map<String, String> attributes = AgentAttributes.toMap(offer.getAttributesList());
+        return maxPerAttribute.entrySet().stream()
+                .anyMatch(max -> attributes.containsKey(max.getKey()) && cluster.countTasksWithAttribute(max.getKey(), attributes.get(max.getKey())) >= max.getValue());
+    }
+
+    /**
+     * Holds back offers from other agents while lost nodes wait for their own agents, unless more nodes are missing than
+     * are waiting.
+     */
+    protected boolean isReservedForLostNode(ClusterSnapshot cluster, Protos.Offer offer) {
+        final Set<String> relaunchSlaveIds = cluster.getRelaunchSlaveIds();
+        return !relaunchSlaveIds.isEmpty()
+                && !relaunchSlaveIds.contains(offer.getSlaveId().getValue())
+                && configuration.getElasticsearchNodes() - cluster.getTaskCount() <= relaunchSlaveIds.size();
+    }
+
+    /**
+     * Reads the cached result of the liveness probe, so never blocks on the node itself.
+     */
+    protected boolean isAtLeastOneESNodeRunning(ClusterSnapshot cluster) {
+        return cluster.isFirstNodeResponding(taskInfo -> livenessProbe.isLive(taskInfo.getTaskId().getValue()));
     }
 
-    protected boolean isEnoughCPU(Configuration configuration, List<Protos.Resource> resourcesList) {
-        return new ResourceCheck(Resources.RESOURCE_CPUS).isEnough(resourcesList, configuration.getCpus());
+    protected boolean isClusterSizeFulfilled(ClusterSnapshot cluster) {
+        return cluster.getTaskCount() >= configuration.getElasticsearchNodes();
     }
 
-    protected boolean isEnoughRAM(Configuration configuration, List<Protos.Resource> resourcesList) {
-        return new ResourceCheck(Resources.RESOURCE_MEM).isEnough(resourcesList, configuration.getMem());
+    protected boolean isEnoughCPU(Configuration configuration, OfferResources resources) {
+        return resources.isEnoughCpus(configuration.getCpus());
     }
 
-    protected boolean containsTwoPorts(List<Protos.Resource> resources) {
-        return Resources.selectTwoPortsFromRange(resources).size() == 2;
+    protected boolean isEnoughRAM(Configuration configuration, OfferResources resources) {
+        return resources.isEnoughMem(configuration.getMem());
     }
 
-    protected boolean containsUserSpecifiedPorts(List<Protos.Resource> resourcesList) {
+    protected boolean containsTwoPorts(OfferResources resources) {
+        return resources.getPortCount() >= 2;
+    }
+
+    protected boolean containsUserSpecifiedPorts(OfferResources resources) {
         // If there are user specified ports, check each port is contained within the offer
-        if (!configuration.getElasticsearchPorts().isEmpty()) {
-            for (Integer port : configuration.getElasticsearchPorts()) {
-                if (!Resources.isPortAvailable(resourcesList, port)) {
-                    return false;
-                }
+        final List<Integer> ports = configuration.getElasticsearchPorts();
+        for (int i = 0; i < ports.size(); i++) {
+            if (!resources.isPortAvailable(ports.get(i))) {
+                return false;
             }
         }
         return true;
@@ -122,12 +237,57 @@ public class OfferStrategy {
      */
     protected static class OfferRule {
         String declineReason;
+        double refuseSeconds;
         Rule rule;
+        final LongAdder evaluations = new LongAdder();
+        final LongAdder rejections = new LongAdder();
+        final LongAdder nanos = new LongAdder();
 
         public OfferRule(String declineReason, Rule rule) {
+            this(declineReason, REFUSE_SECONDS_DEFAULT, rule);
+        }
+
+        public OfferRule(String declineReason, double refuseSeconds, Rule rule) {
             this.declineReason = declineReason;
+            this.refuseSeconds = refuseSeconds;
             this.rule = rule;
         }
+
+        void record(long durationNanos, boolean declined) {
+            evaluations.increment();
+            nanos.add(durationNanos);
+            if (declined) {
+                rejections.increment();
+            }
+        }
+
+        /**
+         * The expected time spent in this rule per offer it rejects. Rules that have not rejected anything come last.
+         */
+        double getNanosPerRejection() {
+            final long rejected = rejections.sum();
+            return rejected == 0 ? Double.MAX_VALUE : (double) nanos.sum() / rejected;
+        }
+    }
+
+    /**
+     * Statistics of a rule, HTTP response entity class
+     */
+    public static class RuleMetrics {
+        public String reason;
+        public long evaluations;
+        public long rejections;
+        public double totalMillis;
+        public double meanMicros;
+
+        RuleMetrics(OfferRule offerRule) {
+            reason = offerRule.declineReason;
+            evaluations = offerRule.evaluations.sum();
+            rejections = offerRule.rejections.sum();
+            final long nanos = offerRule.nanos.sum();
+            totalMillis = TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0;
+            meanMicros = evaluations == 0 ? 0 : nanos / evaluations / 1000.0;
+        }
     }
 
     /**
@@ -135,6 +295,6 @@ public class OfferStrategy {
      */
     @FunctionalInterface
     protected interface Rule {
-        boolean accepts(Protos.Offer offer);
+        boolean accepts(ClusterSnapshot cluster, Protos.Offer offer, OfferResources resources);
     }
 }
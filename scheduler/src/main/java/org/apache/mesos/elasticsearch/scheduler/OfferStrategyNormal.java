@@ -1,10 +1,8 @@
 package org.apache.mesos.elasticsearch.scheduler;
 
-import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.cluster.NodeLivenessProbe;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 
-import java.util.List;
-
 import static java.util.Arrays.asList;
 
 /**
@@ -12,24 +10,27 @@ import static java.util.Arrays.asList;
  */
 public class OfferStrategyNormal extends OfferStrategy {
 
-    public OfferStrategyNormal(Configuration configuration, ClusterState clusterState) {
-        super(configuration, clusterState);
+    public OfferStrategyNormal(Configuration configuration, ClusterState clusterState, NodeLivenessProbe livenessProbe) {
+        super(configuration, clusterState, livenessProbe);
 
         acceptanceRules = asList(
-                new OfferRule("Host already running task", this::isHostAlreadyRunningTask),
-                new OfferRule("Hostname is unresolveable", offer -> !isHostnameResolveable(offer.getHostname())),
-                new OfferRule("First ES node is not responding", offer -> !isAtLeastOneESNodeRunning()),
-                new OfferRule("Cluster size already fulfilled", offer -> clusterState.getTaskList().size() >= configuration.getElasticsearchNodes()),
-                new OfferRule("Offer did not have 2 ports", offer -> !containsTwoPorts(offer.getResourcesList())),
-                new OfferRule("The offer does not contain the user specified ports", offer -> !containsUserSpecifiedPorts(offer.getResourcesList())),
-                new OfferRule("Offer did not have enough CPU resources", offer -> !isEnoughCPU(configuration, offer.getResourcesList())),
-                new OfferRule("Offer did not have enough RAM resources", offer -> !isEnoughRAM(configuration, offer.getResourcesList())),
-                new OfferRule("Offer did not have enough disk resources", offer -> !isEnoughDisk(configuration, offer.getResourcesList()))
+                new OfferRule("Host already running task", REFUSE_SECONDS_UNTIL_REVIVED, (cluster, offer, resources) -> isHostAlreadyRunningTask(cluster, offer)),
+                new OfferRule("Attribute value already running task", REFUSE_SECONDS_UNTIL_REVIVED, (cluster, offer, resources) -> isAttributeValueAlreadyRunningTask(cluster, offer)),
+                new OfferRule("Attribute value already running maximum number of tasks", REFUSE_SECONDS_UNTIL_REVIVED, (cluster, offer, resources) -> isAttributeValueFull(cluster, offer)),
+                new OfferRule("Hostname is unresolveable", REFUSE_SECONDS_RESOURCES, (cluster, offer, resources) -> !isHostnameResolveable(offer.getHostname())),
+                new OfferRule("First ES node is not responding", (cluster, offer, resources) -> !isAtLeastOneESNodeRunning(cluster)),
+                new OfferRule("Cluster size already fulfilled", REFUSE_SECONDS_UNTIL_REVIVED, (cluster, offer, resources) -> isClusterSizeFulfilled(cluster)),
+                new OfferRule("Waiting for the agent of a lost node", (cluster, offer, resources) -> isReservedForLostNode(cluster, offer)),
+                new OfferRule("Offer did not have 2 ports", REFUSE_SECONDS_RESOURCES, (cluster, offer, resources) -> !containsTwoPorts(resources)),
+                new OfferRule("The offer does not contain the user specified ports", REFUSE_SECONDS_RESOURCES, (cluster, offer, resources) -> !containsUserSpecifiedPorts(resources)),
+                new OfferRule("Offer did not have enough CPU resources", REFUSE_SECONDS_RESOURCES, (cluster, offer, resources) -> !isEnoughCPU(configuration, resources)),
+                new OfferRule("Offer did not have enough RAM resources", REFUSE_SECONDS_RESOURCES, (cluster, offer, resources) -> !isEnoughRAM(configuration, resources)),
+                new OfferRule("Offer did not have enough disk resources", REFUSE_SECONDS_RESOURCES, (cluster, offer, resources) -> !isEnoughDisk(configuration, resources))
         );
     }
 
-    private boolean isEnoughDisk(Configuration configuration, List<Protos.Resource> resourcesList) {
-        return new ResourceCheck(Resources.RESOURCE_DISK).isEnough(resourcesList, configuration.getDisk());
+    private boolean isEnoughDisk(Configuration configuration, OfferResources resources) {
+        return resources.isEnoughDisk(configuration.getDisk());
     }
 
 }
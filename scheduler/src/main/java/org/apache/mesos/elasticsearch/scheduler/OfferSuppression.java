@@ -0,0 +1,96 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.log4j.Logger;
+import org.apache.mesos.SchedulerDriver;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Suppresses offers while the cluster has as many tasks as it should, and revives them when it has fewer. Reviving also
+ * clears all decline filters, so offers declined for a long time are seen again as soon as a node is needed. For the same
+ * reason offers are revived whenever a task is lost, suppressed or not.
+ *
+ * Also counts declined offers per reason.
+ */
+public class OfferSuppression {
+    private static final Logger LOGGER = Logger.getLogger(OfferSuppression.class);
+
+    private final Clock clock;
+
+    // Guarded by this
+    private boolean suppressed = false;
+    private int lastTaskCount = 0;
+    private long suppressedSince = 0;
+    private long suppressions = 0;
+    private long revivals = 0;
+    private long totalSuppressedMillis = 0;
+    private final Map<String, Long> declines = new TreeMap<>();
+
+    public OfferSuppression() {
+        this(new Clock());
+    }
+
+    public OfferSuppression(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Suppresses or revives offers if the cluster has reached or dropped below its target size.
+     */
+    public synchronized void update(SchedulerDriver driver, int taskCount, int targetTaskCount) {
+        if (taskCount >= targetTaskCount && !suppressed) {
+            LOGGER.info("Cluster has " + taskCount + " of " + targetTaskCount + " tasks. Suppressing offers");
+            driver.suppressOffers();
+            suppressed = true;
+            suppressedSince = clock.now().getTime();
+            suppressions++;
+        } else if (taskCount < targetTaskCount && (suppressed || taskCount < lastTaskCount)) {
+            LOGGER.info("Cluster has " + taskCount + " of " + targetTaskCount + " tasks. Reviving offers");
+            driver.reviveOffers();
+            reset();
+            revivals++;
+        }
+        lastTaskCount = taskCount;
+    }
+
+    /**
+     * Forget about any suppression, e.g. when the framework has (re)registered with a master that does not know about it.
+     */
+    public synchronized void reset() {
+        if (suppressed) {
+            suppressed = false;
+            totalSuppressedMillis += clock.now().getTime() - suppressedSince;
+        }
+    }
+
+    public synchronized boolean isSuppressed() {
+        return suppressed;
+    }
+
+    public synchronized void declined(String reason) {
+        declines.merge(reason, 1L, Long::sum);
+    }
+
+    public synchronized Metrics getMetrics() {
+        Metrics metrics = new Metrics();
+        metrics.suppressed = suppressed;
+        metrics.suppressions = suppressions;
+        metrics.revivals = revivals;
+        metrics.suppressedMillis = totalSuppressedMillis + (suppressed ? clock.now().getTime() - suppressedSince : 0);
+        metrics.declines = new TreeMap<>(declines);
+        return metrics;
+    }
+
+    /**
+     * Snapshot of the suppression metrics. The suppressed time includes the current suppressed period, if any.
+     */
+    public static class Metrics {
+        public boolean suppressed;
+        public long suppressions;
+        public long revivals;
+        public long suppressedMillis;
+        public Map<String, Long> declines;
+    }
+}
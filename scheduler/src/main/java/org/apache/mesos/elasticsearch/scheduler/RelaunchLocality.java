@@ -0,0 +1,105 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.log4j.Logger;
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Remembers the agents that nodes were lost on, so that a lost node is relaunched on the same agent. Its data directory
+ * is still there, so the node recovers its shards locally instead of copying them over the network. An agent is
+ * remembered for the window only; if it does not offer resources by then the node is relaunched on any agent. Nodes that
+ * were killed or finished on purpose, e.g. to move them off an agent, are relaunched on any agent straight away.
+ *
+ * The agents are only remembered in memory, so they are forgotten when the scheduler restarts.
+ */
+public class RelaunchLocality {
+    private static final Logger LOGGER = Logger.getLogger(RelaunchLocality.class);
+
+    private final long windowMs;
+    private final Clock clock;
+
+    // Guarded by this
+    private final Map<String, Long> lostAt = new LinkedHashMap<>(); // By slave ID
+    private long localRelaunches = 0;
+    private long expired = 0;
+
+    public RelaunchLocality(long windowMs) {
+        this(windowMs, new Clock());
+    }
+
+    /**
+     * @param windowMs how long to wait for the agent of a lost node. Zero to not wait at all.
+     */
+    public RelaunchLocality(long windowMs, Clock clock) {
+        this.windowMs = windowMs;
+        this.clock = clock;
+    }
+
+    /**
+     * @return whether the task ended unexpectedly, so that it should be relaunched on the same agent
+     */
+    public static boolean isLost(Protos.TaskState state) {
+        return state.equals(Protos.TaskState.TASK_LOST) || state.equals(Protos.TaskState.TASK_FAILED)
+                || state.equals(Protos.TaskState.TASK_ERROR);
+    }
+
+    public synchronized void taskLost(Protos.SlaveID slaveID) {
+        if (windowMs > 0) {
+            LOGGER.info("Waiting up to " + windowMs + "ms for an offer from agent " + slaveID.getValue() + " to relaunch the lost node on");
+            lostAt.put(slaveID.getValue(), clock.now().getTime());
+        }
+    }
+
+    public synchronized void taskLaunched(Protos.SlaveID slaveID) {
+        if (lostAt.remove(slaveID.getValue()) != null) {
+            LOGGER.info("Relaunched lost node on agent " + slaveID.getValue());
+            localRelaunches++;
+        }
+    }
+
+    /**
+     * @return the agents that lost nodes are waiting for
+     */
+    public synchronized Set<String> getWaitingSlaveIds() {
+        expire();
+        return new TreeSet<>(lostAt.keySet());
+    }
+
+    public synchronized Metrics getMetrics() {
+        expire();
+        Metrics metrics = new Metrics();
+        metrics.windowMs = windowMs;
+        metrics.waitingSlaveIds = new TreeSet<>(lostAt.keySet());
+        metrics.localRelaunches = localRelaunches;
+        metrics.expired = expired;
+        return metrics;
+    }
+
+    private void expire() {
+        final long now = clock.now().getTime();
+        for (Iterator<Map.Entry<String, Long>> iterator = lostAt.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, Long> lost = iterator.next();
+            if (now - lost.getValue() >= windowMs) {
+                LOGGER.info("No offer from agent " + lost.getKey() + " within " + windowMs + "ms. Relaunching the lost node on any agent");
+                iterator.remove();
+                expired++;
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the relaunch metrics. Expired counts the lost nodes that could not be relaunched on their own agent.
+     */
+    public static class Metrics {
+        public long windowMs;
+        public Set<String> waitingSlaveIds;
+        public long localRelaunches;
+        public long expired;
+    }
+}
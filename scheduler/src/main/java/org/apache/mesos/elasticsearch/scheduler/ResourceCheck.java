@@ -18,14 +18,25 @@ public class ResourceCheck {
     }
 
     /**
-     * Check to see if the required amount of resources is contained within the resources list.
+     * Check to see if the required amount of resources is contained within the resources list. The amounts of all roles
+     * are added up, since resources that are reserved for the framework role are offered separately from the rest.
      * @param resourcesList a list of resources
      * @param requiredValue the required minimum amount of resource
      * @return true if there are enough resources
      */
     public Boolean isEnough(List<Protos.Resource> resourcesList, double requiredValue) {
         Protos.Resource resource = getResource(resourcesList);
-        return resource != null && resource.getScalar() != null && resource.getScalar().getValue() >= requiredValue;
+        return resource != null && resource.getScalar() != null && getAvailable(resourcesList) >= requiredValue;
+    }
+
+    /**
+     * @return the total amount of the resource in the list, whichever role it is for
+     */
+    public double getAvailable(List<Protos.Resource> resourcesList) {
+        return resourcesList.stream()
+                .filter(resource -> resource.getName().equals(resourceName) && resource.hasScalar())
+                .mapToDouble(resource -> resource.getScalar().getValue())
+                .sum();
     }
 
     private Protos.Resource getResource(List<Protos.Resource> resourcesList) {
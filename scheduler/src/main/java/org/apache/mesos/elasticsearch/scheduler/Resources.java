@@ -62,6 +62,26 @@ public class Resources {
                 .build();
     }
 
+    /**
+     * @return the resource, dynamically reserved for its role by the principal
+     */
+    public static Protos.Resource reserved(Protos.Resource resource, String principal) {
+        return Protos.Resource.newBuilder(resource)
+                .setReservation(Protos.Resource.ReservationInfo.newBuilder().setPrincipal(principal))
+                .build();
+    }
+
+    /**
+     * @param containerPath where the volume is mounted, relative to the sandbox
+     */
+    public static Protos.Resource persistentVolume(double disk, String frameworkRole, String principal, String persistenceId, String containerPath) {
+        return Protos.Resource.newBuilder(reserved(disk(disk, frameworkRole), principal))
+                .setDisk(Protos.Resource.DiskInfo.newBuilder()
+                        .setPersistence(Protos.Resource.DiskInfo.Persistence.newBuilder().setId(persistenceId))
+                        .setVolume(Protos.Volume.newBuilder().setContainerPath(containerPath).setMode(Protos.Volume.Mode.RW)))
+                .build();
+    }
+
     public static List<Integer> selectTwoPortsFromRange(List<Protos.Resource> offeredResources) {
         List<Integer> ports = new ArrayList<>();
         offeredResources.stream().filter(resource -> resource.getType().equals(org.apache.mesos.Protos.Value.Type.RANGES))
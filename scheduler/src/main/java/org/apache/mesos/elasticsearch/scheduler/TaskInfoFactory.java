@@ -4,6 +4,7 @@ import com.google.protobuf.ByteString;
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos;
 import org.apache.mesos.elasticsearch.common.Discovery;
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
 import org.apache.mesos.elasticsearch.scheduler.configuration.ExecutorEnvironmentalVariables;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
@@ -12,12 +13,16 @@ import org.apache.mesos.elasticsearch.scheduler.util.Clock;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -32,6 +37,7 @@ public class TaskInfoFactory {
     private static final Logger LOGGER = Logger.getLogger(TaskInfoFactory.class);
 
     public static final String TASK_DATE_FORMAT = "yyyyMMdd'T'HHmmss.SSS'Z'";
+    private static final String ATTRIBUTE_PREFIX = "attribute.";
 
     private final ClusterState clusterState;
 
@@ -48,6 +54,13 @@ public class TaskInfoFactory {
      * @return TaskInfo
      */
     public Protos.TaskInfo createTask(Configuration configuration, FrameworkState frameworkState, Protos.Offer offer, Clock clock) {
+        return createTask(configuration, frameworkState, offer, OfferResources.of(offer, configuration.getFrameworkRole()), clock);
+    }
+
+    /**
+     * @param resources the resources of the offer, already parsed, e.g. by {@link ClusterSnapshot#getResources(Protos.Offer, String)}
+     */
+    public Protos.TaskInfo createTask(Configuration configuration, FrameworkState frameworkState, Protos.Offer offer, OfferResources resources, Clock clock) {
         //this creates and assigns a unique id to an elastic search node
         long elasticSearchNodeId = configuration.getExternalVolumeDriver() != null && configuration.getExternalVolumeDriver().length() > 0 ?
                 clusterState.getElasticNodeId() : ExecutorEnvironmentalVariables.EXTERNAL_VOLUME_NOT_CONFIGURED;
@@ -55,20 +68,20 @@ public class TaskInfoFactory {
         LOGGER.debug("Elastic Search Node Id: " + elasticSearchNodeId);
         if (configuration.isFrameworkUseDocker()) {
             LOGGER.debug("Building Docker task");
-            Protos.TaskInfo taskInfo = buildDockerTask(offer, configuration, clock, elasticSearchNodeId);
+            Protos.TaskInfo taskInfo = buildDockerTask(offer, resources, configuration, clock, elasticSearchNodeId);
             LOGGER.debug(taskInfo.toString());
             return taskInfo;
         } else {
             LOGGER.debug("Building native task");
-            Protos.TaskInfo taskInfo = buildNativeTask(offer, configuration, clock, elasticSearchNodeId);
+            Protos.TaskInfo taskInfo = buildNativeTask(offer, resources, configuration, clock, elasticSearchNodeId);
             LOGGER.debug(taskInfo.toString());
             return taskInfo;
         }
     }
 
-    private Protos.TaskInfo buildNativeTask(Protos.Offer offer, Configuration configuration, Clock clock, Long elasticSearchNodeId) {
-        final List<Integer> ports = getPorts(offer, configuration);
-        final List<Protos.Resource> resources = getResources(configuration, ports);
+    private Protos.TaskInfo buildNativeTask(Protos.Offer offer, OfferResources offered, Configuration configuration, Clock clock, Long elasticSearchNodeId) {
+        final List<Integer> ports = getPorts(offered, configuration);
+        final List<Protos.Resource> resources = getResources(configuration, offered, ports);
         final Protos.DiscoveryInfo discovery = getDiscovery(ports, configuration);
         final Protos.Labels labels = getLabels(configuration);
 
@@ -76,11 +89,12 @@ public class TaskInfoFactory {
 
         LOGGER.info("Creating Elasticsearch task with resources: " + resources.toString());
 
-        final List<String> args = configuration.esArguments(clusterState, discovery, offer.getSlaveId());
+        final Map<String, String> attributes = AgentAttributes.toMap(offer.getAttributesList());
+        final List<String> args = configuration.esArguments(clusterState, discovery, offer.getSlaveId(), attributes);
 
         return Protos.TaskInfo.newBuilder()
                 .setName(configuration.getTaskName())
-                .setData(toData(offer.getHostname(), hostAddress, clock.nowUTC()))
+                .setData(toData(offer.getHostname(), hostAddress, clock.nowUTC(), attributes))
                 .setTaskId(Protos.TaskID.newBuilder().setValue(taskId(offer, clock)))
                 .setSlaveId(offer.getSlaveId())
                 .addAllResources(resources)
@@ -90,9 +104,9 @@ public class TaskInfoFactory {
                 .build();
     }
 
-    private Protos.TaskInfo buildDockerTask(Protos.Offer offer, Configuration configuration, Clock clock, Long elasticSearchNodeId) {
-        final List<Integer> ports = getPorts(offer, configuration);
-        final List<Protos.Resource> resources = getResources(configuration, ports);
+    private Protos.TaskInfo buildDockerTask(Protos.Offer offer, OfferResources offered, Configuration configuration, Clock clock, Long elasticSearchNodeId) {
+        final List<Integer> ports = getPorts(offered, configuration);
+        final List<Protos.Resource> resources = getResources(configuration, offered, ports);
         final Protos.DiscoveryInfo discovery = getDiscovery(ports, configuration);
         final Protos.Labels labels = getLabels(configuration);
 
@@ -101,12 +115,13 @@ public class TaskInfoFactory {
         LOGGER.info("Creating Elasticsearch task with resources: " + resources.toString());
 
         final Protos.TaskID taskId = Protos.TaskID.newBuilder().setValue(taskId(offer, clock)).build();
-        final List<String> args = configuration.esArguments(clusterState, discovery, offer.getSlaveId());
+        final Map<String, String> attributes = AgentAttributes.toMap(offer.getAttributesList());
+        final List<String> args = configuration.esArguments(clusterState, discovery, offer.getSlaveId(), attributes);
         final Protos.ContainerInfo containerInfo = getContainer(configuration, taskId, elasticSearchNodeId, offer.getSlaveId());
 
         return Protos.TaskInfo.newBuilder()
                 .setName(configuration.getTaskName())
-                .setData(toData(offer.getHostname(), hostAddress, clock.nowUTC()))
+                .setData(toData(offer.getHostname(), hostAddress, clock.nowUTC(), attributes))
                 .setTaskId(taskId)
                 .setSlaveId(offer.getSlaveId())
                 .addAllResources(resources)
@@ -117,28 +132,129 @@ public class TaskInfoFactory {
                 .build();
     }
 
+    /**
+     * The operations to accept an offer for the task with. With persistent volumes the resources are reserved and the
+     * volume is created first, unless the agent still has them from an earlier node, see
+     * {@link Configuration#isFrameworkUsePersistentVolumes()}.
+     */
+    public List<Protos.Offer.Operation> createOperations(Configuration configuration, Protos.Offer offer, Protos.TaskInfo taskInfo) {
+        return createOperations(configuration, offer, OfferResources.of(offer, configuration.getFrameworkRole()), taskInfo);
+    }
+
+    /**
+     * @param offered the resources of the offer, already parsed
+     */
+    public List<Protos.Offer.Operation> createOperations(Configuration configuration, Protos.Offer offer, OfferResources offered, Protos.TaskInfo taskInfo) {
+        final List<Protos.Offer.Operation> operations = new ArrayList<>();
+        if (configuration.isFrameworkUsePersistentVolumes()) {
+            final String role = configuration.getFrameworkRole();
+            final String principal = configuration.getFrameworkPrincipal();
+            final boolean hasVolume = offered.hasPersistentVolume(configuration.persistentVolumeId());
+
+            final List<Protos.Resource> reserve = new ArrayList<>();
+            final double cpus = configuration.getCpus() - offered.getReservedCpus();
+            if (cpus > 0) {
+                reserve.add(Resources.reserved(Resources.cpus(cpus, role), principal));
+            }
+            final double mem = configuration.getMem() - offered.getReservedMem();
+            if (mem > 0) {
+                reserve.add(Resources.reserved(Resources.mem(mem, role), principal));
+            }
+            final double disk = configuration.getDisk() - offered.getReservedDisk();
+            if (!hasVolume && disk > 0) {
+                reserve.add(Resources.reserved(Resources.disk(disk, role), principal));
+            }
+            if (!reserve.isEmpty()) {
+                LOGGER.info("Reserving resources on " + offer.getHostname() + ": " + reserve);
+                operations.add(Protos.Offer.Operation.newBuilder()
+                        .setType(Protos.Offer.Operation.Type.RESERVE)
+                        .setReserve(Protos.Offer.Operation.Reserve.newBuilder().addAllResources(reserve))
+                        .build());
+            }
+            if (!hasVolume) {
+                LOGGER.info("Creating persistent volume " + configuration.persistentVolumeId() + " on " + offer.getHostname());
+                operations.add(Protos.Offer.Operation.newBuilder()
+                        .setType(Protos.Offer.Operation.Type.CREATE)
+                        .setCreate(Protos.Offer.Operation.Create.newBuilder().addVolumes(persistentVolume(configuration)))
+                        .build());
+            }
+        }
+        operations.add(Protos.Offer.Operation.newBuilder()
+                .setType(Protos.Offer.Operation.Type.LAUNCH)
+                .setLaunch(Protos.Offer.Operation.Launch.newBuilder().addTaskInfos(taskInfo))
+                .build());
+        return operations;
+    }
+
+    /**
+     * The operations to give back the resources of an earlier node in an offer: destroy its persistent volume and
+     * unreserve the disk underneath, and unreserve the cpus, mem and disk the framework principal reserved. Resources
+     * reserved by other principals in the same role are left alone.
+     *
+     * @return no operations if the offer holds nothing of the framework's
+     */
+    public List<Protos.Offer.Operation> createReleaseOperations(Configuration configuration, OfferResources offered) {
+        final List<Protos.Offer.Operation> operations = new ArrayList<>();
+        final String principal = configuration.getFrameworkPrincipal();
+        final List<Protos.Resource> unreserve = offered.getReservations().stream()
+                .filter(resource -> resource.getReservation().getPrincipal().equals(principal))
+                .collect(Collectors.toList());
+        offered.getPersistentVolume(configuration.persistentVolumeId()).ifPresent(volume -> {
+            operations.add(Protos.Offer.Operation.newBuilder()
+                    .setType(Protos.Offer.Operation.Type.DESTROY)
+                    .setDestroy(Protos.Offer.Operation.Destroy.newBuilder().addVolumes(volume))
+                    .build());
+            unreserve.add(Protos.Resource.newBuilder(volume).clearDisk().build());
+        });
+        if (!unreserve.isEmpty()) {
+            operations.add(Protos.Offer.Operation.newBuilder()
+                    .setType(Protos.Offer.Operation.Type.UNRESERVE)
+                    .setUnreserve(Protos.Offer.Operation.Unreserve.newBuilder().addAllResources(unreserve))
+                    .build());
+        }
+        return operations;
+    }
+
+    private Protos.Resource persistentVolume(Configuration configuration) {
+        return Resources.persistentVolume(configuration.getDisk(), configuration.getFrameworkRole(), configuration.getFrameworkPrincipal(),
+                configuration.persistentVolumeId(), Configuration.PERSISTENT_VOLUME_PATH);
+    }
+
     private String resolveHostAddress(Protos.Offer offer, List<Integer> ports) {
         String hostname = offer.getHostname();
         LOGGER.debug("Attempting to resolve hostname: " + hostname);
-        InetSocketAddress address = new InetSocketAddress(hostname, ports.get(0));
-        return address.getAddress().getHostAddress(); // Note this will always resolve because of the check in OfferStrategy
+        return DnsCache.getDefault().resolve(hostname)
+                .map(InetAddress::getHostAddress) // Note this will always resolve because of the check in OfferStrategy
+                .orElseThrow(() -> new IllegalArgumentException("Unable to resolve hostname: " + hostname));
     }
 
-    private List<Integer> getPorts(Protos.Offer offer, Configuration configuration) {
+    private List<Integer> getPorts(OfferResources resources, Configuration configuration) {
         List<Integer> ports;
         List<Integer> elasticsearchPorts = configuration.getElasticsearchPorts();
         if (elasticsearchPorts.isEmpty() || elasticsearchPorts.stream().allMatch(port -> port == 0)) {
             //No ports requested by user or two random ports requested
-            ports = Resources.selectTwoPortsFromRange(offer.getResourcesList());
+            ports = resources.selectTwoPorts();
         } else {
             //Replace a user requested port 0 with a random port
-            ports = elasticsearchPorts.stream().map(port -> port != 0 ?  port : Resources.selectOnePortFromRange(offer.getResourcesList())).collect(Collectors.toList());
+            ports = elasticsearchPorts.stream().map(port -> port != 0 ?  port : resources.selectOnePort()).collect(Collectors.toList());
         }
         return ports;
     }
 
-    private List<Protos.Resource> getResources(Configuration configuration, List<Integer> ports) {
-        List<Protos.Resource> acceptedResources = Resources.buildFrameworkResources(configuration);
+    private List<Protos.Resource> getResources(Configuration configuration, OfferResources offered, List<Integer> ports) {
+        List<Protos.Resource> acceptedResources;
+        if (configuration.isFrameworkUsePersistentVolumes()) {
+            final String principal = configuration.getFrameworkPrincipal();
+            acceptedResources = new ArrayList<>();
+            acceptedResources.add(Resources.reserved(Resources.cpus(configuration.getCpus(), configuration.getFrameworkRole()), principal));
+            acceptedResources.add(Resources.reserved(Resources.mem(configuration.getMem(), configuration.getFrameworkRole()), principal));
+            // An existing volume keeps the size it was created with, even if the configured disk has changed since
+            acceptedResources.add(offered
+                    .getPersistentVolume(configuration.persistentVolumeId())
+                    .orElseGet(() -> persistentVolume(configuration)));
+        } else {
+            acceptedResources = Resources.buildFrameworkResources(configuration);
+        }
         acceptedResources.add(Resources.singlePortRange(ports.get(0), configuration.getFrameworkRole()));
         acceptedResources.add(Resources.singlePortRange(ports.get(1), configuration.getFrameworkRole()));
         return acceptedResources;
@@ -206,6 +322,12 @@ public class TaskInfoFactory {
             dockerInfo.addParameters(Protos.Parameter.newBuilder()
                     .setKey("volume")
                     .setValue(sHostPathOrExternalVolumeForData));
+        } else if (configuration.isFrameworkUsePersistentVolumes()) {
+            builder.addVolumes(Protos.Volume.newBuilder()
+                    .setHostPath(Configuration.PERSISTENT_VOLUME_PATH) // The persistent volume in the sandbox
+                    .setContainerPath(Configuration.CONTAINER_PATH_DATA)
+                    .setMode(Protos.Volume.Mode.RW)
+                    .build());
         } else {
             if (!configuration.getDataDir().isEmpty()) {
                 builder.addVolumes(Protos.Volume.newBuilder()
@@ -276,10 +398,18 @@ public class TaskInfoFactory {
     }
 
     public ByteString toData(String hostname, String ipAddress, ZonedDateTime zonedDateTime) {
+        return toData(hostname, ipAddress, zonedDateTime, Collections.emptyMap());
+    }
+
+    /**
+     * @param attributes the attributes of the agent, so that the placement rules can see where the task runs
+     */
+    public ByteString toData(String hostname, String ipAddress, ZonedDateTime zonedDateTime, Map<String, String> attributes) {
         Properties data = new Properties();
         data.put("hostname", hostname);
         data.put("ipAddress", ipAddress);
         data.put("startedAt", zonedDateTime.toString());
+        attributes.forEach((name, value) -> data.put(ATTRIBUTE_PREFIX + name, value));
 
         StringWriter writer = new StringWriter();
         try {
@@ -295,13 +425,47 @@ public class TaskInfoFactory {
         return String.format("elasticsearch_%s_%s", offer.getHostname(), date);
     }
 
-    public static Task parse(Protos.TaskInfo taskInfo, Protos.TaskStatus taskStatus, Clock clock) {
+    /**
+     * @return the hostname the task was launched on, without parsing the rest of the task
+     */
+    public static String getHostname(Protos.TaskInfo taskInfo) {
+        return data(taskInfo).getProperty("hostname", "");
+    }
+
+    /**
+     * @return the HTTP address of the node, without parsing the rest of the task. Resolved through the {@link DnsCache}.
+     */
+    public static InetSocketAddress getClientAddress(Protos.TaskInfo taskInfo) {
+        Properties data = data(taskInfo);
+        String ipAddress = data.getProperty("ipAddress", data.getProperty("hostname", ""));
+        return DnsCache.getDefault().socketAddress(ipAddress, taskInfo.getDiscovery().getPorts().getPorts(Discovery.CLIENT_PORT_INDEX).getNumber());
+    }
+
+    /**
+     * @return the attributes of the agent the task was launched on. Empty for tasks launched before they were recorded.
+     */
+    public static Map<String, String> getAttributes(Protos.TaskInfo taskInfo) {
+        Map<String, String> attributes = new HashMap<>();
+        data(taskInfo).forEach((key, value) -> {
+            if (key.toString().startsWith(ATTRIBUTE_PREFIX)) {
+                attributes.put(key.toString().substring(ATTRIBUTE_PREFIX.length()), value.toString());
+            }
+        });
+        return attributes;
+    }
+
+    private static Properties data(Protos.TaskInfo taskInfo) {
         Properties data = new Properties();
         try {
             data.load(taskInfo.getData().newInput());
         } catch (IOException e) {
             throw new RuntimeException("Failed to parse properties", e);
         }
+        return data;
+    }
+
+    public static Task parse(Protos.TaskInfo taskInfo, Protos.TaskStatus taskStatus, Clock clock) {
+        Properties data = data(taskInfo);
 
         String hostName = Optional.ofNullable(data.getProperty("hostname")).orElseGet(() -> {
             LOGGER.error("Hostname is empty. Reported IP addresses will be incorrect.");
@@ -324,8 +488,8 @@ public class TaskInfoFactory {
                 taskInfo.getTaskId().getValue(),
                 taskStatus == null ? Protos.TaskState.TASK_STAGING : taskStatus.getState(),
                 startedAt,
-                new InetSocketAddress(ipAddress, taskInfo.getDiscovery().getPorts().getPorts(Discovery.CLIENT_PORT_INDEX).getNumber()),
-                new InetSocketAddress(ipAddress, taskInfo.getDiscovery().getPorts().getPorts(Discovery.TRANSPORT_PORT_INDEX).getNumber())
+                DnsCache.getDefault().socketAddress(ipAddress, taskInfo.getDiscovery().getPorts().getPorts(Discovery.CLIENT_PORT_INDEX).getNumber()),
+                DnsCache.getDefault().socketAddress(ipAddress, taskInfo.getDiscovery().getPorts().getPorts(Discovery.TRANSPORT_PORT_INDEX).getNumber())
         );
     }
 }
@@ -0,0 +1,79 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted sum of scores between 0 and 1:
+ * <ul>
+ *     <li>headroom: the fraction of the offered cpu, memory and disk that would be left over, on average</li>
+ *     <li>spread: 1 if no node runs on the host of the offer yet</li>
+ *     <li>locality: 1 if the offer contains a persistent volume, 0.5 if it contains disk reserved for the framework role.
+ *     Either may hold data from an earlier node.</li>
+ * </ul>
+ * Offers from agents with the preferred attribute values, if any are configured, rank ahead of all others: each
+ * preferred value the agent has is weighted higher than all other scores together. So does the persistent volume of the
+ * framework, if persistent volumes are used, so that nodes are relaunched on the resources reserved for them.
+ */
+public class WeightedOfferFitness implements OfferFitness {
+    private final Configuration configuration;
+
+    public WeightedOfferFitness(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return true if any of the weights is greater than zero, there are preferred attribute values or persistent volumes
+     * are used
+     */
+    public static boolean isEnabled(Configuration configuration) {
+        return configuration.getOfferWeightHeadroom() > 0 || configuration.getOfferWeightSpread() > 0 || configuration.getOfferWeightLocality() > 0
+                || !configuration.getPlacementPreferredAttributes().isEmpty() || configuration.isFrameworkUsePersistentVolumes();
+    }
+
+    @Override
+    public double score(ClusterSnapshot cluster, Protos.Offer offer) {
+        final OfferResources resources = cluster.getResources(offer, configuration.getFrameworkRole());
+        final double weighted = configuration.getOfferWeightHeadroom() * headroom(resources)
+                + configuration.getOfferWeightSpread() * spread(cluster, offer)
+                + configuration.getOfferWeightLocality() * locality(resources);
+        final double preferenceWeight = 1 + configuration.getOfferWeightHeadroom() + configuration.getOfferWeightSpread() + configuration.getOfferWeightLocality();
+        return preferenceWeight * (preference(offer.getAttributesList()) + ownVolume(resources)) + weighted;
+    }
+
+    double headroom(OfferResources resources) {
+        return (headroom(resources.getCpus(), configuration.getCpus())
+                + headroom(resources.getMem(), configuration.getMem())
+                + headroom(resources.getDisk(), configuration.getDisk())) / 3;
+    }
+
+    double spread(ClusterSnapshot cluster, Protos.Offer offer) {
+        return cluster.isHostRunningTask(offer.getHostname()) ? 0 : 1;
+    }
+
+    double locality(OfferResources resources) {
+        return resources.hasPersistentVolume() ? 1 : resources.hasDiskForRole() ? 0.5 : 0;
+    }
+
+    /**
+     * Not between 0 and 1 like the others: the number of preferred attribute values the agent has
+     */
+    double preference(List<Protos.Attribute> attributeList) {
+        final Map<String, String> preferred = configuration.getPlacementPreferredAttributes();
+        if (preferred.isEmpty()) {
+            return 0;
+        }
+        final Map<String, String> attributes = AgentAttributes.toMap(attributeList);
+        return preferred.entrySet().stream().filter(value -> value.getValue().equals(attributes.get(value.getKey()))).count();
+    }
+
+    double ownVolume(OfferResources resources) {
+        return configuration.isFrameworkUsePersistentVolumes() && resources.hasPersistentVolume(configuration.persistentVolumeId()) ? 1 : 0;
+    }
+
+    private static double headroom(double available, double required) {
+        return available <= 0 ? 0 : Math.max(0, Math.min(1, (available - required) / available));
+    }
+}
@@ -0,0 +1,227 @@
+package org.apache.mesos.elasticsearch.scheduler.cluster;
+
+import org.apache.log4j.Logger;
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.common.util.NetworkUtils;
+import org.apache.mesos.elasticsearch.scheduler.Configuration;
+import org.apache.mesos.elasticsearch.scheduler.TaskInfoFactory;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks on an interval whether the Elasticsearch nodes respond over HTTP, and publishes the results as a cached view.
+ * Reading the view never blocks, so a slow or dead node delays the next probe rather than the scheduler driver thread.
+ * The probe only takes the in-memory task list from the {@link ClusterState}; the node addresses are resolved by the
+ * probe workers, outside the cluster state lock.
+ *
+ * A result is only trusted for {@code maxStalenessMs} after it was taken. A node that has not been probed yet, or whose
+ * last result is older than that, is reported as not live.
+ */
+public class NodeLivenessProbe {
+    private static final Logger LOGGER = Logger.getLogger(NodeLivenessProbe.class);
+    public static final long DEFAULT_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+    public static final int DEFAULT_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(2);
+    public static final long DEFAULT_MAX_STALENESS_MS = TimeUnit.SECONDS.toMillis(30);
+    public static final int PROBE_THREADS = 4;
+
+    private final ClusterState clusterState;
+    private final Configuration configuration;
+    private final long intervalMs;
+    private final int timeoutMs;
+    private final long maxStalenessMs;
+    private final Clock clock;
+    private volatile Map<String, Liveness> view = Collections.emptyMap();
+    private ScheduledExecutorService executor;
+    private ExecutorService probeExecutor;
+
+    // Report, guarded by this
+    private long runs = 0;
+    private long lastRunTime = 0;
+    private long lastRunMillis = 0;
+    private String lastError = null;
+
+    public NodeLivenessProbe(ClusterState clusterState, Configuration configuration) {
+        this(clusterState, configuration, DEFAULT_INTERVAL_MS, DEFAULT_TIMEOUT_MS, DEFAULT_MAX_STALENESS_MS, new Clock());
+    }
+
+    public NodeLivenessProbe(ClusterState clusterState, Configuration configuration, long intervalMs, int timeoutMs, long maxStalenessMs, Clock clock) {
+        if (clusterState == null || configuration == null) {
+            throw new IllegalArgumentException("Node liveness probe cannot start with null cluster state or configuration");
+        }
+        this.clusterState = clusterState;
+        this.configuration = configuration;
+        this.intervalMs = intervalMs;
+        this.timeoutMs = timeoutMs;
+        this.maxStalenessMs = maxStalenessMs;
+        this.clock = clock;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "node-liveness-probe"));
+        executor.scheduleWithFixedDelay(this::run, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (probeExecutor != null) {
+            probeExecutor.shutdownNow();
+            probeExecutor = null;
+        }
+    }
+
+    /**
+     * Probes every node once, concurrently, and publishes the results. Nodes that are no longer in the cluster state are
+     * dropped from the view.
+     */
+    public void run() {
+        final long start = clock.now().getTime();
+        try {
+            if (!clusterState.isReady()) {
+                throw new IllegalStateException("Cluster state not loaded");
+            }
+            final List<Protos.TaskInfo> tasks = clusterState.getTaskList();
+            final ExecutorService probes = getProbeExecutor();
+            final Map<String, CompletableFuture<Liveness>> results = new HashMap<>();
+            tasks.forEach(taskInfo -> results.put(taskInfo.getTaskId().getValue(), CompletableFuture.supplyAsync(() -> probe(taskInfo), probes)));
+            final Map<String, Liveness> probed = new HashMap<>();
+            results.forEach((taskId, result) -> probed.put(taskId, result.join()));
+            view = Collections.unmodifiableMap(probed);
+            synchronized (this) {
+                runs++;
+                lastRunTime = start;
+                lastRunMillis = clock.now().getTime() - start;
+                lastError = null;
+            }
+        } catch (Exception e) { // ScheduledExecutorService does not reschedule a task that throws
+            LOGGER.warn("Unable to probe Elasticsearch nodes", e);
+            synchronized (this) {
+                runs++;
+                lastRunTime = start;
+                lastError = e.toString();
+            }
+        }
+    }
+
+    /**
+     * @return true if the node responded to the last probe, and that probe is no older than the maximum staleness
+     */
+    public boolean isLive(String taskId) {
+        final Liveness liveness = view.get(taskId);
+        return liveness != null && liveness.live && getStalenessMs(liveness) <= maxStalenessMs;
+    }
+
+    public synchronized Report getReport() {
+        Report report = new Report();
+        report.runs = runs;
+        report.lastRunTime = lastRunTime;
+        report.lastRunMillis = lastRunMillis;
+        report.lastError = lastError;
+        report.maxStalenessMs = maxStalenessMs;
+        report.nodes = new ArrayList<>();
+        view.forEach((taskId, liveness) -> {
+            NodeReport node = new NodeReport();
+            node.taskId = taskId;
+            node.live = liveness.live;
+            node.checkedAt = liveness.checkedAt;
+            node.stalenessMs = getStalenessMs(liveness);
+            node.stale = node.stalenessMs > maxStalenessMs;
+            report.nodes.add(node);
+        });
+        return report;
+    }
+
+    private long getStalenessMs(Liveness liveness) {
+        return Math.max(0, clock.now().getTime() - liveness.checkedAt);
+    }
+
+    private Liveness probe(Protos.TaskInfo taskInfo) {
+        boolean live;
+        InetSocketAddress clientAddress = null;
+        try {
+            clientAddress = TaskInfoFactory.getClientAddress(taskInfo);
+            final String url = NetworkUtils.addressToString(clientAddress, configuration.getIsUseIpAddress());
+            final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            try {
+                live = connection.getResponseCode() == 200;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Elasticsearch node " + taskInfo.getTaskId().getValue() + " at " + clientAddress + " is not responding: " + e);
+            live = false;
+        }
+        return new Liveness(live, clock.now().getTime());
+    }
+
+    private synchronized ExecutorService getProbeExecutor() {
+        if (probeExecutor == null) {
+            probeExecutor = Executors.newFixedThreadPool(PROBE_THREADS, runnable -> daemon(runnable, "node-liveness-probe-worker"));
+        }
+        return probeExecutor;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * The result of probing one node
+     */
+    private static class Liveness {
+        private final boolean live;
+        private final long checkedAt;
+
+        Liveness(boolean live, long checkedAt) {
+            this.live = live;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    /**
+     * The cached view. A node is only trusted to be live if it is live and not stale.
+     */
+    public static class Report {
+        public long runs;
+        public long lastRunTime;
+        public long lastRunMillis;
+        public String lastError;
+        public long maxStalenessMs;
+        public List<NodeReport> nodes;
+    }
+
+    /**
+     * The last result for one node
+     */
+    public static class NodeReport {
+        public String taskId;
+        public boolean live;
+        public long checkedAt;
+        public long stalenessMs;
+        public boolean stale;
+    }
+}
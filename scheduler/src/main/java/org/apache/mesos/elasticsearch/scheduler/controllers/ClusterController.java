@@ -2,8 +2,13 @@ package org.apache.mesos.elasticsearch.scheduler.controllers;
 
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
 import org.apache.mesos.elasticsearch.scheduler.Configuration;
 import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
+import org.apache.mesos.elasticsearch.scheduler.OfferStrategy;
+import org.apache.mesos.elasticsearch.scheduler.OfferSuppression;
+import org.apache.mesos.elasticsearch.scheduler.RelaunchLocality;
+import org.apache.mesos.elasticsearch.scheduler.cluster.NodeLivenessProbe;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -14,6 +19,7 @@ import org.springframework.web.bind.annotation.RestController;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -31,6 +37,9 @@ public class ClusterController {
     @Autowired
     Configuration configuration;
 
+    @Autowired
+    NodeLivenessProbe livenessProbe;
+
     @RequestMapping(method = RequestMethod.GET)
     public ClusterInfoResponse clusterInfo() {
         ClusterInfoResponse response = new ClusterInfoResponse();
@@ -77,6 +86,16 @@ public class ClusterController {
         return response;
     }
 
+    @RequestMapping(value = "/liveness", method = RequestMethod.GET)
+    public NodeLivenessProbe.Report liveness() {
+        return livenessProbe.getReport();
+    }
+
+    @RequestMapping(value = "/dns", method = RequestMethod.GET)
+    public DnsCache.Metrics dns() {
+        return DnsCache.getDefault().getMetrics();
+    }
+
     @RequestMapping(value = "/elasticsearchNodes", method = RequestMethod.GET)
     @ResponseBody public ElasticsearchNodesWrapper getElasticsearchNodes() {
         return new ElasticsearchNodesWrapper(scheduler.getTasks().size()); // This method should represent the current state, not the setting in the config.
@@ -86,6 +105,22 @@ public class ClusterController {
     public void putElasticsearchNodes(@RequestBody ElasticsearchNodesWrapper elasticsearchNodes) {
         configuration.setElasticsearchNodes(elasticsearchNodes.getValue());
         scheduler.reapTasks();
+        scheduler.updateOfferSuppression();
+    }
+
+    @RequestMapping(value = "/offers", method = RequestMethod.GET)
+    public OfferSuppression.Metrics offers() {
+        return scheduler.getOfferMetrics();
+    }
+
+    @RequestMapping(value = "/offers/rules", method = RequestMethod.GET)
+    public List<OfferStrategy.RuleMetrics> offerRules() {
+        return scheduler.getOfferRuleMetrics();
+    }
+
+    @RequestMapping(value = "/relaunch", method = RequestMethod.GET)
+    public RelaunchLocality.Metrics relaunch() {
+        return scheduler.getRelaunchMetrics();
     }
 
     /**
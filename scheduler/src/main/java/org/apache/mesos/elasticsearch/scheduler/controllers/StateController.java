@@ -0,0 +1,91 @@
+package org.apache.mesos.elasticsearch.scheduler.controllers;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.apache.mesos.elasticsearch.scheduler.state.StateEvent;
+import org.apache.mesos.elasticsearch.scheduler.state.StateGarbageCollector;
+import org.apache.mesos.elasticsearch.scheduler.state.StateSizeStats;
+import org.apache.mesos.elasticsearch.scheduler.state.TaskStatusWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Metrics about the persistence of the cluster state
+ */
+@RestController
+@RequestMapping("/v1/state")
+public class StateController {
+
+    @Autowired
+    ClusterState clusterState;
+
+    @Autowired
+    StateSizeStats stateSizeStats;
+
+    @Autowired
+    StateGarbageCollector stateGarbageCollector;
+
+    @RequestMapping(value = "/writer", method = RequestMethod.GET)
+    public TaskStatusWriter.Metrics statusWriter() {
+        return clusterState.getStatusWriterMetrics();
+    }
+
+    @RequestMapping(value = "/sizes", method = RequestMethod.GET)
+    public StateSizeStats.Snapshot sizes() {
+        return stateSizeStats.getSnapshot();
+    }
+
+    @RequestMapping(value = "/gc", method = RequestMethod.GET)
+    public StateGarbageCollector.Report garbageCollector() {
+        return stateGarbageCollector.getReport();
+    }
+
+    @RequestMapping(value = "/events", method = RequestMethod.GET)
+    public List<EventResponse> events(@RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return clusterState.getRecentEvents(limit).stream().map(EventResponse::new).collect(toList());
+    }
+
+    @RequestMapping(value = "/load", method = RequestMethod.GET)
+    public LoadResponse load() {
+        LoadResponse response = new LoadResponse();
+        response.ready = clusterState.isReady();
+        response.loadTimeMillis = clusterState.getLoadTimeMillis();
+        return response;
+    }
+
+    /**
+     * A state change from the event log. The state is only set for status updates.
+     */
+    public static class EventResponse {
+        public long sequence;
+        public long timestamp;
+        public String type;
+        public String taskId;
+        public String state;
+
+        public EventResponse(StateEvent event) {
+            sequence = event.getSequence();
+            timestamp = event.getTimestamp();
+            type = event.getType().toString();
+            taskId = event.getTaskId();
+            if (event.getType() == StateEvent.Type.STATUS_UPDATED) {
+                state = ((Protos.TaskStatus) event.getPayload()).getState().toString();
+            }
+        }
+    }
+
+    /**
+     * Whether the cluster state has been loaded, and how long that took
+     */
+    public static class LoadResponse {
+        public boolean ready;
+        public long loadTimeMillis;
+    }
+}
@@ -1,10 +1,16 @@
 package org.apache.mesos.elasticsearch.scheduler.controllers;
 
+import org.apache.mesos.Protos;
 import org.apache.mesos.elasticsearch.scheduler.Configuration;
 import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
 import org.apache.mesos.elasticsearch.scheduler.Task;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.state.TaskStatusHistory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -33,6 +39,9 @@ public class TasksController {
     @Autowired
     FrameworkState frameworkState;
 
+    @Autowired
+    ClusterState clusterState;
+
     @RequestMapping
     public List<GetTasksResponse> getTasks() {
         if (frameworkState.isRegistered()) {
@@ -42,6 +51,18 @@ public class TasksController {
         }
     }
 
+    /**
+     * The recent status transitions of a task, oldest first. Timestamps are in milliseconds since the epoch.
+     */
+    @RequestMapping("/{id}/history")
+    public ResponseEntity<List<TaskStatusHistory.Entry>> getHistory(@PathVariable("id") String id) {
+        try {
+            return ResponseEntity.ok(clusterState.getHistory(Protos.TaskID.newBuilder().setValue(id).build()));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
     private GetTasksResponse from(Map.Entry<String, Task> task) {
         return new GetTasksResponse(
             task.getValue().getTaskId(),
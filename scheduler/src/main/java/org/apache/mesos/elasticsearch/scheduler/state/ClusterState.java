@@ -12,26 +12,84 @@ import javax.validation.constraints.NotNull;
 import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import static org.apache.mesos.Protos.TaskID;
 
 /**
  * Model of cluster state. User is able to add, remove and monitor task status.
+ *
+ * The task list and the latest known task statuses are held in memory. They are loaded from zookeeper once, written
+ * through to zookeeper on every mutation and only re-read when {@link #load()} is called (i.e. on failover).
+ *
+ * Each TaskInfo is stored in its own zNode, {@code <frameworkId>/tasks/<taskId>}. The mesos state API cannot enumerate
+ * the children of a zNode, so {@code <frameworkId>/tasks} holds the list of task IDs.
+ *
+ * Task statuses are written behind, see {@link TaskStatusWriter}. Call {@link #flush()} when a status must be durable.
+ *
+ * The recent status transitions of each task are kept in {@code <frameworkId>/history/<taskId>}, see
+ * {@link TaskStatusHistory}. They are written behind together with the statuses.
+ *
+ * Every mutation is also recorded in the {@link EventLog}.
+ *
+ * {@code <frameworkId>/statusIndex} lists every task that has been added, before anything else is written for it. Tasks
+ * in the index but not in the task list may have left zNodes behind, which {@link #collectGarbage(int)} removes.
+ *
+ * The cache is indexed by task ID, executor ID, slave ID and elasticsearch node ID, so lookups are constant time.
+ * Only {@link #index(TaskInfo)} and {@link #unindex(TaskInfo)} may modify the indexes.
+ *
+ * All methods are thread safe. The shared task ID list is updated with compare-and-set, so updates from other writers
+ * are not lost.
  */
 public class ClusterState {
     public static final Logger LOGGER = Logger.getLogger(ClusterState.class);
-    public static final String STATE_LIST = "stateList";
+    public static final String STATE_LIST = "stateList"; // Legacy key, from when the whole list was stored in one zNode
+    public static final String TASKS_KEY = "tasks";
+    public static final String STATUS_INDEX_KEY = "statusIndex";
+    public static final String HISTORY_KEY = "history";
+    public static final long FLUSH_TIMEOUT_MS = 10000;
+    public static final int MAX_UPDATE_ATTEMPTS = 10;
     private SerializableState zooKeeperStateDriver;
     private FrameworkState frameworkState;
+    private final StatePath statePath;
+    private final TaskStatusWriter statusWriter;
+    private final EventLog eventLog;
+
+    private final Map<String, TaskInfo> taskInfoCache = new LinkedHashMap<>();
+    private final Map<String, TaskInfo> executorIndex = new HashMap<>();
+    private final Map<String, Set<String>> slaveIndex = new HashMap<>();
+    private final Map<Integer, String> elasticNodeIdIndex = new HashMap<>();
+    private final BitSet usedElasticNodeIds = new BitSet();
+    private final Map<String, Protos.TaskStatus> taskStatusCache = new HashMap<>();
+    private final Map<String, TaskStatusHistory> historyCache = new HashMap<>();
+    private String loadedFrameworkId = null;
+    private long loadTimeMillis = -1;
 
     public ClusterState(@NotNull SerializableState zooKeeperStateDriver, @NotNull FrameworkState frameworkState) {
-        if (zooKeeperStateDriver == null || frameworkState == null) {
+        this(zooKeeperStateDriver, frameworkState, new StatePath(zooKeeperStateDriver));
+    }
+
+    public ClusterState(@NotNull SerializableState zooKeeperStateDriver, @NotNull FrameworkState frameworkState, @NotNull StatePath statePath) {
+        this(zooKeeperStateDriver, frameworkState, statePath, new TaskStatusWriter(zooKeeperStateDriver, statePath));
+    }
+
+    public ClusterState(@NotNull SerializableState zooKeeperStateDriver, @NotNull FrameworkState frameworkState, @NotNull StatePath statePath, @NotNull TaskStatusWriter statusWriter) {
+        this(zooKeeperStateDriver, frameworkState, statePath, statusWriter, new EventLog(zooKeeperStateDriver, frameworkState, statePath, statusWriter));
+    }
+
+    public ClusterState(@NotNull SerializableState zooKeeperStateDriver, @NotNull FrameworkState frameworkState, @NotNull StatePath statePath, @NotNull TaskStatusWriter statusWriter, @NotNull EventLog eventLog) {
+        if (zooKeeperStateDriver == null || frameworkState == null || statePath == null || statusWriter == null || eventLog == null) {
             throw new NullPointerException();
         }
         this.zooKeeperStateDriver = zooKeeperStateDriver;
         this.frameworkState = frameworkState;
+        this.statePath = statePath;
+        this.statusWriter = statusWriter;
+        this.eventLog = eventLog;
         frameworkState.onStatusUpdate(this::updateTask);
     }
 
@@ -39,97 +97,284 @@ public class ClusterState {
      * Get a list of all tasks with state
      * @return a list of TaskInfo
      */
-    public List<TaskInfo> getTaskList() {
-        List<TaskInfo> taskInfoList = null;
+    public synchronized List<TaskInfo> getTaskList() {
+        ensureLoaded();
+        return new ArrayList<>(taskInfoCache.values());
+    }
+
+    /**
+     * (Re)loads the in-memory task list and task statuses from zookeeper, discarding anything cached. Only needs to be
+     * called when the state in zookeeper may have been written by somebody else, i.e. after a scheduler failover.
+     * @return true if the state was loaded, see {@link #isReady()}
+     */
+    public synchronized boolean load() {
+        flush(); // Don't let pending status writes be overtaken by the reload
+        return reload();
+    }
+
+    /**
+     * Like {@link #load()}, but never waits for the status writer. Does nothing if status writes are pending.
+     * @return true if the state was loaded, see {@link #isReady()}
+     */
+    public synchronized boolean loadIfIdle() {
+        if (!statusWriter.flush(0)) {
+            LOGGER.debug("Task statuses are still being written, not loading the cluster state");
+            return false;
+        }
+        return reload();
+    }
+
+    private boolean reload() {
+        clearCache();
+        loadedFrameworkId = null;
+        ensureLoaded();
+        if (isReady()) {
+            eventLog.append(StateEvent.Type.FRAMEWORK_REGISTERED, frameworkState.getFrameworkID());
+        }
+        return isReady();
+    }
+
+    /**
+     * @return true once the complete state has been loaded from zookeeper. Until then, the task list may be incomplete.
+     */
+    public synchronized boolean isReady() {
+        return loadedFrameworkId != null;
+    }
+
+    /**
+     * @return the time it took to last load the state from zookeeper, in milliseconds, or -1 if it has not been loaded.
+     */
+    public synchronized long getLoadTimeMillis() {
+        return loadTimeMillis;
+    }
+
+    private void ensureLoaded() {
+        final String frameworkId = frameworkState.getFrameworkID().getValue();
+        if (frameworkId.equals(loadedFrameworkId)) {
+            return;
+        }
+        final long start = System.nanoTime();
+        clearCache();
         try {
-            taskInfoList = zooKeeperStateDriver.get(getKey());
+            List<String> taskIds = zooKeeperStateDriver.get(getKey());
+            if (taskIds != null) {
+                loadTasks(taskIds);
+            } else {
+                migrateLegacyTaskList();
+            }
+            loadedFrameworkId = frameworkId;
+            loadTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info("Loaded " + taskInfoCache.size() + " tasks in " + loadTimeMillis + "ms");
+            LOGGER.debug("Loaded executor state list: " + logTaskList(taskInfoCache.values()));
         } catch (IOException e) {
+            clearCache();
             LOGGER.info("Unable to get key for cluster state due to invalid frameworkID.", e);
         }
-        return taskInfoList == null ? new ArrayList<>(0) : taskInfoList;
     }
 
     /**
-     * When using external volumes, retrieve the next available elasticsearch node id
-     *
-     * @return Integer (node id)
+     * Fetches the task infos, task statuses and status histories of all tasks concurrently.
      */
-    public Integer getElasticNodeId() {
-        final List<Integer> idList = getElasticNodeIdList();
-        return IntStream.range(0, idList.size() + 1).filter(value -> !idList.contains(value)).findFirst().getAsInt();
+    private void loadTasks(List<String> taskIds) throws IOException {
+        final Map<String, String> statusKeys = taskIds.stream().distinct()
+                .collect(Collectors.toMap(taskId -> getStatusKey(TaskID.newBuilder().setValue(taskId).build()), taskId -> taskId));
+        final CompletableFuture<Map<String, TaskInfo>> taskInfos = zooKeeperStateDriver.getAll(taskIds.stream().map(this::getTaskKey).collect(Collectors.toList()));
+        final CompletableFuture<Map<String, Protos.TaskStatus>> taskStatuses = zooKeeperStateDriver.getAll(statusKeys.keySet());
+        final CompletableFuture<Map<String, TaskStatusHistory>> histories = zooKeeperStateDriver.getAll(taskIds.stream().map(this::getHistoryKey).collect(Collectors.toList()));
+        try {
+            for (String taskId : taskIds) {
+                final TaskInfo taskInfo = taskInfos.join().get(getTaskKey(taskId));
+                if (taskInfo != null) {
+                    index(taskInfo);
+                } else {
+                    LOGGER.warn("TaskInfo zNode missing for task: " + taskId);
+                }
+            }
+            taskStatuses.join().forEach((key, status) -> {
+                if (status != null && taskInfoCache.containsKey(statusKeys.get(key))) {
+                    taskStatusCache.put(statusKeys.get(key), status);
+                }
+            });
+            for (String taskId : taskInfoCache.keySet()) {
+                final TaskStatusHistory history = histories.join().get(getHistoryKey(taskId));
+                if (history != null) {
+                    historyCache.put(taskId, history);
+                }
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("Unable to load tasks", e.getCause());
+        }
     }
 
-    private List<Integer> getElasticNodeIdList() {
-        return getTaskList().stream()
-                .filter(this::containsElasticNodeId)
-                .map(this::getElasticNodeId)
-                .map(Integer::parseInt)
-                .collect(Collectors.toList());
+    /**
+     * Moves tasks from the legacy single {@link #STATE_LIST} zNode into one zNode per task.
+     */
+    private void migrateLegacyTaskList() throws IOException {
+        List<TaskInfo> taskInfoList = zooKeeperStateDriver.get(getLegacyKey());
+        if (taskInfoList == null) {
+            return;
+        }
+        LOGGER.info("Migrating executor state list to one zNode per task: " + logTaskList(taskInfoList));
+        for (TaskInfo taskInfo : taskInfoList) {
+            index(taskInfo);
+            setTaskInfo(taskInfo);
+        }
+        updateList(getKey(), taskIds -> taskInfoCache.keySet().stream().filter(taskId -> !taskIds.contains(taskId)).forEach(taskIds::add));
+        statePath.rm(getLegacyKey());
     }
 
-    private String getElasticNodeId(TaskInfo taskInfo2) {
-        return taskInfo2.getCommand().getEnvironment().getVariablesList().stream().filter(variable1 -> variable1.getName().equals(ExecutorEnvironmentalVariables.ELASTICSEARCH_NODE_ID)).findFirst().get().getValue();
+    /**
+     * When using external volumes, retrieve the next available elasticsearch node id
+     *
+     * @return Integer (node id)
+     */
+    public synchronized Integer getElasticNodeId() {
+        ensureLoaded();
+        return usedElasticNodeIds.nextClearBit(0);
     }
 
-    private boolean containsElasticNodeId(TaskInfo taskInfo) {
-        return taskInfo.getCommand().getEnvironment().getVariablesList().stream().anyMatch(variable -> variable.getName().equals(ExecutorEnvironmentalVariables.ELASTICSEARCH_NODE_ID));
+    private Optional<Integer> getElasticNodeId(TaskInfo taskInfo) {
+        return taskInfo.getCommand().getEnvironment().getVariablesList().stream()
+                .filter(variable -> variable.getName().equals(ExecutorEnvironmentalVariables.ELASTICSEARCH_NODE_ID))
+                .findFirst()
+                .map(variable -> Integer.parseInt(variable.getValue()));
     }
 
     /**
      * Get a list of all tasks in a format specific to the web GUI.
      * @return
      */
-    public Map<String, Task> getGuiTaskList() {
+    public synchronized Map<String, Task> getGuiTaskList() {
         Map<String, Task> tasks = new HashMap<>();
-        getTaskList().forEach(taskInfo -> tasks.put(taskInfo.getTaskId().getValue(), TaskInfoFactory.parse(taskInfo, getStatus(taskInfo.getTaskId()).getStatus(), new Clock())));
+        fetchUncachedStatuses();
+        getTaskList().forEach(taskInfo -> tasks.put(taskInfo.getTaskId().getValue(), TaskInfoFactory.parse(taskInfo, getCachedStatus(taskInfo), new Clock())));
         return tasks;
     }
 
+    /**
+     * Fetches the statuses of all tasks that are not cached yet concurrently, rather than one by one.
+     */
+    private void fetchUncachedStatuses() {
+        final Map<String, TaskID> keys = getTaskList().stream()
+                .map(TaskInfo::getTaskId)
+                .filter(taskId -> !taskStatusCache.containsKey(taskId.getValue()))
+                .collect(Collectors.toMap(this::getStatusKey, taskId -> taskId));
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            zooKeeperStateDriver.<Protos.TaskStatus>getAll(keys.keySet()).join().forEach((key, status) -> {
+                if (status != null) {
+                    taskStatusCache.put(keys.get(key).getValue(), status);
+                }
+            });
+        } catch (CompletionException e) {
+            LOGGER.warn("Unable to fetch task statuses from zookeeper", e.getCause());
+        }
+    }
+
+    private Protos.TaskStatus getCachedStatus(TaskInfo taskInfo) {
+        return taskStatusCache.computeIfAbsent(taskInfo.getTaskId().getValue(), taskId -> getStatus(taskInfo).getStatus());
+    }
+
     /**
      * Get the status of a specific task
      * @param taskID the taskID to retreive the task status for
      * @return a POJO representing TaskInfo, TaskStatus and FrameworkID packets
      * @throws InvalidParameterException when the taskId does not exist in the Task list.
      */
-    public ESTaskStatus getStatus(TaskID taskID) throws IllegalArgumentException {
+    public synchronized ESTaskStatus getStatus(TaskID taskID) throws IllegalArgumentException {
         return getStatus(getTask(taskID));
     }
 
     private ESTaskStatus getStatus(TaskInfo taskInfo) {
-        return new ESTaskStatus(zooKeeperStateDriver, frameworkState.getFrameworkID(), taskInfo, new StatePath(zooKeeperStateDriver));
+        return new ESTaskStatus(zooKeeperStateDriver, frameworkState.getFrameworkID(), taskInfo, statePath);
     }
 
-    public void addTask(ESTaskStatus esTask) {
-        addTask(esTask.getTaskInfo());
+    public boolean addTask(ESTaskStatus esTask) {
+        return addTask(esTask.getTaskInfo());
     }
 
-    public void addTask(TaskInfo taskInfo) {
+    /**
+     * Writes the TaskInfo to zookeeper and adds it to the task list. The task is only cached once it has been written.
+     * @return false if the task could not be written to zookeeper, in which case it must not be launched
+     */
+    public synchronized boolean addTask(TaskInfo taskInfo) {
         LOGGER.debug("Adding TaskInfo to cluster for task: " + taskInfo.getTaskId().getValue());
         if (exists(taskInfo.getTaskId())) {
             removeTask(taskInfo);
         }
-        List<TaskInfo> taskList = getTaskList();
-        taskList.add(taskInfo);
-        setTaskInfoList(taskList);
+        try {
+            updateList(getStatusIndexKey(), taskIds -> {
+                if (!taskIds.contains(taskInfo.getTaskId().getValue())) {
+                    taskIds.add(taskInfo.getTaskId().getValue());
+                }
+            });
+            setTaskInfo(taskInfo);
+            updateList(getKey(), taskIds -> {
+                if (!taskIds.contains(taskInfo.getTaskId().getValue())) {
+                    taskIds.add(taskInfo.getTaskId().getValue());
+                }
+            });
+        } catch (IOException ex) {
+            LOGGER.error("Could not write executor state to zookeeper: ", ex);
+            return false; // Anything written so far is removed by collectGarbage, since the task is in the status index
+        }
+        index(taskInfo);
+        eventLog.append(StateEvent.Type.TASK_ADDED, taskInfo);
+        return true;
     }
 
-    public void removeTask(TaskInfo taskInfo) throws InvalidParameterException {
-        List<TaskInfo> taskList = getTaskList();
+    public synchronized void removeTask(TaskInfo taskInfo) throws InvalidParameterException {
+        ensureLoaded();
         LOGGER.debug("Removing TaskInfo from cluster for task: " + taskInfo.getTaskId().getValue());
-        if (!taskList.remove(taskInfo)) {
+        final TaskInfo removed = taskInfoCache.get(taskInfo.getTaskId().getValue());
+        if (removed == null) {
             throw new InvalidParameterException("TaskInfo does not exist in list: " + taskInfo.getTaskId().getValue());
         }
+        unindex(removed);
+        statusWriter.discard(getStatusKey(taskInfo.getTaskId()));
+        statusWriter.discard(getHistoryKey(taskInfo.getTaskId().getValue()));
         getStatus(taskInfo).destroy(); // Destroy task status in ZK.
-        setTaskInfoList(taskList); // Remove from cluster state list
+        eventLog.append(StateEvent.Type.TASK_REMOVED, taskInfo.getTaskId());
+        try {
+            rmIfExists(getHistoryKey(taskInfo.getTaskId().getValue()));
+            updateList(getKey(), taskIds -> taskIds.remove(taskInfo.getTaskId().getValue())); // Remove from cluster state list
+            statePath.rm(getTaskKey(taskInfo.getTaskId().getValue()));
+        } catch (IOException ex) {
+            LOGGER.error("Could not remove executor state from zookeeper: ", ex);
+        }
     }
 
-    public Boolean exists(TaskID taskId) {
+    /**
+     * Drops a task that was added but could not be made durable, usually because zookeeper is unreachable. Unlike
+     * {@link #removeTask(TaskInfo)}, nothing is read from zookeeper and the zNodes are only removed best-effort. Any
+     * left behind are removed by {@link #collectGarbage(int)}, since the task is in the status index.
+     */
+    public synchronized void abandonTask(TaskInfo taskInfo) {
+        final String taskId = taskInfo.getTaskId().getValue();
+        LOGGER.debug("Abandoning task: " + taskId);
+        statusWriter.discard(getStatusKey(taskInfo.getTaskId()));
+        statusWriter.discard(getHistoryKey(taskId));
+        final TaskInfo abandoned = taskInfoCache.get(taskId);
+        if (abandoned == null) {
+            return;
+        }
+        unindex(abandoned);
+        eventLog.append(StateEvent.Type.TASK_REMOVED, taskInfo.getTaskId());
         try {
-            getTask(taskId);
-        } catch (IllegalArgumentException e) {
-            return false;
+            rmIfExists(getStatusKey(taskInfo.getTaskId()));
+            rmIfExists(getHistoryKey(taskId));
+            updateList(getKey(), taskIds -> taskIds.remove(taskId));
+            rmIfExists(getTaskKey(taskId));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to remove the zNodes of task " + taskId + ". Leaving them to the garbage collector", e);
         }
-        return true;
+    }
+
+    public synchronized Boolean exists(TaskID taskId) {
+        ensureLoaded();
+        return taskInfoCache.containsKey(taskId.getValue());
     }
 
     /**
@@ -138,60 +383,150 @@ public class ClusterState {
      * @return a TaskInfo packet
      * @throws IllegalArgumentException when the taskId does not exist in the Task list.
      */
-    public TaskInfo getTask(TaskID taskID) throws IllegalArgumentException {
-        List<TaskInfo> taskInfoList = getTaskList();
-        TaskInfo taskInfo = null;
-        for (TaskInfo info : taskInfoList) {
-            if (info.getTaskId().getValue().equals(taskID.getValue())) {
-                taskInfo = info;
-                break;
-            }
-        }
+    public synchronized TaskInfo getTask(TaskID taskID) throws IllegalArgumentException {
+        ensureLoaded();
+        TaskInfo taskInfo = taskInfoCache.get(taskID.getValue());
         if (taskInfo == null) {
             throw new IllegalArgumentException("Could not find executor with that task ID: " + taskID.getValue());
         }
         return taskInfo;
     }
 
-    public TaskInfo getTask(Protos.ExecutorID executorID) throws IllegalArgumentException {
+    public synchronized TaskInfo getTask(Protos.ExecutorID executorID) throws IllegalArgumentException {
         if (executorID.getValue().isEmpty()) {
             throw new IllegalArgumentException("ExecutorID.value() is blank. Cannot be blank.");
         }
-        List<TaskInfo> taskInfoList = getTaskList();
-        TaskInfo taskInfo = null;
-        for (TaskInfo info : taskInfoList) {
-            if (info.getExecutor().getExecutorId().getValue().equals(executorID.getValue())) {
-                taskInfo = info;
-                break;
-            }
-        }
+        ensureLoaded();
+        TaskInfo taskInfo = executorIndex.get(executorID.getValue());
         if (taskInfo == null) {
             throw new IllegalArgumentException("Could not find executor with that executor ID: " + executorID.getValue());
         }
         return taskInfo;
     }
 
-    public void update(Protos.TaskStatus status)  throws IllegalArgumentException {
+    /**
+     * @return true if a task is running on the given slave
+     */
+    public synchronized boolean isSlaveRunningTask(Protos.SlaveID slaveID) {
+        ensureLoaded();
+        return slaveIndex.containsKey(slaveID.getValue());
+    }
+
+    /**
+     * Updates the status of a task. The status is visible immediately, but is written to zookeeper asynchronously.
+     */
+    public synchronized void update(Protos.TaskStatus status)  throws IllegalArgumentException {
         if (!exists(status.getTaskId())) {
             throw new IllegalArgumentException("Task does not exist in zk.");
         }
-        getStatus(status.getTaskId()).setStatus(status);
+        taskStatusCache.put(status.getTaskId().getValue(), status);
+        statusWriter.write(getStatusKey(status.getTaskId()), status);
+        eventLog.append(StateEvent.Type.STATUS_UPDATED, status);
+        final TaskStatusHistory history = historyCache.computeIfAbsent(status.getTaskId().getValue(), taskId -> new TaskStatusHistory());
+        if (history.record(status)) {
+            statusWriter.write(getHistoryKey(status.getTaskId().getValue()), history.copy());
+        }
+    }
+
+    /**
+     * @return the recent status transitions of a task, oldest first
+     * @throws IllegalArgumentException when the taskId does not exist in the Task list.
+     */
+    public synchronized List<TaskStatusHistory.Entry> getHistory(TaskID taskID) throws IllegalArgumentException {
+        getTask(taskID);
+        final TaskStatusHistory history = historyCache.get(taskID.getValue());
+        return history == null ? new ArrayList<>() : history.getEntries();
+    }
+
+    /**
+     * Blocks until all task statuses updated so far have been written to zookeeper.
+     * @return false if the statuses could not be written within {@link #FLUSH_TIMEOUT_MS}
+     */
+    public boolean flush() {
+        final boolean flushed = statusWriter.flush(FLUSH_TIMEOUT_MS);
+        if (!flushed) {
+            LOGGER.warn("Timed out waiting for task statuses to be written to zookeeper");
+        }
+        return flushed;
+    }
+
+    /**
+     * @return up to limit of the most recent state changes, oldest first
+     */
+    public List<StateEvent> getRecentEvents(int limit) {
+        return eventLog.getRecentEvents(limit);
     }
 
-    public boolean taskInError(Protos.TaskStatus status) {
+    public TaskStatusWriter.Metrics getStatusWriterMetrics() {
+        return statusWriter.getMetrics();
+    }
+
+    /**
+     * Removes the zNodes of tasks that are in the status index but no longer in the task list, e.g. because the
+     * scheduler crashed while adding or removing them. Does nothing until the state has been loaded.
+     * @param maxTasks the maximum number of tasks to clean up
+     * @return the keys of the zNodes that were removed
+     */
+    public synchronized List<String> collectGarbage(int maxTasks) throws IOException {
+        final List<String> removed = new ArrayList<>();
+        if (!isReady()) {
+            return removed;
+        }
+        final List<String> indexed = zooKeeperStateDriver.get(getStatusIndexKey());
+        if (indexed == null) {
+            return removed;
+        }
+        final List<String> orphans = indexed.stream().filter(taskId -> !taskInfoCache.containsKey(taskId)).limit(maxTasks).collect(Collectors.toList());
+        if (orphans.isEmpty()) {
+            return removed;
+        }
+        for (String taskId : orphans) {
+            final String statusKey = getStatusKey(TaskID.newBuilder().setValue(taskId).build());
+            statusWriter.discard(statusKey);
+            statusWriter.discard(getHistoryKey(taskId));
+            for (String key : Arrays.asList(statusKey, getHistoryKey(taskId), getTaskKey(taskId))) {
+                if (rmIfExists(key)) {
+                    removed.add(key);
+                }
+            }
+        }
+        updateList(getStatusIndexKey(), taskIds -> taskIds.removeAll(orphans));
+        LOGGER.info("Removed " + removed.size() + " orphaned zNodes of " + orphans.size() + " tasks: " + removed);
+        return removed;
+    }
+
+    public synchronized boolean taskInError(Protos.TaskStatus status) {
+        final Protos.TaskStatus cachedStatus = taskStatusCache.get(status.getTaskId().getValue());
+        if (cachedStatus != null) {
+            return ESTaskStatus.errorState(cachedStatus.getState());
+        }
         return getStatus(status.getTaskId()).taskInError();
     }
 
     /**
      * Deletes all tasks and state.
      */
-    public void destroy() {
+    public synchronized void destroy() {
         try {
-            getTaskList().stream().forEach(taskInfo -> getStatus(taskInfo).destroy());
+            for (TaskInfo taskInfo : getTaskList()) {
+                statusWriter.discard(getStatusKey(taskInfo.getTaskId()));
+                statusWriter.discard(getHistoryKey(taskInfo.getTaskId().getValue()));
+                getStatus(taskInfo).destroy();
+                rmIfExists(getHistoryKey(taskInfo.getTaskId().getValue()));
+                statePath.rm(getTaskKey(taskInfo.getTaskId().getValue()));
+            }
+            clearCache();
             // Todo (pnw): Refactor. This shouldn't be mopping up the ESTaskStatus stuff
-            zooKeeperStateDriver.delete(getKey());
-            zooKeeperStateDriver.delete(frameworkState.getFrameworkID().getValue() + "/" + ESTaskStatus.STATE_KEY);
-            zooKeeperStateDriver.delete(frameworkState.getFrameworkID().getValue());
+            eventLog.destroy();
+            statePath.rm(getKey());
+            rmIfExists(getStatusIndexKey());
+            try {
+                statePath.rm(frameworkState.getFrameworkID().getValue() + "/" + HISTORY_KEY);
+            } catch (InvalidParameterException e) {
+                LOGGER.debug("No task status history to delete");
+            }
+            statePath.rm(frameworkState.getFrameworkID().getValue() + "/" + ESTaskStatus.STATE_KEY);
+            statePath.rm(frameworkState.getFrameworkID().getValue());
         } catch (IOException e) {
             LOGGER.error("Unable to delete state from ZooKeeper", e);
         }
@@ -202,7 +537,7 @@ public class ClusterState {
      * If the task is in error, then the healthchecks are stopped and state is removed from ZK
      * @param status A received task status
      */
-    private void updateTask(Protos.TaskStatus status) {
+    private synchronized void updateTask(Protos.TaskStatus status) {
         if (!exists(status.getTaskId())) {
             LOGGER.warn("Could not find task in cluster state.");
             return;
@@ -222,7 +557,57 @@ public class ClusterState {
         }
     }
 
-    private String logTaskList(List<TaskInfo> taskInfoList) {
+    private void index(TaskInfo taskInfo) {
+        final String taskId = taskInfo.getTaskId().getValue();
+        final TaskInfo previous = taskInfoCache.put(taskId, taskInfo);
+        if (previous != null) {
+            unindexSecondary(previous);
+        }
+        if (taskInfo.hasExecutor()) {
+            executorIndex.put(taskInfo.getExecutor().getExecutorId().getValue(), taskInfo);
+        }
+        slaveIndex.computeIfAbsent(taskInfo.getSlaveId().getValue(), slaveId -> new HashSet<>()).add(taskId);
+        getElasticNodeId(taskInfo).ifPresent(nodeId -> {
+            elasticNodeIdIndex.put(nodeId, taskId);
+            usedElasticNodeIds.set(nodeId);
+        });
+    }
+
+    private void unindex(TaskInfo taskInfo) {
+        final String taskId = taskInfo.getTaskId().getValue();
+        taskInfoCache.remove(taskId);
+        taskStatusCache.remove(taskId);
+        historyCache.remove(taskId);
+        unindexSecondary(taskInfo);
+    }
+
+    private void unindexSecondary(TaskInfo taskInfo) {
+        final String taskId = taskInfo.getTaskId().getValue();
+        if (taskInfo.hasExecutor()) {
+            executorIndex.remove(taskInfo.getExecutor().getExecutorId().getValue(), taskInfo);
+        }
+        final Set<String> slaveTasks = slaveIndex.get(taskInfo.getSlaveId().getValue());
+        if (slaveTasks != null && slaveTasks.remove(taskId) && slaveTasks.isEmpty()) {
+            slaveIndex.remove(taskInfo.getSlaveId().getValue());
+        }
+        getElasticNodeId(taskInfo).ifPresent(nodeId -> {
+            if (elasticNodeIdIndex.remove(nodeId, taskId)) {
+                usedElasticNodeIds.clear(nodeId);
+            }
+        });
+    }
+
+    private void clearCache() {
+        taskInfoCache.clear();
+        executorIndex.clear();
+        slaveIndex.clear();
+        elasticNodeIdIndex.clear();
+        usedElasticNodeIds.clear();
+        taskStatusCache.clear();
+        historyCache.clear();
+    }
+
+    private String logTaskList(Collection<TaskInfo> taskInfoList) {
         List<String> res = new ArrayList<>();
         for (TaskInfo t : taskInfoList) {
             res.add(t.getTaskId().getValue());
@@ -230,17 +615,60 @@ public class ClusterState {
         return Arrays.toString(res.toArray());
     }
 
-    private void setTaskInfoList(List<TaskInfo> taskInfoList) {
-        LOGGER.debug("Writing executor state list: " + logTaskList(taskInfoList));
-        try {
-            new StatePath(zooKeeperStateDriver).mkdir(getKey());
-            zooKeeperStateDriver.set(getKey(), taskInfoList);
-        } catch (IOException ex) {
-            LOGGER.error("Could not write list of executor states to zookeeper: ", ex);
+    private boolean rmIfExists(String key) throws IOException {
+        if (!statePath.exists(key)) {
+            return false;
         }
+        statePath.rm(key);
+        return true;
+    }
+
+    private void setTaskInfo(TaskInfo taskInfo) throws IOException {
+        String key = getTaskKey(taskInfo.getTaskId().getValue());
+        statePath.mkdir(key);
+        zooKeeperStateDriver.set(key, taskInfo);
+    }
+
+    /**
+     * Applies a change to a task ID list in zookeeper. The list is read and written with compare-and-set, and the
+     * change is reapplied to a fresh copy if somebody else wrote the list in the meantime.
+     */
+    private void updateList(String key, Consumer<List<String>> change) throws IOException {
+        statePath.mkdir(key);
+        for (int attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+            final Versioned<List<String>> current = zooKeeperStateDriver.getVersioned(key);
+            final ArrayList<String> taskIds = current.getValue() == null ? new ArrayList<>() : new ArrayList<>(current.getValue());
+            change.accept(taskIds);
+            LOGGER.debug("Writing task ID list " + key + ": " + taskIds);
+            if (zooKeeperStateDriver.compareAndSet(key, current, taskIds)) {
+                return;
+            }
+            LOGGER.debug("Task ID list " + key + " was modified concurrently, retrying. Attempt " + attempt);
+        }
+        throw new IOException("Unable to update task ID list " + key + " after " + MAX_UPDATE_ATTEMPTS + " attempts");
     }
 
     private String getKey() {
+        return frameworkState.getFrameworkID().getValue() + "/" + TASKS_KEY;
+    }
+
+    private String getStatusIndexKey() {
+        return frameworkState.getFrameworkID().getValue() + "/" + STATUS_INDEX_KEY;
+    }
+
+    private String getHistoryKey(String taskId) {
+        return frameworkState.getFrameworkID().getValue() + "/" + HISTORY_KEY + "/" + taskId;
+    }
+
+    private String getTaskKey(String taskId) {
+        return getKey() + "/" + taskId;
+    }
+
+    private String getStatusKey(TaskID taskId) {
+        return ESTaskStatus.getKey(frameworkState.getFrameworkID(), taskId);
+    }
+
+    private String getLegacyKey() {
         return frameworkState.getFrameworkID().getValue() + "/" + STATE_LIST;
     }
 }
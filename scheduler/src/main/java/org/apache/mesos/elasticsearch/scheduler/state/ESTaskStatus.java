@@ -2,6 +2,7 @@ package org.apache.mesos.elasticsearch.scheduler.state;
 
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.TaskID;
 import org.apache.mesos.Protos.TaskInfo;
 import org.apache.mesos.Protos.TaskState;
 import org.apache.mesos.Protos.TaskStatus;
@@ -62,6 +63,13 @@ public class ESTaskStatus {
     }
 
     public TaskStatus getDefaultStatus() {
+        return getDefaultStatus(taskInfo);
+    }
+
+    /**
+     * @return the staging status a new task starts with
+     */
+    public static TaskStatus getDefaultStatus(TaskInfo taskInfo) {
         return TaskStatus.newBuilder()
                 .setState(TaskState.TASK_STAGING)
                     .setTaskId(taskInfo.getTaskId())
@@ -85,7 +93,14 @@ public class ESTaskStatus {
     }
 
     private String getKey() {
-        return frameworkID.getValue() + "/" + STATE_KEY + "/" + taskInfo.getTaskId().getValue();
+        return getKey(frameworkID, taskInfo.getTaskId());
+    }
+
+    /**
+     * @return the zookeeper key of the status of the given task
+     */
+    public static String getKey(FrameworkID frameworkID, TaskID taskID) {
+        return frameworkID.getValue() + "/" + STATE_KEY + "/" + taskID.getValue();
     }
 
     public boolean taskInError() {
@@ -101,7 +116,7 @@ public class ESTaskStatus {
 
     public void destroy() {
         try {
-            state.delete(getKey());
+            statePath.rm(getKey());
         } catch (IOException e) {
             LOGGER.error("Could not destroy Task in ZK.", e);
         }
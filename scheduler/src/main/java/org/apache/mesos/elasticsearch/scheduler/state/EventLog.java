@@ -0,0 +1,357 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import com.google.protobuf.Message;
+import org.apache.log4j.Logger;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.mesos.Protos.TaskStatus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of the changes to the scheduler state, with periodic snapshots. Serves as an audit trail of task
+ * launches, removals and status changes, and can rebuild the state it describes with {@link #replay()}. Pointed at a
+ * copy of the state (e.g. a {@link SerializableFileState}), it replays production event sequences offline.
+ *
+ * Events are numbered from 1 and stored in segments of {@code segmentSize} events,
+ * {@code <frameworkId>/events/<segment>}. Appending an event rewrites the last segment, up to {@code segmentSize}
+ * events, written behind by the {@link TaskStatusWriter}; successive appends are coalesced into one write. Every
+ * {@code snapshotInterval} events the replayed state is written to {@code <frameworkId>/snapshot}; replay starts from
+ * there. The snapshot is queued on the same writer after the segments, so nothing is written to zookeeper on the
+ * appending thread. Segments are kept for one more interval after a snapshot has made them redundant, so the log always
+ * holds at least the last {@code snapshotInterval} events.
+ *
+ * If the log cannot be read, events are dropped and reading is retried at most every {@link #LOAD_RETRY_INTERVAL_MS}.
+ */
+public class EventLog {
+    private static final Logger LOGGER = Logger.getLogger(EventLog.class);
+    public static final String EVENTS_KEY = "events";
+    public static final String SNAPSHOT_KEY = "snapshot";
+    public static final int DEFAULT_SEGMENT_SIZE = 100;
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1000;
+    public static final long LOAD_RETRY_INTERVAL_MS = 30000;
+
+    private final SerializableState state;
+    private final FrameworkState frameworkState;
+    private final StatePath statePath;
+    private final TaskStatusWriter writer;
+    private final int segmentSize;
+    private final int snapshotInterval;
+
+    // Guarded by this
+    private String loadedFrameworkId = null;
+    private long loadFailedAt = -1;
+    private Snapshot current;
+    private long snapshotSequence;
+    private long segmentIndex;
+    private List<StateEvent> segment;
+
+    public EventLog(SerializableState state, FrameworkState frameworkState, StatePath statePath, TaskStatusWriter writer) {
+        this(state, frameworkState, statePath, writer, DEFAULT_SEGMENT_SIZE, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * @param snapshotInterval must be a multiple of segmentSize
+     */
+    public EventLog(SerializableState state, FrameworkState frameworkState, StatePath statePath, TaskStatusWriter writer, int segmentSize, int snapshotInterval) {
+        if (segmentSize < 1 || snapshotInterval < segmentSize || snapshotInterval % segmentSize != 0) {
+            throw new IllegalArgumentException("Snapshot interval must be a multiple of the segment size: " + snapshotInterval + ", " + segmentSize);
+        }
+        this.state = state;
+        this.frameworkState = frameworkState;
+        this.statePath = statePath;
+        this.writer = writer;
+        this.segmentSize = segmentSize;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Appends an event. Events that cannot be appended because the log cannot be read are logged and dropped.
+     * @param payload see {@link StateEvent#getPayload()}
+     */
+    public synchronized void append(StateEvent.Type type, Message payload) {
+        if (!ensureLoaded()) {
+            LOGGER.warn("Event log unavailable, dropping event: " + type);
+            return;
+        }
+        final StateEvent event = new StateEvent(type, current.getSequence() + 1, System.currentTimeMillis(), payload);
+        current.apply(event);
+        if (getSegmentIndex(event.getSequence()) != segmentIndex) {
+            segmentIndex = getSegmentIndex(event.getSequence());
+            segment = new ArrayList<>(segmentSize);
+        }
+        segment.add(event);
+        writer.write(getSegmentKey(segmentIndex), new Segment(segment));
+        if (event.getSequence() % snapshotInterval == 0) {
+            snapshot();
+        }
+    }
+
+    /**
+     * @return the state rebuilt from the last snapshot and the events after it
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized Snapshot replay() throws IOException {
+        if (!ensureLoaded()) {
+            throw new IOException("Unable to read event log");
+        }
+        return current.copy();
+    }
+
+    /**
+     * @return up to limit of the most recent events, oldest first. Only the last segment is searched.
+     */
+    public synchronized List<StateEvent> getRecentEvents(int limit) {
+        if (!ensureLoaded()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(segment.subList(Math.max(0, segment.size() - limit), segment.size()));
+    }
+
+    /**
+     * Deletes the log and its snapshot.
+     */
+    public synchronized void destroy() {
+        try {
+            writer.discard(getSnapshotKey());
+            if (ensureLoaded()) {
+                final long retained = getFirstRetainedSegment(snapshotSequence);
+                for (long index = segmentIndex; index >= 0; index--) {
+                    writer.discard(getSegmentKey(index));
+                    if (!rmIfExists(getSegmentKey(index)) && index < retained) {
+                        break; // The older segments were deleted by a snapshot
+                    }
+                }
+            }
+            rmIfExists(getSnapshotKey());
+            statePath.rm(getKey());
+        } catch (InvalidParameterException e) {
+            LOGGER.debug("No event log to delete");
+        } catch (IOException e) {
+            LOGGER.error("Unable to delete event log from zookeeper", e);
+        }
+        loadedFrameworkId = null;
+        loadFailedAt = -1;
+    }
+
+    /**
+     * Reads the last snapshot and replays the events after it, the first time the log is used for a framework.
+     * @return false if the log could not be read, now or within {@link #LOAD_RETRY_INTERVAL_MS}
+     */
+    private boolean ensureLoaded() {
+        final String frameworkId = frameworkState.getFrameworkID().getValue();
+        if (frameworkId.equals(loadedFrameworkId)) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        if (loadFailedAt >= 0 && now - loadFailedAt < LOAD_RETRY_INTERVAL_MS) {
+            return false;
+        }
+        try {
+            final Snapshot snapshot = state.get(getSnapshotKey());
+            current = snapshot == null ? new Snapshot() : snapshot;
+            snapshotSequence = current.getSequence();
+            segmentIndex = getSegmentIndex(current.getSequence() + 1);
+            segment = new ArrayList<>(segmentSize);
+            for (long index = segmentIndex; ; index++) {
+                final Segment stored = state.get(getSegmentKey(index));
+                if (stored == null) {
+                    break;
+                }
+                stored.events.stream().filter(event -> event.getSequence() > current.getSequence()).forEach(current::apply);
+                segmentIndex = index;
+                segment = new ArrayList<>(stored.events);
+            }
+            loadedFrameworkId = frameworkId;
+            loadFailedAt = -1;
+            LOGGER.info("Replayed event log up to event " + current.getSequence() + " from snapshot at event " + snapshotSequence);
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Unable to read event log. Retrying in " + LOAD_RETRY_INTERVAL_MS + "ms", e);
+            loadFailedAt = now;
+            return false;
+        }
+    }
+
+    /**
+     * Queues the current state as the snapshot, after the segments it covers. Once it has been written, the writer
+     * deletes the segments that are no longer retained, newest first, down to the first one already deleted.
+     */
+    private void snapshot() {
+        final Snapshot snapshot = current.copy();
+        final String snapshotKey = getSnapshotKey();
+        final String eventsKey = getKey();
+        final long retained = getFirstRetainedSegment(snapshot.getSequence());
+        snapshotSequence = snapshot.getSequence();
+        writer.write(snapshotKey, (TaskStatusWriter.Operation) (zkState, zkPath) -> {
+            zkPath.mkdir(snapshotKey);
+            zkState.set(snapshotKey, snapshot);
+            for (long index = retained - 1; index >= 0 && zkPath.exists(eventsKey + "/" + index); index--) {
+                zkPath.rm(eventsKey + "/" + index);
+            }
+            LOGGER.debug("Wrote event log snapshot at event " + snapshot.getSequence());
+        });
+    }
+
+    private long getFirstRetainedSegment(long snapshotSequence) {
+        return getSegmentIndex(Math.max(1, snapshotSequence - snapshotInterval + 1));
+    }
+
+    private long getSegmentIndex(long sequence) {
+        return (sequence - 1) / segmentSize;
+    }
+
+    private boolean rmIfExists(String key) throws IOException {
+        if (!statePath.exists(key)) {
+            return false;
+        }
+        statePath.rm(key);
+        return true;
+    }
+
+    private String getKey() {
+        return frameworkState.getFrameworkID().getValue() + "/" + EVENTS_KEY;
+    }
+
+    private String getSegmentKey(long index) {
+        return getKey() + "/" + index;
+    }
+
+    private String getSnapshotKey() {
+        return frameworkState.getFrameworkID().getValue() + "/" + SNAPSHOT_KEY;
+    }
+
+    /**
+     * A stored run of consecutive events
+     */
+    static class Segment {
+        final List<StateEvent> events;
+
+        Segment(List<StateEvent> events) {
+            this.events = Collections.unmodifiableList(new ArrayList<>(events));
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(events.size());
+            for (StateEvent event : events) {
+                event.writeTo(out);
+            }
+        }
+
+        static Segment readFrom(DataInputStream in) throws IOException {
+            final int size = in.readInt();
+            final List<StateEvent> events = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                events.add(StateEvent.readFrom(in));
+            }
+            return new Segment(events);
+        }
+    }
+
+    /**
+     * The scheduler state as of an event: the framework ID, the tasks and their latest statuses.
+     */
+    public static class Snapshot {
+        private long sequence = 0;
+        private Protos.FrameworkID frameworkId = null;
+        private final Map<String, TaskInfo> tasks = new LinkedHashMap<>();
+        private final Map<String, TaskStatus> statuses = new LinkedHashMap<>();
+
+        /**
+         * @return the sequence number of the last event applied
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the ID the framework last registered with, or null
+         */
+        public Protos.FrameworkID getFrameworkId() {
+            return frameworkId;
+        }
+
+        public Collection<TaskInfo> getTasks() {
+            return Collections.unmodifiableCollection(tasks.values());
+        }
+
+        public Collection<TaskStatus> getStatuses() {
+            return Collections.unmodifiableCollection(statuses.values());
+        }
+
+        public void apply(StateEvent event) {
+            switch (event.getType()) {
+                case FRAMEWORK_REGISTERED:
+                    frameworkId = (Protos.FrameworkID) event.getPayload();
+                    break;
+                case TASK_ADDED:
+                    tasks.put(event.getTaskId(), (TaskInfo) event.getPayload());
+                    statuses.remove(event.getTaskId());
+                    break;
+                case TASK_REMOVED:
+                    tasks.remove(event.getTaskId());
+                    statuses.remove(event.getTaskId());
+                    break;
+                case STATUS_UPDATED:
+                    if (tasks.containsKey(event.getTaskId())) {
+                        statuses.put(event.getTaskId(), (TaskStatus) event.getPayload());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown event type: " + event.getType());
+            }
+            sequence = event.getSequence();
+        }
+
+        public Snapshot copy() {
+            final Snapshot copy = new Snapshot();
+            copy.sequence = sequence;
+            copy.frameworkId = frameworkId;
+            copy.tasks.putAll(tasks);
+            copy.statuses.putAll(statuses);
+            return copy;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(sequence);
+            out.writeBoolean(frameworkId != null);
+            if (frameworkId != null) {
+                frameworkId.writeDelimitedTo(out);
+            }
+            out.writeInt(tasks.size());
+            for (TaskInfo taskInfo : tasks.values()) {
+                taskInfo.writeDelimitedTo(out);
+            }
+            out.writeInt(statuses.size());
+            for (TaskStatus status : statuses.values()) {
+                status.writeDelimitedTo(out);
+            }
+        }
+
+        static Snapshot readFrom(DataInputStream in) throws IOException {
+            final Snapshot snapshot = new Snapshot();
+            snapshot.sequence = in.readLong();
+            if (in.readBoolean()) {
+                snapshot.frameworkId = Protos.FrameworkID.parseDelimitedFrom(in);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                final TaskInfo taskInfo = TaskInfo.parseDelimitedFrom(in);
+                snapshot.tasks.put(taskInfo.getTaskId().getValue(), taskInfo);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                final TaskStatus status = TaskStatus.parseDelimitedFrom(in);
+                snapshot.statuses.put(status.getTaskId().getValue(), status);
+            }
+            return snapshot;
+        }
+    }
+}
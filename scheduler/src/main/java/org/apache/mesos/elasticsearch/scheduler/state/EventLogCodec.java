@@ -0,0 +1,46 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes the segments and snapshots of the {@link EventLog}.
+ */
+public class EventLogCodec implements StateCodec {
+    public static final byte ID = 4;
+    private static final byte SEGMENT = 0;
+    private static final byte SNAPSHOT = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public boolean canEncode(Object object) {
+        return object instanceof EventLog.Segment || object instanceof EventLog.Snapshot;
+    }
+
+    @Override
+    public void encode(Object object, DataOutputStream out) throws IOException {
+        if (object instanceof EventLog.Segment) {
+            out.writeByte(SEGMENT);
+            ((EventLog.Segment) object).writeTo(out);
+        } else {
+            out.writeByte(SNAPSHOT);
+            ((EventLog.Snapshot) object).writeTo(out);
+        }
+    }
+
+    @Override
+    public Object decode(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        if (kind == SEGMENT) {
+            return EventLog.Segment.readFrom(in);
+        } else if (kind == SNAPSHOT) {
+            return EventLog.Snapshot.readFrom(in);
+        }
+        throw new IOException("Unknown event log entry kind: " + kind);
+    }
+}
@@ -25,23 +25,37 @@ public class FrameworkState {
     private final SerializableState zookeeperStateDriver;
     private final StatePath statePath;
     private SchedulerDriver driver;
+    private volatile Protos.FrameworkID frameworkID = null; // Cached, only ever written by markRegistered
 
     public FrameworkState(SerializableState zookeeperStateDriver) {
+        this(zookeeperStateDriver, new StatePath(zookeeperStateDriver));
+    }
+
+    /**
+     * @param statePath shared with everything else that writes to the state driver, see {@link StatePath}
+     */
+    public FrameworkState(SerializableState zookeeperStateDriver, StatePath statePath) {
         this.zookeeperStateDriver = zookeeperStateDriver;
-        statePath = new StatePath(zookeeperStateDriver);
+        this.statePath = statePath;
     }
 
     /**
-     * Return empty if no frameworkId found.
+     * Return empty if no frameworkId found. The ID is read from zookeeper once and then cached, since this scheduler
+     * is the only one that writes it.
      */
     public Protos.FrameworkID getFrameworkID() {
-        Protos.FrameworkID id = null;
-        try {
-            id = zookeeperStateDriver.get(FRAMEWORKID_KEY);
-        } catch (IOException e) {
-            LOGGER.warn("Unable to get FrameworkID from zookeeper", e);
+        Protos.FrameworkID id = frameworkID;
+        if (id == null) {
+            try {
+                id = zookeeperStateDriver.get(FRAMEWORKID_KEY);
+                id = id == null ? EMPTY_ID : id;
+                frameworkID = id;
+            } catch (IOException e) {
+                LOGGER.warn("Unable to get FrameworkID from zookeeper", e);
+                id = EMPTY_ID;
+            }
         }
-        return id == null ? EMPTY_ID : id;
+        return id;
     }
 
     public void markRegistered(Protos.FrameworkID frameworkId, SchedulerDriver driver) {
@@ -55,13 +69,17 @@ public class FrameworkState {
         } catch (IOException e) {
             LOGGER.error("Unable to store framework ID in zookeeper", e);
         }
+        this.frameworkID = frameworkId;
         this.driver = driver;
 
-        final ClusterState clusterState = new ClusterState(zookeeperStateDriver, this);
-        registeredListeners.forEach(listener -> listener.accept(clusterState));
+        if (!registeredListeners.isEmpty()) { // A ClusterState subscribes to, and writes, every status update
+            final ClusterState clusterState = new ClusterState(zookeeperStateDriver, this, statePath);
+            registeredListeners.forEach(listener -> listener.accept(clusterState));
+        }
     }
 
     public void destroy() {
+        frameworkID = null;
         try {
             statePath.rm(FRAMEWORKID_KEY);
         } catch (IOException e) {
@@ -0,0 +1,49 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Encodes any {@link Serializable} object using Java serialization. Used for everything that is not a protobuf
+ * message, and to read entries written before state entries had a header.
+ */
+public class JavaSerializationStateCodec implements StateCodec {
+    public static final byte ID = 2;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public boolean canEncode(Object object) {
+        return object == null || object instanceof Serializable;
+    }
+
+    @Override
+    public void encode(Object object, DataOutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(object);
+        objectOut.flush();
+    }
+
+    @Override
+    public Object decode(DataInputStream in) throws IOException {
+        try {
+            return read(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to deserialize object", e);
+        }
+    }
+
+    static Object read(InputStream in) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectIn = new ObjectInputStream(in)) {
+            return objectIn.readObject();
+        }
+    }
+}
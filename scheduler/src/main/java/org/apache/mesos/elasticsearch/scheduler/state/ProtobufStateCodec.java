@@ -0,0 +1,102 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes protobuf messages (e.g. {@link org.apache.mesos.Protos.TaskStatus}) and lists of messages of a single type
+ * (e.g. a list of {@link org.apache.mesos.Protos.TaskInfo}) using the protobuf wire format.
+ */
+public class ProtobufStateCodec implements StateCodec {
+    public static final byte ID = 1;
+    private static final byte SINGLE = 0;
+    private static final byte LIST = 1;
+
+    private final Map<String, Parser<? extends Message>> parsers = new ConcurrentHashMap<>();
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public boolean canEncode(Object object) {
+        if (object instanceof Message) {
+            return true;
+        }
+        if (!(object instanceof List)) {
+            return false;
+        }
+        Class<?> messageClass = null;
+        for (Object element : (List<?>) object) {
+            if (!(element instanceof Message) || messageClass != null && !messageClass.equals(element.getClass())) {
+                return false;
+            }
+            messageClass = element.getClass();
+        }
+        return true;
+    }
+
+    @Override
+    public void encode(Object object, DataOutputStream out) throws IOException {
+        if (object instanceof Message) {
+            out.writeByte(SINGLE);
+            out.writeUTF(object.getClass().getName());
+            ((Message) object).writeDelimitedTo(out);
+        } else {
+            List<?> list = (List<?>) object;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            if (!list.isEmpty()) {
+                out.writeUTF(list.get(0).getClass().getName());
+                for (Object element : list) {
+                    ((Message) element).writeDelimitedTo(out);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Object decode(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        if (kind == SINGLE) {
+            return getParser(in.readUTF()).parseDelimitedFrom(in);
+        } else if (kind == LIST) {
+            int size = in.readInt();
+            List<Message> list = new ArrayList<>(size);
+            if (size > 0) {
+                Parser<? extends Message> parser = getParser(in.readUTF());
+                for (int i = 0; i < size; i++) {
+                    list.add(parser.parseDelimitedFrom(in));
+                }
+            }
+            return list;
+        }
+        throw new IOException("Unknown protobuf entry kind: " + kind);
+    }
+
+    private Parser<? extends Message> getParser(String className) throws IOException {
+        Parser<? extends Message> parser = parsers.get(className);
+        if (parser == null) {
+            try {
+                Class<?> messageClass = Class.forName(className);
+                if (!Message.class.isAssignableFrom(messageClass)) {
+                    throw new IOException("Not a protobuf message class: " + className);
+                }
+                parser = ((Message) messageClass.getMethod("getDefaultInstance").invoke(null)).getParserForType();
+                parsers.put(className, parser);
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Unable to find protobuf parser for " + className, e);
+            }
+        }
+        return parser;
+    }
+}
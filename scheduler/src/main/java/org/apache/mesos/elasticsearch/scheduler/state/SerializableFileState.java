@@ -0,0 +1,278 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Writes serializable data to a local file. For single scheduler deployments, development and tests, where zookeeper
+ * is not needed or not available.
+ *
+ * The file is an append-only log of records, memory-mapped for reading and writing:
+ * <pre>
+ *   length (4 bytes) | crc32 of payload (4 bytes) | payload: op (1 byte) | key length (2 bytes) | key | value
+ * </pre>
+ * A record of length 0 marks the end of the log. On startup the log is replayed up to the first record that is
+ * incomplete or fails its checksum, so a write interrupted by a crash is discarded. The log is compacted (rewritten with
+ * only the live records) once more than half of it is garbage.
+ */
+public class SerializableFileState implements SerializableState, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(SerializableFileState.class);
+    public static final int INITIAL_CAPACITY = 1024 * 1024;
+    public static final int COMPACTION_MIN_BYTES = 1024 * 1024;
+    private static final int HEADER_BYTES = 8;
+    private static final int MIN_PAYLOAD_BYTES = 3;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final Long NO_VERSION = 0L;
+
+    private final Path path;
+    private final StateSerializer serializer;
+    private final int compactionMinBytes;
+    private final Map<String, Record> index = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end = 0;
+    private long liveBytes = 0;
+    private long sequence = 0;
+
+    public SerializableFileState(String path) throws IOException {
+        this(Paths.get(path), new StateSerializer(), COMPACTION_MIN_BYTES);
+    }
+
+    public SerializableFileState(Path path, StateSerializer serializer, int compactionMinBytes) throws IOException {
+        this.path = path;
+        this.serializer = serializer;
+        this.compactionMinBytes = compactionMinBytes;
+        open();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(String key) throws IOException {
+        final Record record = index.get(key);
+        if (record == null) {
+            return null;
+        }
+        final byte[] value = new byte[record.valueLength];
+        readBytes(record.valueOffset, value);
+        try {
+            return (T) serializer.deserialize(value);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to get key: " + key, e);
+        }
+    }
+
+    @Override
+    public synchronized <T> void set(String key, T object) throws IOException {
+        append(PUT, key, serializer.serialize(object));
+    }
+
+    /**
+     * The version of a key is the sequence number of the record it was last written in.
+     */
+    @Override
+    public synchronized <T> Versioned<T> getVersioned(String key) throws IOException {
+        final Record record = index.get(key);
+        return new Versioned<>(get(key), record == null ? NO_VERSION : record.version);
+    }
+
+    @Override
+    public synchronized <T> boolean compareAndSet(String key, Versioned<T> expected, T object) throws IOException {
+        final Record record = index.get(key);
+        if (!expected.getVersion().equals(record == null ? NO_VERSION : record.version)) {
+            return false;
+        }
+        set(key, object);
+        return true;
+    }
+
+    /**
+     * @throws InvalidParameterException if the key does not exist
+     */
+    @Override
+    public synchronized void delete(String key) throws IOException {
+        if (!index.containsKey(key)) {
+            throw new InvalidParameterException("Key does not exist:" + key);
+        }
+        append(DELETE, key, new byte[0]);
+    }
+
+    /**
+     * Rewrites the log with only the live records.
+     */
+    public synchronized void compact() throws IOException {
+        final Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        final int before = end;
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Record record : index.values()) {
+                final byte[] bytes = new byte[record.length];
+                readBytes(record.offset, bytes);
+                out.write(ByteBuffer.wrap(bytes));
+            }
+            out.force(true);
+        }
+        close();
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+        LOGGER.info("Compacted state log " + path + " from " + before + " to " + end + " bytes");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * @return the number of bytes in use in the log, live or not
+     */
+    public synchronized int size() {
+        return end;
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, channel.size()));
+        replay();
+    }
+
+    /**
+     * Rebuilds the index from the log.
+     */
+    private void replay() {
+        index.clear();
+        liveBytes = 0;
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            final int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < MIN_PAYLOAD_BYTES || position + HEADER_BYTES + length > buffer.capacity()) {
+                LOGGER.warn("Ignoring incomplete record at offset " + position + " of state log " + path);
+                break;
+            }
+            final byte[] payload = new byte[length];
+            readBytes(position + HEADER_BYTES, payload);
+            if (buffer.getInt(position + 4) != checksum(payload)) {
+                LOGGER.warn("Ignoring corrupt record at offset " + position + " of state log " + path);
+                break;
+            }
+            apply(position, payload);
+            position += HEADER_BYTES + length;
+        }
+        end = position;
+        terminate();
+    }
+
+    private void append(byte op, String key, byte[] value) throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > Short.MAX_VALUE) {
+            throw new InvalidParameterException("Key is too long: " + key);
+        }
+        final byte[] payload = ByteBuffer.allocate(MIN_PAYLOAD_BYTES + keyBytes.length + value.length)
+                .put(op)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .put(value)
+                .array();
+        ensureCapacity(end + HEADER_BYTES + payload.length + 4);
+        final int position = end;
+        buffer.position(position + HEADER_BYTES);
+        buffer.put(payload);
+        buffer.putInt(position + 4, checksum(payload));
+        buffer.putInt(position, payload.length);
+        end = position + HEADER_BYTES + payload.length;
+        terminate();
+        buffer.force();
+        apply(position, payload);
+        if (end >= compactionMinBytes && liveBytes * 2 < end) {
+            compact();
+        }
+    }
+
+    /**
+     * Updates the index with a record that is in the log.
+     */
+    private void apply(int position, byte[] payload) {
+        final ByteBuffer in = ByteBuffer.wrap(payload);
+        final byte op = in.get();
+        final byte[] keyBytes = new byte[in.getShort()];
+        in.get(keyBytes);
+        final String key = new String(keyBytes, StandardCharsets.UTF_8);
+        final Record previous = index.remove(key);
+        if (previous != null) {
+            liveBytes -= previous.length;
+        }
+        if (op == PUT) {
+            final Record record = new Record(position, HEADER_BYTES + payload.length, position + HEADER_BYTES + in.position(), in.remaining(), ++sequence);
+            index.put(key, record);
+            liveBytes += record.length;
+        }
+    }
+
+    private void ensureCapacity(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("State log is full: " + path);
+        }
+        if (capacity > buffer.capacity()) {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, Math.max(capacity, 2L * buffer.capacity())));
+        }
+    }
+
+    /**
+     * Marks the end of the log, in case there is garbage after it from an interrupted write.
+     */
+    private void terminate() {
+        if (end + 4 <= buffer.capacity()) {
+            buffer.putInt(end, 0);
+        }
+    }
+
+    private void readBytes(int position, byte[] bytes) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+    }
+
+    private static int checksum(byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Location of a live record in the log
+     */
+    private static class Record {
+        private final int offset;
+        private final int length;
+        private final int valueOffset;
+        private final int valueLength;
+        private final Long version;
+
+        Record(int offset, int length, int valueOffset, int valueLength, long version) {
+            this.offset = offset;
+            this.length = length;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.version = version;
+        }
+    }
+}
@@ -1,12 +1,82 @@
 package org.apache.mesos.elasticsearch.scheduler.state;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * Represents a serializable interface
+ *
+ * The asynchronous methods complete exceptionally with an {@link IOException} where the synchronous ones would throw
+ * it. By default they simply run the synchronous methods; implementations backed by a remote store should override them
+ * so that several requests can be in flight at once.
  */
 public interface SerializableState {
     <T> T get(String key) throws IOException;
     <T> void set(String key, T object) throws IOException;
     void delete(String key) throws IOException;
+
+    /**
+     * Get an object together with its current version, for use with {@link #compareAndSet(String, Versioned, Object)}.
+     */
+    <T> Versioned<T> getVersioned(String key) throws IOException;
+
+    /**
+     * Set an object, but only if it has not been written since it was read.
+     * @param expected the value as read with {@link #getVersioned(String)}
+     * @return false, without writing, if the key has been written or deleted since expected was read
+     */
+    <T> boolean compareAndSet(String key, Versioned<T> expected, T object) throws IOException;
+
+    default <T> CompletableFuture<T> getAsync(String key) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(get(key));
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    default <T> CompletableFuture<Void> setAsync(String key, T object) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            set(key, object);
+            future.complete(null);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    default CompletableFuture<Void> deleteAsync(String key) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            delete(key);
+            future.complete(null);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Fetches several keys at once.
+     * @return a map, in the order of the given keys, from key to value. The value is null if the key does not exist.
+     */
+    default <T> CompletableFuture<Map<String, T>> getAll(Collection<String> keys) {
+        final List<String> keyList = keys.stream().distinct().collect(Collectors.toList());
+        final List<CompletableFuture<T>> futures = keyList.stream().map(key -> this.<T>getAsync(key)).collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, T> values = new LinkedHashMap<>();
+            for (int i = 0; i < keyList.size(); i++) {
+                values.put(keyList.get(i), futures.get(i).join());
+            }
+            return values;
+        });
+    }
 }
@@ -1,19 +1,54 @@
 package org.apache.mesos.elasticsearch.scheduler.state;
 
+import org.apache.log4j.Logger;
 import org.apache.mesos.state.Variable;
 
 import java.io.*;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Writes serializable data to zookeeper
+ *
+ * The mesos state API returns futures that can only be waited on. The asynchronous methods issue their requests right
+ * away and wait for the responses on a shared pool of daemon threads.
  */
 public class SerializableZookeeperState implements SerializableState {
+    private static final Logger LOGGER = Logger.getLogger(SerializableZookeeperState.class);
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "zk-state-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
     private org.apache.mesos.state.State zkState;
+    private final StateSerializer serializer;
+    private final StateSizeStats sizeStats;
 
     public SerializableZookeeperState(org.apache.mesos.state.State zkState) {
+        this(zkState, new StateSerializer());
+    }
+
+    public SerializableZookeeperState(org.apache.mesos.state.State zkState, StateSerializer serializer) {
+        this(zkState, serializer, new StateSizeStats());
+    }
+
+    public SerializableZookeeperState(org.apache.mesos.state.State zkState, StateSerializer serializer, StateSizeStats sizeStats) {
         this.zkState = zkState;
+        this.serializer = serializer;
+        this.sizeStats = sizeStats;
     }
 
     /**
@@ -23,27 +58,53 @@ public class SerializableZookeeperState implements SerializableState {
      * @return Object
      * @throws IOException
      */
-    @SuppressWarnings("unchecked")
     public <T> T get(String key) throws IOException {
+        return this.<T>await(key, () -> zkState.fetch(key)).getValue();
+    }
+
+    /**
+     * The version of a zNode is the {@link Variable} it was read from. Storing a mutation of a variable fails if the
+     * zNode has changed since the variable was fetched.
+     */
+    @Override
+    public <T> Versioned<T> getVersioned(String key) throws IOException {
+        return await(key, () -> zkState.fetch(key));
+    }
+
+    @Override
+    public <T> boolean compareAndSet(String key, Versioned<T> expected, T object) throws IOException {
+        if (!(expected.getVersion() instanceof Variable)) {
+            throw new IllegalArgumentException("Version was not read from zookeeper: " + key);
+        }
+        try {
+            final byte[] bytes = serializer.serialize(object);
+            final boolean stored = zkState.store(((Variable) expected.getVersion()).mutate(bytes)).get() != null;
+            if (stored) {
+                sizeStats.record(key, serializer.rawSize(bytes), bytes.length);
+            }
+            return stored;
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            throw new IOException("Unable to set zNode", e);
+        }
+    }
+
+    /**
+     * Waits for a fetched variable and deserializes it
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Versioned<T> await(String key, Supplier<Future<Variable>> fetch) throws IOException {
         try {
-            byte[] existingNodes = zkState.fetch(key).get().value();
+            Variable variable = fetch.get().get();
+            byte[] existingNodes = variable.value();
             if (existingNodes.length > 0) {
-                ByteArrayInputStream bis = new ByteArrayInputStream(existingNodes);
-                ObjectInputStream in = null;
-                try {
-                    in = new ObjectInputStream(bis);
-                    return (T) in.readObject();
-                } finally {
-                    try {
-                        bis.close();
-                    } finally {
-                        if (in != null) {
-                            in.close();
-                        }
-                    }
+                sizeStats.record(key, serializer.rawSize(existingNodes), existingNodes.length);
+                T object = (T) serializer.deserialize(existingNodes);
+                if (serializer.isLegacy(existingNodes)) {
+                    variable = migrate(key, variable, object);
                 }
+                return new Versioned<>(object, variable);
             } else {
-                return null;
+                return new Versioned<>(null, variable);
             }
         } catch (StreamCorruptedException e) {
             throw new IOException("Corrupted zookeeper zNode. Please delete (rmr) the zNode path using the zookeeper/bin/zkCli.sh tool.", e);
@@ -52,6 +113,25 @@ public class SerializableZookeeperState implements SerializableState {
         }
     }
 
+    /**
+     * Rewrites a zNode that was written with plain Java serialization in the current format.
+     */
+    private Variable migrate(String key, Variable variable, Object object) {
+        try {
+            final byte[] bytes = serializer.serialize(object);
+            Variable migrated = zkState.store(variable.mutate(bytes)).get();
+            if (migrated != null) {
+                sizeStats.record(key, serializer.rawSize(bytes), bytes.length);
+                LOGGER.info("Migrated zNode to current state format: " + key);
+                return migrated;
+            }
+            LOGGER.warn("Unable to migrate zNode to current state format, it was modified concurrently: " + key);
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            LOGGER.warn("Unable to migrate zNode to current state format: " + key, e);
+        }
+        return variable;
+    }
+
     /**
      * Set serializable object in store
      *
@@ -59,23 +139,11 @@ public class SerializableZookeeperState implements SerializableState {
      */
     public <T> void set(String key, T object) throws IOException {
         try {
+            final byte[] bytes = serializer.serialize(object);
             Variable value = zkState.fetch(key).get();
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream out = null;
-            try {
-                out = new ObjectOutputStream(bos);
-                out.writeObject(object);
-                value = value.mutate(bos.toByteArray());
-                zkState.store(value).get();
-            } finally {
-                try {
-                    if (out != null) {
-                        out.close();
-                    }
-                } finally {
-                    bos.close();
-                }
-            }
+            value = value.mutate(bytes);
+            zkState.store(value).get();
+            sizeStats.record(key, serializer.rawSize(bytes), bytes.length);
         } catch (InterruptedException | ExecutionException | IOException e) {
             throw new IOException("Unable to set zNode", e);
         }
@@ -94,8 +162,68 @@ public class SerializableZookeeperState implements SerializableState {
                 throw new InvalidParameterException("Key does not exist:" + key);
             }
             zkState.expunge(value);
+            sizeStats.remove(key);
         } catch (InterruptedException | ExecutionException e) {
             throw new IOException("Unable to delete key:" + key, e);
         }
     }
+
+    @Override
+    public <T> CompletableFuture<T> getAsync(String key) {
+        final Future<Variable> fetch = zkState.fetch(key);
+        return supply(() -> this.<T>await(key, () -> fetch).getValue());
+    }
+
+    @Override
+    public <T> CompletableFuture<Void> setAsync(String key, T object) {
+        return supply(() -> {
+            set(key, object);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String key) {
+        return supply(() -> {
+            delete(key);
+            return null;
+        });
+    }
+
+    /**
+     * Issues all fetches at once, then waits for them on a single thread.
+     */
+    @Override
+    public <T> CompletableFuture<Map<String, T>> getAll(Collection<String> keys) {
+        final List<String> keyList = keys.stream().distinct().collect(Collectors.toList());
+        final List<Future<Variable>> fetches = new ArrayList<>(keyList.size());
+        keyList.forEach(key -> fetches.add(zkState.fetch(key)));
+        return supply(() -> {
+            Map<String, T> values = new LinkedHashMap<>();
+            for (int i = 0; i < keyList.size(); i++) {
+                final Future<Variable> fetch = fetches.get(i);
+                values.put(keyList.get(i), this.<T>await(keyList.get(i), () -> fetch).getValue());
+            }
+            return values;
+        });
+    }
+
+    private <T> CompletableFuture<T> supply(IOCallable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            try {
+                future.complete(callable.call());
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * A zookeeper operation
+     */
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
 }
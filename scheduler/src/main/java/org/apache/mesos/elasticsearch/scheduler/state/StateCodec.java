@@ -0,0 +1,26 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes the payload of a state entry. Each codec is identified by a unique id that is written in the
+ * header of the entry, so that the entry can be decoded with the codec that wrote it.
+ */
+public interface StateCodec {
+    /**
+     * @return the id written to the header of every entry encoded with this codec. Must be unique.
+     */
+    byte getId();
+
+    /**
+     * @param object the object to encode, may be null
+     * @return true if this codec is able to encode the object
+     */
+    boolean canEncode(Object object);
+
+    void encode(Object object, DataOutputStream out) throws IOException;
+
+    Object decode(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,125 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import org.apache.mesos.Protos;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A change to the scheduler state, as recorded in the {@link EventLog}. The payload is the protobuf message that
+ * describes the change; its type depends on the event type.
+ */
+public final class StateEvent {
+    /**
+     * Event types. The ids are written to the log and must never change.
+     */
+    public enum Type {
+        FRAMEWORK_REGISTERED(0),
+        TASK_ADDED(1),
+        TASK_REMOVED(2),
+        STATUS_UPDATED(3);
+
+        private final byte id;
+
+        Type(int id) {
+            this.id = (byte) id;
+        }
+
+        static Type valueOf(byte id) throws IOException {
+            for (Type type : values()) {
+                if (type.id == id) {
+                    return type;
+                }
+            }
+            throw new IOException("Unknown state event type: " + id);
+        }
+    }
+
+    private final Type type;
+    private final long sequence;
+    private final long timestamp;
+    private final Message payload;
+
+    public StateEvent(Type type, long sequence, long timestamp, Message payload) {
+        this.type = type;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the position of the event in the log, starting at 1
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the time the event was recorded, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return a {@link Protos.FrameworkID}, {@link Protos.TaskInfo}, {@link Protos.TaskID} or {@link Protos.TaskStatus},
+     * depending on the type
+     */
+    public Message getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return the ID of the task the event is about, or null for framework events
+     */
+    public String getTaskId() {
+        switch (type) {
+            case TASK_ADDED:
+                return ((Protos.TaskInfo) payload).getTaskId().getValue();
+            case TASK_REMOVED:
+                return ((Protos.TaskID) payload).getValue();
+            case STATUS_UPDATED:
+                return ((Protos.TaskStatus) payload).getTaskId().getValue();
+            default:
+                return null;
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.id);
+        out.writeLong(sequence);
+        out.writeLong(timestamp);
+        final byte[] bytes = payload.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static StateEvent readFrom(DataInputStream in) throws IOException {
+        final Type type = Type.valueOf(in.readByte());
+        final long sequence = in.readLong();
+        final long timestamp = in.readLong();
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new StateEvent(type, sequence, timestamp, parse(type, bytes));
+    }
+
+    private static Message parse(Type type, byte[] bytes) throws InvalidProtocolBufferException {
+        switch (type) {
+            case FRAMEWORK_REGISTERED:
+                return Protos.FrameworkID.parseFrom(bytes);
+            case TASK_ADDED:
+                return Protos.TaskInfo.parseFrom(bytes);
+            case TASK_REMOVED:
+                return Protos.TaskID.parseFrom(bytes);
+            default:
+                return Protos.TaskStatus.parseFrom(bytes);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically removes orphaned task zNodes, see {@link ClusterState#collectGarbage(int)}. At most {@code batchSize}
+ * tasks are cleaned up per run, so that a large backlog of orphans is removed gradually rather than in one burst of
+ * zookeeper writes.
+ */
+public class StateGarbageCollector {
+    private static final Logger LOGGER = Logger.getLogger(StateGarbageCollector.class);
+    public static final int DEFAULT_BATCH_SIZE = 20;
+    public static final long DEFAULT_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+    public static final int MAX_REPORTED_KEYS = 100;
+
+    private final ClusterState clusterState;
+    private final int batchSize;
+    private final long intervalMs;
+    private ScheduledExecutorService executor;
+
+    // Report, guarded by this
+    private long runs = 0;
+    private long keysRemoved = 0;
+    private long lastRunTime = 0;
+    private String lastError = null;
+    private final Deque<String> recentlyRemoved = new ArrayDeque<>();
+
+    public StateGarbageCollector(ClusterState clusterState) {
+        this(clusterState, DEFAULT_BATCH_SIZE, DEFAULT_INTERVAL_MS);
+    }
+
+    public StateGarbageCollector(ClusterState clusterState, int batchSize, long intervalMs) {
+        if (clusterState == null) {
+            throw new IllegalArgumentException("State garbage collector cannot start with null cluster state");
+        }
+        this.clusterState = clusterState;
+        this.batchSize = batchSize;
+        this.intervalMs = intervalMs;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "state-garbage-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::run, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Cleans up one batch of orphans.
+     */
+    public void run() {
+        try {
+            final List<String> removed = clusterState.collectGarbage(batchSize);
+            synchronized (this) {
+                runs++;
+                lastRunTime = System.currentTimeMillis();
+                lastError = null;
+                keysRemoved += removed.size();
+                for (String key : removed) {
+                    recentlyRemoved.addFirst(key);
+                    if (recentlyRemoved.size() > MAX_REPORTED_KEYS) {
+                        recentlyRemoved.removeLast();
+                    }
+                }
+            }
+        } catch (Exception e) { // ScheduledExecutorService does not reschedule a task that throws
+            LOGGER.warn("Unable to remove orphaned zNodes", e);
+            synchronized (this) {
+                runs++;
+                lastRunTime = System.currentTimeMillis();
+                lastError = e.toString();
+            }
+        }
+    }
+
+    public synchronized Report getReport() {
+        Report report = new Report();
+        report.runs = runs;
+        report.keysRemoved = keysRemoved;
+        report.lastRunTime = lastRunTime;
+        report.lastError = lastError;
+        report.recentlyRemoved = new ArrayList<>(recentlyRemoved);
+        return report;
+    }
+
+    /**
+     * What the garbage collector has removed so far. The most recently removed keys come first.
+     */
+    public static class Report {
+        public long runs;
+        public long keysRemoved;
+        public long lastRunTime;
+        public String lastError;
+        public List<String> recentlyRemoved;
+    }
+}
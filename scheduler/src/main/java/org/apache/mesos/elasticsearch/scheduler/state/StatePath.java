@@ -2,12 +2,19 @@ package org.apache.mesos.elasticsearch.scheduler.state;
 
 import java.io.IOException;
 import java.security.InvalidParameterException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Path utilities
+ *
+ * Remembers the paths it has created or seen, so repeated calls to {@link #mkdir(String)} do not hit zookeeper. Paths
+ * must be removed with {@link #rm(String)} for this to stay correct, so there must only be one instance per state driver.
  */
 public class StatePath {
     private SerializableState zkState;
+    private final Set<String> knownPaths = ConcurrentHashMap.newKeySet();
+
     public StatePath(SerializableState zkState) {
         this.zkState = zkState;
     }
@@ -21,12 +28,19 @@ public class StatePath {
         if (key.endsWith("/") && !key.equals("/")) {
             throw new InvalidParameterException("Trailing slash not allowed in zookeeper path");
         }
+        if (knownPaths.contains(key)) {
+            return;
+        }
         String[] split = key.split("/");
         StringBuilder builder = new StringBuilder();
         for (String s : split) {
             builder.append(s);
-            if (!s.isEmpty() && !exists(builder.toString())) {
-                zkState.set(builder.toString(), null);
+            final String path = builder.toString();
+            if (!s.isEmpty() && !knownPaths.contains(path)) {
+                if (!exists(path)) {
+                    zkState.set(path, null);
+                }
+                knownPaths.add(path);
             }
             builder.append("/");
         }
@@ -48,6 +62,7 @@ public class StatePath {
      * @throws IOException If unable to remove
      */
     public void rm(String key) throws IOException {
+        knownPaths.removeIf(path -> path.equals(key) || path.startsWith(key + "/"));
         zkState.delete(key);
     }
 }
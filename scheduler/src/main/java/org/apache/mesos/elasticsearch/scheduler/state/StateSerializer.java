@@ -0,0 +1,147 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Converts state entries to and from bytes. Every entry starts with a small header:
+ * <pre>
+ *   magic (2 bytes) | format version (1 byte) | codec id (1 byte) | flags (1 byte) | payload
+ * </pre>
+ * The first codec that is able to encode an object is used to write it. Entries are decoded with the codec named in
+ * their header. Payloads of at least {@code compressionThreshold} bytes are deflated if that makes them smaller; the
+ * payload of a compressed entry is its uncompressed length (4 bytes) followed by the deflated bytes.
+ *
+ * Version 1 entries (without flags) and entries written before the header was introduced (plain Java serialization)
+ * are still readable, see {@link #isLegacy(byte[])}.
+ */
+public class StateSerializer {
+    public static final short MAGIC = 0x4553; // "ES"
+    public static final byte VERSION = 2;
+    public static final byte FLAG_COMPRESSED = 0x01;
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 512;
+    private static final byte VERSION_WITHOUT_FLAGS = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final short JAVA_SERIALIZATION_MAGIC = (short) 0xACED;
+
+    private final List<StateCodec> codecs;
+    private final int compressionThreshold;
+
+    public StateSerializer() {
+        this(DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    public StateSerializer(StateCodec... codecs) {
+        this(DEFAULT_COMPRESSION_THRESHOLD, codecs);
+    }
+
+    /**
+     * @param compressionThreshold payloads smaller than this are never compressed. Use Integer.MAX_VALUE to disable.
+     */
+    public StateSerializer(int compressionThreshold) {
+        this(compressionThreshold, new ProtobufStateCodec(), new TaskStatusHistoryCodec(), new EventLogCodec(), new JavaSerializationStateCodec());
+    }
+
+    public StateSerializer(int compressionThreshold, StateCodec... codecs) {
+        this.compressionThreshold = compressionThreshold;
+        this.codecs = Arrays.asList(codecs);
+    }
+
+    public byte[] serialize(Object object) throws IOException {
+        StateCodec codec = codecs.stream().filter(c -> c.canEncode(object)).findFirst()
+                .orElseThrow(() -> new IOException("No codec is able to encode " + object));
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            codec.encode(object, out);
+        }
+        byte flags = 0;
+        byte[] body = payload.toByteArray();
+        if (body.length >= compressionThreshold) {
+            byte[] compressed = compress(body);
+            if (compressed.length < body.length) {
+                flags |= FLAG_COMPRESSED;
+                body = compressed;
+            }
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(HEADER_BYTES + body.length);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(codec.getId());
+            out.writeByte(flags);
+            out.write(body);
+        }
+        return bos.toByteArray();
+    }
+
+    public Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (isLegacy(bytes)) {
+            return JavaSerializationStateCodec.read(new ByteArrayInputStream(bytes));
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (bytes.length < 4 || in.readShort() != MAGIC) {
+                throw new StreamCorruptedException("Invalid state entry header");
+            }
+            byte version = in.readByte();
+            if (version != VERSION && version != VERSION_WITHOUT_FLAGS) {
+                throw new StreamCorruptedException("Unsupported state entry version: " + version);
+            }
+            byte codecId = in.readByte();
+            StateCodec codec = codecs.stream().filter(c -> c.getId() == codecId).findFirst()
+                    .orElseThrow(() -> new StreamCorruptedException("Unknown state codec id: " + codecId));
+            byte flags = version == VERSION_WITHOUT_FLAGS ? 0 : in.readByte();
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                in.readInt(); // Uncompressed length
+                try (DataInputStream inflated = new DataInputStream(new InflaterInputStream(in))) {
+                    return codec.decode(inflated);
+                }
+            }
+            return codec.decode(in);
+        }
+    }
+
+    /**
+     * @return the size of the entry's payload before compression, or the size of the whole entry if it is not in the
+     * current format.
+     */
+    public int rawSize(byte[] bytes) {
+        if (isLegacy(bytes) || bytes.length < HEADER_BYTES || bytes[2] != VERSION) {
+            return bytes.length;
+        }
+        if ((bytes[4] & FLAG_COMPRESSED) != 0 && bytes.length >= HEADER_BYTES + 4) {
+            return ByteBuffer.wrap(bytes, HEADER_BYTES, 4).getInt();
+        }
+        return bytes.length - HEADER_BYTES;
+    }
+
+    /**
+     * @return true if the entry was written with plain Java serialization, before entries had a header.
+     */
+    public boolean isLegacy(byte[] bytes) {
+        return bytes.length >= 2 && (short) ((bytes[0] << 8) | (bytes[1] & 0xFF)) == JAVA_SERIALIZATION_MAGIC;
+    }
+
+    private static byte[] compress(byte[] bytes) throws IOException {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 2);
+            bos.write(ByteBuffer.allocate(4).putInt(bytes.length).array());
+            try (DeflaterOutputStream out = new DeflaterOutputStream(bos, deflater)) {
+                out.write(bytes);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Raw (uncompressed) and stored sizes of the state entries last read or written, per key.
+ */
+public class StateSizeStats {
+    private final Map<String, Size> sizes = new ConcurrentHashMap<>();
+
+    public void record(String key, long rawBytes, long storedBytes) {
+        sizes.put(key, new Size(rawBytes, storedBytes));
+    }
+
+    public void remove(String key) {
+        sizes.remove(key);
+    }
+
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.keys = new TreeMap<>(sizes);
+        snapshot.keys.values().forEach(size -> {
+            snapshot.rawBytes += size.rawBytes;
+            snapshot.storedBytes += size.storedBytes;
+        });
+        return snapshot;
+    }
+
+    /**
+     * Size of one entry
+     */
+    public static class Size {
+        public final long rawBytes;
+        public final long storedBytes;
+
+        public Size(long rawBytes, long storedBytes) {
+            this.rawBytes = rawBytes;
+            this.storedBytes = storedBytes;
+        }
+    }
+
+    /**
+     * Sizes of all entries, and their totals
+     */
+    public static class Snapshot {
+        public long rawBytes;
+        public long storedBytes;
+        public Map<String, Size> keys;
+    }
+}
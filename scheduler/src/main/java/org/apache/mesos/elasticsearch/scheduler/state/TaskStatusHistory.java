@@ -0,0 +1,156 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos.TaskState;
+import org.apache.mesos.Protos.TaskStatus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The most recent status transitions of a task, oldest first. A status only counts as a transition if its state,
+ * reason or health differs from the previous one, so repeated statuses (e.g. from health checks) do not push older
+ * transitions out.
+ *
+ * The entries are kept in a ring buffer of primitive arrays, so recording a transition does not allocate. Stored with
+ * {@link TaskStatusHistoryCodec} in 11 bytes per entry.
+ */
+public class TaskStatusHistory {
+    public static final int DEFAULT_CAPACITY = 32;
+    public static final int MAX_CAPACITY = Short.MAX_VALUE;
+    private static final byte HAS_REASON = 0x01;
+    private static final byte HAS_HEALTHY = 0x02;
+    private static final byte HEALTHY = 0x04;
+
+    private final byte[] states;
+    private final byte[] reasons;
+    private final byte[] flags;
+    private final long[] timestamps;
+    private int next = 0; // Slot the next entry is written to
+    private int size = 0;
+
+    public TaskStatusHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TaskStatusHistory(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Task status history capacity must be between 1 and " + MAX_CAPACITY + ": " + capacity);
+        }
+        states = new byte[capacity];
+        reasons = new byte[capacity];
+        flags = new byte[capacity];
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * Records a status if it is a transition. The timestamp of the status is used if it has one, the current time if
+     * not.
+     * @return true if the status was recorded
+     */
+    public synchronized boolean record(TaskStatus status) {
+        final byte state = (byte) status.getState().getNumber();
+        final byte reason = status.hasReason() ? (byte) status.getReason().getNumber() : 0;
+        byte entryFlags = status.hasReason() ? HAS_REASON : 0;
+        if (status.hasHealthy()) {
+            entryFlags |= status.getHealthy() ? HAS_HEALTHY | HEALTHY : HAS_HEALTHY;
+        }
+        final int last = (next + getCapacity() - 1) % getCapacity();
+        if (size > 0 && states[last] == state && reasons[last] == reason && flags[last] == entryFlags) {
+            return false;
+        }
+        final long timestamp = status.hasTimestamp() ? (long) (status.getTimestamp() * TimeUnit.SECONDS.toMillis(1)) : System.currentTimeMillis();
+        add(state, reason, entryFlags, timestamp);
+        return true;
+    }
+
+    public synchronized List<Entry> getEntries() {
+        final List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final int slot = slot(i);
+            entries.add(new Entry(
+                    TaskState.valueOf(states[slot]),
+                    (flags[slot] & HAS_REASON) != 0 ? TaskStatus.Reason.valueOf(reasons[slot]) : null,
+                    timestamps[slot],
+                    (flags[slot] & HAS_HEALTHY) != 0 ? (flags[slot] & HEALTHY) != 0 : null));
+        }
+        return entries;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return states.length;
+    }
+
+    public synchronized TaskStatusHistory copy() {
+        final TaskStatusHistory copy = new TaskStatusHistory(getCapacity());
+        for (int i = 0; i < size; i++) {
+            final int slot = slot(i);
+            copy.add(states[slot], reasons[slot], flags[slot], timestamps[slot]);
+        }
+        return copy;
+    }
+
+    /**
+     * Writes the capacity, the number of entries and the entries, oldest first.
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeShort(getCapacity());
+        out.writeShort(size);
+        for (int i = 0; i < size; i++) {
+            final int slot = slot(i);
+            out.writeByte(states[slot]);
+            out.writeByte(reasons[slot]);
+            out.writeByte(flags[slot]);
+            out.writeLong(timestamps[slot]);
+        }
+    }
+
+    public static TaskStatusHistory readFrom(DataInputStream in) throws IOException {
+        final TaskStatusHistory history = new TaskStatusHistory(in.readShort());
+        final int size = in.readShort();
+        for (int i = 0; i < size; i++) {
+            history.add(in.readByte(), in.readByte(), in.readByte(), in.readLong());
+        }
+        return history;
+    }
+
+    private void add(byte state, byte reason, byte entryFlags, long timestamp) {
+        states[next] = state;
+        reasons[next] = reason;
+        flags[next] = entryFlags;
+        timestamps[next] = timestamp;
+        next = (next + 1) % getCapacity();
+        size = Math.min(size + 1, getCapacity());
+    }
+
+    /**
+     * @return the slot of the i-th oldest entry
+     */
+    private int slot(int i) {
+        return (next - size + i + getCapacity()) % getCapacity();
+    }
+
+    /**
+     * One status transition. The reason and healthy flag are null if the status did not have them.
+     */
+    public static class Entry {
+        public final TaskState state;
+        public final TaskStatus.Reason reason;
+        public final long timestamp;
+        public final Boolean healthy;
+
+        public Entry(TaskState state, TaskStatus.Reason reason, long timestamp, Boolean healthy) {
+            this.state = state;
+            this.reason = reason;
+            this.timestamp = timestamp;
+            this.healthy = healthy;
+        }
+    }
+}
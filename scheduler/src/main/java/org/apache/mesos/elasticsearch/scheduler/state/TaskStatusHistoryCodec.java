@@ -0,0 +1,32 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes a {@link TaskStatusHistory}, see {@link TaskStatusHistory#writeTo(DataOutputStream)}.
+ */
+public class TaskStatusHistoryCodec implements StateCodec {
+    public static final byte ID = 3;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public boolean canEncode(Object object) {
+        return object instanceof TaskStatusHistory;
+    }
+
+    @Override
+    public void encode(Object object, DataOutputStream out) throws IOException {
+        ((TaskStatusHistory) object).writeTo(out);
+    }
+
+    @Override
+    public Object decode(DataInputStream in) throws IOException {
+        return TaskStatusHistory.readFrom(in);
+    }
+}
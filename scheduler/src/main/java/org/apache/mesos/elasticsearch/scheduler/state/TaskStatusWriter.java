@@ -0,0 +1,226 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for task statuses. Statuses are queued by the caller and committed to zookeeper in batches on a
+ * dedicated thread, so that status updates do not block the scheduler driver thread. Anything else that is written on
+ * every status update, such as a {@link TaskStatusHistory}, may be queued too; queued values must not be modified.
+ * Writes that do more than set one key can be queued as an {@link Operation}.
+ *
+ * Successive statuses for the same key are coalesced; only the latest is written. Keys are written in the order they
+ * were last queued, so anything queued after a key is written after it. A batch is committed at most
+ * {@code maxFlushDelayMs} after the first status in it was queued. {@link #flush(long)} is a durability barrier: it
+ * blocks until everything queued before the call has been committed.
+ */
+public class TaskStatusWriter {
+    private static final Logger LOGGER = Logger.getLogger(TaskStatusWriter.class);
+    public static final long DEFAULT_MAX_FLUSH_DELAY_MS = 100;
+    public static final long RETRY_DELAY_MS = 500;
+
+    private final SerializableState state;
+    private final StatePath statePath;
+    private final long maxFlushDelayMs;
+    private final Object commitLock = new Object();
+
+    // Guarded by this
+    private final Map<String, Object> pending = new LinkedHashMap<>();
+    private long queuedSequence = 0;
+    private long committedSequence = 0;
+    private long flushSequence = 0; // Highest sequence number somebody is waiting for
+    private boolean retrying = false;
+    private Thread thread;
+
+    // Metrics, guarded by this
+    private long statusesCommitted = 0;
+    private long statusesCoalesced = 0;
+    private long batchesCommitted = 0;
+    private long commitFailures = 0;
+    private long lastCommitNanos = 0;
+    private long maxCommitNanos = 0;
+    private long totalCommitNanos = 0;
+
+    public TaskStatusWriter(SerializableState state, StatePath statePath) {
+        this(state, statePath, DEFAULT_MAX_FLUSH_DELAY_MS);
+    }
+
+    public TaskStatusWriter(SerializableState state, StatePath statePath, long maxFlushDelayMs) {
+        this.state = state;
+        this.statePath = statePath;
+        this.maxFlushDelayMs = maxFlushDelayMs;
+    }
+
+    /**
+     * Queue a status to be written to the given key. Replaces any status still queued for the same key.
+     */
+    public synchronized void write(String key, Object status) {
+        if (pending.remove(key) != null) {
+            statusesCoalesced++;
+        }
+        pending.put(key, status);
+        queuedSequence++;
+        if (thread == null) {
+            thread = new Thread(this::run, "task-status-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Drop any status queued for the given key. Waits for a commit in progress to finish, so that once this returns
+     * nothing will be written to the key until the next call to {@link #write(String, Object)}.
+     */
+    public void discard(String key) {
+        synchronized (commitLock) {
+            synchronized (this) {
+                pending.remove(key);
+                if (pending.isEmpty()) {
+                    committedSequence = queuedSequence;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Durability barrier. Blocks until all statuses queued before this call have been committed.
+     *
+     * @param timeoutMs maximum time to wait
+     * @return true if everything was committed, false on timeout
+     */
+    public synchronized boolean flush(long timeoutMs) {
+        final long target = queuedSequence;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        flushSequence = Math.max(flushSequence, target);
+        notifyAll();
+        try {
+            while (committedSequence < target) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized Metrics getMetrics() {
+        Metrics metrics = new Metrics();
+        metrics.queueDepth = pending.size();
+        metrics.statusesCommitted = statusesCommitted;
+        metrics.statusesCoalesced = statusesCoalesced;
+        metrics.batchesCommitted = batchesCommitted;
+        metrics.commitFailures = commitFailures;
+        metrics.lastCommitMillis = TimeUnit.NANOSECONDS.toMicros(lastCommitNanos) / 1000.0;
+        metrics.maxCommitMillis = TimeUnit.NANOSECONDS.toMicros(maxCommitNanos) / 1000.0;
+        metrics.meanCommitMillis = batchesCommitted == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalCommitNanos / batchesCommitted) / 1000.0;
+        return metrics;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                awaitBatch();
+                synchronized (commitLock) {
+                    final Map<String, Object> batch;
+                    final long sequence;
+                    synchronized (this) {
+                        batch = new LinkedHashMap<>(pending);
+                        pending.clear();
+                        sequence = queuedSequence;
+                    }
+                    commit(batch, sequence);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) { // Never let the writer thread die silently
+                LOGGER.error("Unexpected error in task status writer", e);
+            }
+        }
+    }
+
+    /**
+     * Waits until there is something to commit, then until the batch is old enough or a flush has been requested.
+     * After a failed commit, always waits before retrying.
+     */
+    private synchronized void awaitBatch() throws InterruptedException {
+        while (pending.isEmpty()) {
+            wait();
+        }
+        final long delay = retrying ? Math.min(maxFlushDelayMs, RETRY_DELAY_MS) : maxFlushDelayMs;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        long remaining = delay;
+        while ((retrying || flushSequence <= committedSequence) && remaining > 0) {
+            wait(remaining);
+            remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        }
+    }
+
+    private void commit(Map<String, Object> batch, long sequence) {
+        final long start = System.nanoTime();
+        final Map<String, Object> failed = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : batch.entrySet()) {
+            try {
+                LOGGER.debug("Writing task status to zk: " + entry.getKey());
+                if (entry.getValue() instanceof Operation) {
+                    ((Operation) entry.getValue()).apply(state, statePath);
+                } else {
+                    statePath.mkdir(entry.getKey());
+                    state.set(entry.getKey(), entry.getValue());
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Unable to write task status to zookeeper: " + entry.getKey(), e);
+                failed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        final long duration = System.nanoTime() - start;
+        synchronized (this) {
+            statusesCommitted += batch.size() - failed.size();
+            batchesCommitted++;
+            lastCommitNanos = duration;
+            maxCommitNanos = Math.max(maxCommitNanos, duration);
+            totalCommitNanos += duration;
+            retrying = !failed.isEmpty();
+            if (failed.isEmpty()) {
+                committedSequence = sequence;
+            } else {
+                // Retry with the next batch, unless a newer status has been queued in the meantime
+                commitFailures += failed.size();
+                failed.forEach(pending::putIfAbsent);
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * A queued write that does more than set its key, e.g. also deletes other keys. It is applied on the writer thread
+     * and retried if it throws, so it must be idempotent.
+     */
+    public interface Operation {
+        void apply(SerializableState state, StatePath statePath) throws IOException;
+    }
+
+    /**
+     * Snapshot of the writer metrics
+     */
+    public static class Metrics {
+        public int queueDepth;
+        public long statusesCommitted;
+        public long statusesCoalesced;
+        public long batchesCommitted;
+        public long commitFailures;
+        public double lastCommitMillis;
+        public double maxCommitMillis;
+        public double meanCommitMillis;
+    }
+}
@@ -0,0 +1,26 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+/**
+ * A value read from a {@link SerializableState}, together with the version it was read at. The version is opaque; it
+ * is only meaningful to the state that produced it, see {@link SerializableState#compareAndSet(String, Versioned, Object)}.
+ */
+public final class Versioned<T> {
+    private final T value;
+    private final Object version;
+
+    public Versioned(T value, Object version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    /**
+     * @return the value, or null if the key did not exist
+     */
+    public T getValue() {
+        return value;
+    }
+
+    public Object getVersion() {
+        return version;
+    }
+}
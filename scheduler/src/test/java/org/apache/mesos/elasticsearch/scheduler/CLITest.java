@@ -43,6 +43,24 @@ public class CLITest {
         new Configuration(args);
     }
     
+    @Test(expected = com.beust.jcommander.ParameterException.class)
+    public void shouldCrashIfMaxPerAttributeIsNotPositive() {
+        String[] args = {Configuration.PLACEMENT_MAX_PER_ATTRIBUTE, "zone:0", ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "zk://dummyIPAddress:2181"};
+        new Configuration(args);
+    }
+
+    @Test(expected = com.beust.jcommander.ParameterException.class)
+    public void shouldCrashIfUniqueAttributesHaveAnEmptyName() {
+        String[] args = {Configuration.PLACEMENT_UNIQUE_ATTRIBUTES, "rack,,", ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "zk://dummyIPAddress:2181"};
+        new Configuration(args);
+    }
+
+    @Test(expected = com.beust.jcommander.ParameterException.class)
+    public void shouldCrashIfUniqueAttributesHaveAValue() {
+        String[] args = {Configuration.PLACEMENT_UNIQUE_ATTRIBUTES, "rack:1", ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "zk://dummyIPAddress:2181"};
+        new Configuration(args);
+    }
+
     @Test
     public void randomParamTest() {
         String[] args = {Configuration.ELASTICSEARCH_RAM, "512", ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "zk://dummyIPAddress:2181"};
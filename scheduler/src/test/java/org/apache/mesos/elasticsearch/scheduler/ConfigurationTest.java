@@ -10,6 +10,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -19,6 +20,15 @@ import static org.junit.Assert.*;
  * Tests
  **/
 public class ConfigurationTest {
+    @Test
+    public void shouldWaitForTheAgentOfALostNodeByDefaultWithPersistentVolumes() {
+        assertEquals(0, new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa").getRelaunchLocalityWindow());
+        assertEquals(Configuration.DEFAULT_PERSISTENT_VOLUME_RELAUNCH_LOCALITY_WINDOW, new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa",
+                Configuration.FRAMEWORK_USE_PERSISTENT_VOLUMES, "true").getRelaunchLocalityWindow());
+        assertEquals(0, new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa",
+                Configuration.FRAMEWORK_USE_PERSISTENT_VOLUMES, "true", Configuration.RELAUNCH_LOCALITY_WINDOW, "0").getRelaunchLocalityWindow());
+    }
+
     @Test
     public void shouldReturnValidServerPath() throws UnknownHostException {
         Configuration configuration = new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa");
@@ -74,6 +84,24 @@ public class ConfigurationTest {
         assertTrue(allArgs.contains(Integer.toString(port)));
     }
 
+    @Test
+    public void shouldCreateAwarenessArguments() {
+        Configuration configuration = new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa",
+                Configuration.PLACEMENT_UNIQUE_ATTRIBUTES, "rack",
+                Configuration.PLACEMENT_MAX_PER_ATTRIBUTE, "zone:2");
+        final ClusterState clusterState = Mockito.mock(ClusterState.class);
+        final Protos.DiscoveryInfo discoveryInfo = Protos.DiscoveryInfo.newBuilder().setPorts(Protos.Ports.newBuilder()
+                .addPorts(Protos.Port.newBuilder().setNumber(1234))
+                .addPorts(Protos.Port.newBuilder().setNumber(1234)))
+                .setVisibility(Protos.DiscoveryInfo.Visibility.EXTERNAL)
+                .build();
+        Protos.SlaveID slaveID = Protos.SlaveID.newBuilder().setValue("SLAVE").build();
+        final List<String> arguments = configuration.esArguments(clusterState, discoveryInfo, slaveID, Collections.singletonMap("rack", "r1"));
+        assertTrue(arguments.contains("--node.rack=r1"));
+        assertTrue(arguments.contains("--default.cluster.routing.allocation.awareness.attributes=rack,zone"));
+        assertEquals(Collections.singletonMap("zone", 2), configuration.getPlacementMaxPerAttribute());
+    }
+
     @Test
     public void shouldCreateVolumeName() {
         Configuration configuration = new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa", Configuration.FRAMEWORK_NAME, "test");
@@ -5,19 +5,25 @@ import org.apache.mesos.Protos;
 import org.apache.mesos.SchedulerDriver;
 import org.apache.mesos.elasticsearch.scheduler.matcher.RequestMatcher;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.apache.mesos.elasticsearch.scheduler.state.ESTaskStatus;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
 import org.apache.mesos.elasticsearch.scheduler.state.SerializableState;
 import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import java.util.List;
 import java.util.UUID;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static org.apache.mesos.elasticsearch.common.Offers.newOfferBuilder;
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
 
@@ -49,6 +55,8 @@ public class ElasticsearchSchedulerTest {
     @Before
     public void before() {
         when(frameworkState.getFrameworkID()).thenReturn(frameworkID);
+        when(clusterState.isReady()).thenReturn(true);
+        when(clusterState.addTask(any(Protos.TaskInfo.class))).thenReturn(true);
 
         configuration = mock(org.apache.mesos.elasticsearch.scheduler.Configuration.class);
         when(configuration.getElasticsearchNodes()).thenReturn(3);
@@ -105,27 +113,283 @@ public class ElasticsearchSchedulerTest {
     public void willDeclineOfferIfStrategyDeclinesOffer() {
         Protos.Offer offer = newOffer("host1").build();
 
-        when(offerStrategy.evaluate(offer)).thenReturn(OfferStrategy.OfferResult.decline("Test"));
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.decline("Test"));
         when(frameworkState.isRegistered()).thenReturn(true);
 
         scheduler.resourceOffers(driver, singletonList(offer));
 
-        verify(driver).declineOffer(offer.getId());
+        verify(driver).declineOffer(offer.getId(), Protos.Filters.newBuilder().setRefuseSeconds(OfferStrategy.REFUSE_SECONDS_DEFAULT).build());
+    }
+
+    @Test
+    public void willDeclineOfferWithTheRefuseSecondsOfTheRule() {
+        Protos.Offer offer = newOffer("host1").build();
+
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.decline("Test", 300));
+        when(frameworkState.isRegistered()).thenReturn(true);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        verify(driver).declineOffer(offer.getId(), Protos.Filters.newBuilder().setRefuseSeconds(300).build());
+        assertEquals(Long.valueOf(1), scheduler.getOfferMetrics().declines.get("Test"));
+    }
+
+    @Test
+    public void shouldSuppressOffersWhenClusterIsFull() {
+        final Protos.Offer offer = newOffer("host1").build();
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.decline("Cluster size already fulfilled"));
+        when(frameworkState.isRegistered()).thenReturn(true);
+        when(clusterState.getTaskList()).thenReturn(asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo()));
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        verify(driver, times(1)).suppressOffers();
+        assertTrue(scheduler.getOfferMetrics().suppressed);
+        assertEquals(1, scheduler.getOfferMetrics().suppressions);
+    }
+
+    @Test
+    public void shouldReviveOffersWhenANodeIsLost() {
+        final Protos.Offer offer = newOffer("host1").build();
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.decline("Cluster size already fulfilled"));
+        when(frameworkState.isRegistered()).thenReturn(true);
+        when(clusterState.getTaskList()).thenReturn(asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo()));
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        when(clusterState.getTaskList()).thenReturn(asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo()));
+        scheduler.statusUpdate(driver, ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_LOST));
+
+        InOrder inOrder = inOrder(driver);
+        inOrder.verify(driver).suppressOffers();
+        inOrder.verify(driver).reviveOffers();
+        assertFalse(scheduler.getOfferMetrics().suppressed);
+        assertEquals(1, scheduler.getOfferMetrics().revivals);
+    }
+
+    @Test
+    public void shouldReviveOffersWhenClusterSizeIsIncreased() {
+        final Protos.Offer offer = newOffer("host1").build();
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.decline("Cluster size already fulfilled"));
+        when(frameworkState.isRegistered()).thenReturn(true);
+        when(frameworkState.getDriver()).thenReturn(driver);
+        when(clusterState.getTaskList()).thenReturn(asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo()));
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        when(configuration.getElasticsearchNodes()).thenReturn(5);
+        scheduler.updateOfferSuppression();
+
+        verify(driver).reviveOffers();
+    }
+
+    @Test
+    public void willDeclineOffersUntilClusterStateIsLoaded() {
+        Protos.Offer offer = newOffer("host1").build();
+        when(frameworkState.isRegistered()).thenReturn(true);
+        when(clusterState.isReady()).thenReturn(false);
+        when(clusterState.load()).thenReturn(false);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        verify(driver, times(2)).declineOffer(offer.getId());
+        verifyZeroInteractions(offerStrategy);
+        verify(clusterState, times(1)).load(); // On registration only
+        verify(clusterState, never()).loadIfIdle(); // Not retried within the retry interval
+    }
+
+    @Test
+    public void shouldLoadClusterStateOnReregistrationIfNotReady() {
+        when(clusterState.isReady()).thenReturn(false);
+        scheduler.reregistered(driver, masterInfo);
+        verify(clusterState, times(2)).load();
+
+        when(clusterState.isReady()).thenReturn(true);
+        scheduler.reregistered(driver, masterInfo);
+        verify(clusterState, times(2)).load();
     }
 
     @Test
     public void testResourceOffers_launchTasks() {
         final Protos.Offer offer = newOffer("host3").build();
-        when(offerStrategy.evaluate(offer)).thenReturn(OfferStrategy.OfferResult.accept());
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.accept());
+        when(frameworkState.isRegistered()).thenReturn(true);
+
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+
+        when(taskInfoFactory.createTask(any(), any(), any(), any(), any())).thenReturn(taskInfo);
+        when(clusterState.flush()).thenReturn(true);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        InOrder inOrder = inOrder(clusterState, driver);
+        inOrder.verify(clusterState).addTask(taskInfo);
+        inOrder.verify(clusterState).update(ESTaskStatus.getDefaultStatus(taskInfo));
+        inOrder.verify(clusterState).flush();
+        inOrder.verify(driver).launchTasks(singleton(offer.getId()), singleton(taskInfo));
+    }
+
+    @Test
+    public void shouldAcceptOffersWithOperationsWhenUsingPersistentVolumes() {
+        final Protos.Offer offer = newOffer("host3").build();
+        when(configuration.isFrameworkUsePersistentVolumes()).thenReturn(true);
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.accept());
+        when(frameworkState.isRegistered()).thenReturn(true);
+
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        final List<Protos.Offer.Operation> operations = singletonList(Protos.Offer.Operation.newBuilder()
+                .setType(Protos.Offer.Operation.Type.LAUNCH)
+                .setLaunch(Protos.Offer.Operation.Launch.newBuilder().addTaskInfos(taskInfo))
+                .build());
+        when(taskInfoFactory.createTask(any(), any(), any(), any(), any())).thenReturn(taskInfo);
+        when(taskInfoFactory.createOperations(eq(configuration), eq(offer), any(OfferResources.class), eq(taskInfo))).thenReturn(operations);
+        when(clusterState.flush()).thenReturn(true);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        final ArgumentCaptor<OfferResources> parsed = ArgumentCaptor.forClass(OfferResources.class);
+        verify(taskInfoFactory).createTask(eq(configuration), eq(frameworkState), eq(offer), parsed.capture(), any());
+        verify(taskInfoFactory).createOperations(configuration, offer, parsed.getValue(), taskInfo); // The offer is parsed once
+        verify(driver).acceptOffers(singleton(offer.getId()), operations, Protos.Filters.getDefaultInstance());
+        verify(driver, never()).launchTasks(anyCollectionOf(Protos.OfferID.class), anyCollectionOf(Protos.TaskInfo.class));
+    }
+
+    @Test
+    public void willDeclineOfferIfStateCannotBePersisted() {
+        final Protos.Offer offer = newOffer("host3").build();
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.accept());
         when(frameworkState.isRegistered()).thenReturn(true);
 
         Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
 
-        when(taskInfoFactory.createTask(any(), any(), any(), any())).thenReturn(taskInfo);
+        when(taskInfoFactory.createTask(any(), any(), any(), any(), any())).thenReturn(taskInfo);
+        when(clusterState.flush()).thenReturn(false);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        verify(driver, never()).launchTasks(anyCollectionOf(Protos.OfferID.class), anyCollectionOf(Protos.TaskInfo.class));
+        verify(clusterState).abandonTask(taskInfo);
+        verify(clusterState, never()).removeTask(taskInfo);
+        verify(driver).declineOffer(offer.getId());
+    }
+
+    @Test
+    public void willDeclineOfferIfTaskCannotBeWritten() {
+        final Protos.Offer offer = newOffer("host3").build();
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.accept());
+        when(frameworkState.isRegistered()).thenReturn(true);
+
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+
+        when(taskInfoFactory.createTask(any(), any(), any(), any(), any())).thenReturn(taskInfo);
+        when(clusterState.addTask(taskInfo)).thenReturn(false);
+        when(clusterState.flush()).thenReturn(true);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        verify(driver, never()).launchTasks(anyCollectionOf(Protos.OfferID.class), anyCollectionOf(Protos.TaskInfo.class));
+        verify(clusterState, never()).update(any(Protos.TaskStatus.class));
+        verify(driver).declineOffer(offer.getId());
+    }
+
+    @Test
+    public void shouldEvaluateLaterOffersAgainstTasksLaunchedInTheSameCallback() {
+        final Protos.Offer first = newOffer("host1").build();
+        final Protos.Offer second = newOffer("host2").build();
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), any(Protos.Offer.class))).thenAnswer(invocation -> {
+            ClusterSnapshot cluster = (ClusterSnapshot) invocation.getArguments()[0];
+            return cluster.getTaskCount() == 0 ? OfferStrategy.OfferResult.accept() : OfferStrategy.OfferResult.decline("Cluster size already fulfilled");
+        });
+        when(frameworkState.isRegistered()).thenReturn(true);
+        when(taskInfoFactory.createTask(any(), any(), any(), any(), any())).thenReturn(ProtoTestUtil.getDefaultTaskInfo());
+        when(clusterState.flush()).thenReturn(true);
+
+        scheduler.resourceOffers(driver, asList(first, second));
+
+        verify(clusterState, times(2)).getTaskList(); // Once for the snapshot, once to check whether to suppress offers
+        verify(driver).launchTasks(singleton(first.getId()), singleton(ProtoTestUtil.getDefaultTaskInfo()));
+        verify(driver).declineOffer(eq(second.getId()), any(Protos.Filters.class));
+    }
+
+    @Test
+    public void shouldRelaunchALostNodeOnItsOwnAgent() {
+        when(configuration.getRelaunchLocalityWindow()).thenReturn(60000L);
+        scheduler = new ElasticsearchScheduler(configuration, frameworkState, clusterState, taskInfoFactory, offerStrategy, serializableState);
+        final Protos.TaskStatus lost = ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_LOST);
+        when(clusterState.exists(lost.getTaskId())).thenReturn(true);
+        when(clusterState.getTask(lost.getTaskId())).thenReturn(ProtoTestUtil.getDefaultTaskInfo());
+        scheduler.statusUpdate(driver, lost);
+        assertEquals(singleton(ProtoTestUtil.SLAVE_ID), scheduler.getRelaunchMetrics().waitingSlaveIds);
+
+        final Protos.Offer offer = newOfferBuilder(UUID.randomUUID().toString(), "host1", ProtoTestUtil.SLAVE_ID, frameworkID).build();
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenAnswer(invocation -> {
+            ClusterSnapshot cluster = (ClusterSnapshot) invocation.getArguments()[0];
+            assertEquals(singleton(ProtoTestUtil.SLAVE_ID), cluster.getRelaunchSlaveIds());
+            return OfferStrategy.OfferResult.accept();
+        });
+        when(frameworkState.isRegistered()).thenReturn(true);
+        when(taskInfoFactory.createTask(any(), any(), any(), any(), any())).thenReturn(ProtoTestUtil.getDefaultTaskInfo());
+        when(clusterState.flush()).thenReturn(true);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        verify(driver).launchTasks(singleton(offer.getId()), singleton(ProtoTestUtil.getDefaultTaskInfo()));
+        assertTrue(scheduler.getRelaunchMetrics().waitingSlaveIds.isEmpty());
+        assertEquals(1, scheduler.getRelaunchMetrics().localRelaunches);
+    }
+
+    @Test
+    public void shouldNotWaitForTheAgentOfAKilledNode() {
+        when(configuration.getRelaunchLocalityWindow()).thenReturn(60000L);
+        scheduler = new ElasticsearchScheduler(configuration, frameworkState, clusterState, taskInfoFactory, offerStrategy, serializableState);
+        final Protos.TaskStatus killed = ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_KILLED);
+        when(clusterState.exists(killed.getTaskId())).thenReturn(true);
+        when(clusterState.getTask(killed.getTaskId())).thenReturn(ProtoTestUtil.getDefaultTaskInfo());
+
+        scheduler.statusUpdate(driver, killed);
+
+        assertTrue(scheduler.getRelaunchMetrics().waitingSlaveIds.isEmpty());
+        verify(frameworkState).announceStatusUpdate(killed);
+    }
+
+    @Test
+    public void shouldReleaseTheResourcesOfAnEarlierNodeWhenTheClusterIsFull() {
+        final Protos.Offer offer = newOffer("host1").build();
+        when(configuration.isFrameworkUsePersistentVolumes()).thenReturn(true);
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.decline("Cluster size already fulfilled"));
+        when(frameworkState.isRegistered()).thenReturn(true);
+        when(clusterState.getTaskList()).thenReturn(asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo()));
+        final List<Protos.Offer.Operation> release = singletonList(Protos.Offer.Operation.newBuilder()
+                .setType(Protos.Offer.Operation.Type.UNRESERVE)
+                .setUnreserve(Protos.Offer.Operation.Unreserve.getDefaultInstance())
+                .build());
+        when(taskInfoFactory.createReleaseOperations(eq(configuration), any(OfferResources.class))).thenReturn(release);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        verify(driver).acceptOffers(singleton(offer.getId()), release, Protos.Filters.newBuilder().setRefuseSeconds(OfferStrategy.REFUSE_SECONDS_DEFAULT).build());
+        verify(driver, never()).declineOffer(any(Protos.OfferID.class), any(Protos.Filters.class));
+    }
+
+    @Test
+    public void shouldKeepTheResourcesOnTheAgentOfALostNode() {
+        when(configuration.isFrameworkUsePersistentVolumes()).thenReturn(true);
+        when(configuration.getRelaunchLocalityWindow()).thenReturn(60000L);
+        scheduler = new ElasticsearchScheduler(configuration, frameworkState, clusterState, taskInfoFactory, offerStrategy, serializableState);
+        final Protos.TaskStatus lost = ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_LOST);
+        when(clusterState.exists(lost.getTaskId())).thenReturn(true);
+        when(clusterState.getTask(lost.getTaskId())).thenReturn(ProtoTestUtil.getDefaultTaskInfo());
+        scheduler.statusUpdate(driver, lost);
+
+        final Protos.Offer offer = newOfferBuilder(UUID.randomUUID().toString(), "host1", ProtoTestUtil.SLAVE_ID, frameworkID).build();
+        when(offerStrategy.evaluate(any(ClusterSnapshot.class), eq(offer))).thenReturn(OfferStrategy.OfferResult.decline("Cluster size already fulfilled"));
+        when(frameworkState.isRegistered()).thenReturn(true);
+        when(clusterState.getTaskList()).thenReturn(asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getDefaultTaskInfo()));
 
         scheduler.resourceOffers(driver, singletonList(offer));
 
-        verify(driver).launchTasks(singleton(offer.getId()), singleton(taskInfo));
+        verify(taskInfoFactory, never()).createReleaseOperations(any(), any());
+        verify(driver).declineOffer(eq(offer.getId()), any(Protos.Filters.class));
     }
 
     private Protos.Offer.Builder newOffer(String hostname) {
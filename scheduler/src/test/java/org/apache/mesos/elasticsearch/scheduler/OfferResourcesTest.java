@@ -0,0 +1,96 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static java.util.Arrays.asList;
+import static org.apache.mesos.elasticsearch.scheduler.Resources.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test for OfferResources
+ */
+public class OfferResourcesTest {
+    private static final String ROLE = "elasticsearch";
+    private static final String PRINCIPAL = "principal";
+
+    @Test
+    public void shouldAddUpScalarsOfAllRoles() {
+        OfferResources resources = OfferResources.of(asList(cpus(1, "*"), cpus(2, ROLE), mem(256, "*"), disk(1024, ROLE)), ROLE);
+        assertEquals(3, resources.getCpus(), 0);
+        assertEquals(256, resources.getMem(), 0);
+        assertEquals(1024, resources.getDisk(), 0);
+        assertTrue(resources.isEnoughCpus(3));
+        assertFalse(resources.isEnoughCpus(3.5));
+        assertTrue(resources.isEnoughMem(256));
+        assertTrue(resources.isEnoughDisk(1024));
+    }
+
+    @Test
+    public void shouldNotBeEnoughIfResourceIsMissing() {
+        OfferResources resources = OfferResources.of(Collections.singletonList(cpus(1, "*")), ROLE);
+        assertFalse(resources.isEnoughMem(0));
+        assertFalse(resources.isEnoughDisk(0));
+    }
+
+    @Test
+    public void shouldOnlyCountReservationsForTheFrameworkRole() {
+        OfferResources resources = OfferResources.of(asList(
+                reserved(cpus(1, ROLE), PRINCIPAL),
+                cpus(2, ROLE),
+                reserved(mem(256, "other"), PRINCIPAL),
+                reserved(disk(512, ROLE), PRINCIPAL),
+                persistentVolume(1024, ROLE, PRINCIPAL, "volume", "data")), ROLE);
+        assertEquals(1, resources.getReservedCpus(), 0);
+        assertEquals(0, resources.getReservedMem(), 0);
+        assertEquals(512, resources.getReservedDisk(), 0);
+        assertEquals(1536, resources.getDisk(), 0);
+    }
+
+    @Test
+    public void shouldFindPersistentVolumes() {
+        OfferResources resources = OfferResources.of(asList(disk(1024, "*"), persistentVolume(1024, ROLE, PRINCIPAL, "volume", "data")), ROLE);
+        assertTrue(resources.hasPersistentVolume());
+        assertTrue(resources.hasPersistentVolume("volume"));
+        assertFalse(resources.hasPersistentVolume("other"));
+        assertEquals(persistentVolume(1024, ROLE, PRINCIPAL, "volume", "data"), resources.getPersistentVolume("volume").get());
+        assertFalse(resources.getPersistentVolume("other").isPresent());
+        assertTrue(resources.hasDiskForRole());
+    }
+
+    @Test
+    public void shouldNotHaveDiskForTheDefaultRole() {
+        OfferResources resources = OfferResources.of(Collections.singletonList(disk(1024, "*")), "*");
+        assertFalse(resources.hasPersistentVolume());
+        assertFalse(resources.hasDiskForRole());
+        assertTrue(OfferResources.of(Collections.singletonList(disk(1024, ROLE)), ROLE).hasDiskForRole());
+    }
+
+    @Test
+    public void shouldFindPortsInUnsortedRanges() {
+        OfferResources resources = OfferResources.of(asList(portRange(9000, 9100, "*"), singlePortRange(31000, "*"), portRange(1000, 1001, ROLE)), ROLE);
+        assertEquals(104, resources.getPortCount());
+        assertTrue(resources.isPortAvailable(1000));
+        assertTrue(resources.isPortAvailable(1001));
+        assertFalse(resources.isPortAvailable(1002));
+        assertFalse(resources.isPortAvailable(999));
+        assertTrue(resources.isPortAvailable(9050));
+        assertTrue(resources.isPortAvailable(31000));
+        assertFalse(resources.isPortAvailable(31001));
+    }
+
+    @Test
+    public void shouldSelectTheLowestPorts() {
+        assertEquals(asList(1000, 1001), OfferResources.of(asList(portRange(9000, 9100, "*"), portRange(1000, 1001, "*")), ROLE).selectTwoPorts());
+        assertEquals(asList(1000, 9000), OfferResources.of(asList(portRange(9000, 9100, "*"), singlePortRange(1000, "*")), ROLE).selectTwoPorts());
+        assertEquals(Collections.singletonList(9000), OfferResources.of(Collections.singletonList(singlePortRange(9000, "*")), ROLE).selectTwoPorts());
+        assertEquals(9000, OfferResources.of(asList(portRange(9100, 9200, "*"), portRange(9000, 9001, "*")), ROLE).selectOnePort());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void shouldThrowIfThereAreNoPorts() {
+        OfferResources.of(Collections.singletonList(cpus(1, "*")), ROLE).selectOnePort();
+    }
+}
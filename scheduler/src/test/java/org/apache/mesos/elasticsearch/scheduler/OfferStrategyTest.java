@@ -2,6 +2,7 @@ package org.apache.mesos.elasticsearch.scheduler;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.cluster.NodeLivenessProbe;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 import org.apache.mesos.elasticsearch.scheduler.state.ESTaskStatus;
 import org.junit.Before;
@@ -11,7 +12,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.time.ZonedDateTime;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
@@ -19,6 +25,8 @@ import static org.apache.mesos.elasticsearch.scheduler.Resources.*;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -34,6 +42,9 @@ public class OfferStrategyTest {
     @Mock
     ClusterState clusterState;
 
+    @Mock
+    NodeLivenessProbe livenessProbe;
+
     @InjectMocks
     OfferStrategyNormal offerStrategy;
 
@@ -43,11 +54,13 @@ public class OfferStrategyTest {
         ESTaskStatus esTaskStatus = mock(ESTaskStatus.class);
         when(esTaskStatus.getStatus()).thenReturn(taskStatus());
         when(clusterState.getStatus(any(Protos.TaskID.class))).thenReturn(esTaskStatus);
+        when(livenessProbe.isLive(any(String.class))).thenReturn(true);
     }
     
     @Test
     public void willDeclineIfHostIsAlreadyRunningTask() throws Exception {
         when(clusterState.getTaskList()).thenReturn(singletonList(createTask("host1")));
+        when(clusterState.isSlaveRunningTask(Protos.SlaveID.newBuilder().setValue("host1").build())).thenReturn(true);
 
         final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(validOffer("host1"));
         assertFalse(result.acceptable);
@@ -210,6 +223,209 @@ public class OfferStrategyTest {
         assertTrue(offerResult.acceptable);
     }
 
+    @Test
+    public void willDeclineSecondOfferFromSameHostInOneCallback() throws Exception {
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        final ClusterSnapshot cluster = new ClusterSnapshot(singletonList(createTask("host1")));
+
+        final Protos.Offer offer = acceptableOffer("host2");
+        assertTrue(offerStrategy.evaluate(cluster, offer).acceptable);
+        cluster.addTask(createTask("host2"));
+
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(cluster, acceptableOffer("host2"));
+        assertFalse(result.acceptable);
+        assertEquals("Host already running task", result.reason.get());
+    }
+
+    @Test
+    public void willDeclineOnceClusterSizeIsFulfilledWithinOneCallback() throws Exception {
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        final ClusterSnapshot cluster = new ClusterSnapshot(singletonList(createTask("host1")));
+
+        for (String host : asList("host2", "host3")) {
+            assertTrue(offerStrategy.evaluate(cluster, acceptableOffer(host)).acceptable);
+            cluster.addTask(createTask(host));
+        }
+
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(cluster, acceptableOffer("host4"));
+        assertFalse(result.acceptable);
+        assertEquals("Cluster size already fulfilled", result.reason.get());
+        verify(clusterState, never()).getTaskList();
+    }
+
+    @Test
+    public void willDeclineFurtherOffersUntilTheFirstNodeIsUp() throws Exception {
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        final ClusterSnapshot cluster = new ClusterSnapshot(Collections.emptyList());
+
+        assertTrue(offerStrategy.evaluate(cluster, acceptableOffer("host1")).acceptable);
+        cluster.addTask(createTask("host1"));
+
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(cluster, acceptableOffer("host2"));
+        assertFalse(result.acceptable);
+        assertEquals("First ES node is not responding", result.reason.get());
+    }
+
+    @Test
+    public void willDeclineIfFirstNodeIsNotLive() throws Exception {
+        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        when(livenessProbe.isLive("TestId")).thenReturn(false);
+
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(acceptableOffer("host3"));
+        assertFalse(result.acceptable);
+        assertEquals("First ES node is not responding", result.reason.get());
+    }
+
+    @Test
+    public void shouldCheckTheFirstNodeOncePerSnapshot() throws Exception {
+        final ClusterSnapshot cluster = new ClusterSnapshot(singletonList(createTask("host1")));
+        final AtomicInteger checks = new AtomicInteger();
+
+        assertTrue(cluster.isFirstNodeResponding(taskInfo -> checks.incrementAndGet() > 0));
+        assertTrue(cluster.isFirstNodeResponding(taskInfo -> checks.incrementAndGet() > 0));
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    public void shouldCountEvaluationsAndRejectionsPerRule() throws Exception {
+        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+
+        offerStrategy.evaluate(validOffer("host3"));
+        offerStrategy.evaluate(acceptableOffer("host3"));
+
+        final List<OfferStrategy.RuleMetrics> metrics = offerStrategy.getRuleMetrics();
+        assertEquals("Host already running task", metrics.get(0).reason);
+        assertEquals(2, metrics.get(0).evaluations);
+        assertEquals(0, metrics.get(0).rejections);
+        assertEquals("Offer did not have 2 ports", metrics.get(7).reason);
+        assertEquals(2, metrics.get(7).evaluations);
+        assertEquals(1, metrics.get(7).rejections);
+        assertEquals(1, metrics.get(8).evaluations);
+    }
+
+    @Test
+    public void shouldEvaluateCheapRejectingRulesFirstWhenAdaptive() throws Exception {
+        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        when(configuration.isOfferRuleAdaptiveOrdering()).thenReturn(true);
+
+        for (int i = 0; i < OfferStrategy.REORDER_INTERVAL; i++) {
+            assertEquals("Offer did not have 2 ports", offerStrategy.evaluate(validOffer("host3")).reason.get());
+        }
+
+        assertEquals("Offer did not have 2 ports", offerStrategy.getRuleMetrics().get(0).reason);
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(validOffer("host1"));
+        assertEquals("Offer did not have 2 ports", result.reason.get()); // Rather than "Host already running task"
+    }
+
+    @Test
+    public void shouldNotReorderRulesWhenMetricsAreRead() throws Exception {
+        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        when(configuration.isOfferRuleAdaptiveOrdering()).thenReturn(true);
+
+        for (int i = 0; i < OfferStrategy.REORDER_INTERVAL - 1; i++) {
+            offerStrategy.evaluate(validOffer("host3"));
+            offerStrategy.getRuleMetrics();
+        }
+
+        assertEquals("Host already running task", offerStrategy.getRuleMetrics().get(0).reason);
+        assertEquals("Offer did not have 2 ports", offerStrategy.evaluate(validOffer("host1")).reason.get()); // Reordered before this one
+    }
+
+    @Test
+    public void shouldKeepArrivalOrderWithoutFitness() throws Exception {
+        final List<Protos.Offer> offers = asList(validOffer("host1"), validOffer("host2"));
+        assertSame(offers, offerStrategy.rank(new ClusterSnapshot(Collections.emptyList()), offers));
+    }
+
+    @Test
+    public void shouldRankOffersByFitness() throws Exception {
+        offerStrategy.setFitness((cluster, offer) -> offer.getSlaveId().getValue().equals("best") ? 2 : offer.getSlaveId().getValue().equals("good") ? 1 : 0);
+        final List<Protos.Offer> ranked = offerStrategy.rank(new ClusterSnapshot(Collections.emptyList()), asList(validOffer("bad"), validOffer("good"), validOffer("best")));
+        assertEquals(asList("best", "good", "bad"), ranked.stream().map(offer -> offer.getSlaveId().getValue()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldParseEachOfferOncePerSnapshot() throws Exception {
+        final ClusterSnapshot cluster = new ClusterSnapshot(Collections.emptyList());
+        final Protos.Offer offer = validOffer("host1");
+        offerStrategy.setFitness(new WeightedOfferFitness(configuration));
+        offerStrategy.rank(cluster, asList(offer, validOffer("host2")));
+        final OfferResources parsed = cluster.getResources(offer, configuration.getFrameworkRole());
+        offerStrategy.evaluate(cluster, offer);
+        assertSame(parsed, cluster.getResources(offer, configuration.getFrameworkRole()));
+    }
+
+    @Test
+    public void willDeclineIfAttributeValueIsAlreadyRunningTask() throws Exception {
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        when(configuration.getPlacementUniqueAttributes()).thenReturn(singletonList("rack"));
+        final ClusterSnapshot cluster = new ClusterSnapshot(singletonList(createTask("host1", "rack", "r1")));
+
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(cluster, acceptableOffer("host2", "rack", "r1"));
+        assertFalse(result.acceptable);
+        assertEquals("Attribute value already running task", result.reason.get());
+        assertTrue(offerStrategy.evaluate(cluster, acceptableOffer("host2", "rack", "r2")).acceptable);
+        assertTrue(offerStrategy.evaluate(cluster, acceptableOffer("host2")).acceptable);
+    }
+
+    @Test
+    public void willDeclineOnceAttributeValueIsRunningMaximumNumberOfTasks() throws Exception {
+        when(configuration.getElasticsearchNodes()).thenReturn(5);
+        when(configuration.getPlacementMaxPerAttribute()).thenReturn(Collections.singletonMap("zone", 2));
+        final ClusterSnapshot cluster = new ClusterSnapshot(singletonList(createTask("host1", "zone", "a")));
+
+        assertTrue(offerStrategy.evaluate(cluster, acceptableOffer("host2", "zone", "a")).acceptable);
+        cluster.addTask(createTask("host2", "zone", "a"));
+
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(cluster, acceptableOffer("host3", "zone", "a"));
+        assertFalse(result.acceptable);
+        assertEquals("Attribute value already running maximum number of tasks", result.reason.get());
+        assertTrue(offerStrategy.evaluate(cluster, acceptableOffer("host3", "zone", "b")).acceptable);
+    }
+
+    @Test
+    public void willDeclineOffersFromOtherAgentsWhileALostNodeWaitsForItsAgent() throws Exception {
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        final ClusterSnapshot cluster = new ClusterSnapshot(asList(createTask("host1"), createTask("host2")), Collections.singleton("host3"));
+
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(cluster, acceptableOffer("host4"));
+        assertFalse(result.acceptable);
+        assertEquals("Waiting for the agent of a lost node", result.reason.get());
+        assertTrue(offerStrategy.evaluate(cluster, acceptableOffer("host3")).acceptable);
+
+        when(configuration.getElasticsearchNodes()).thenReturn(4);
+        assertTrue(offerStrategy.evaluate(cluster, acceptableOffer("host4")).acceptable); // More nodes are missing than waiting
+    }
+
+    private Protos.Offer acceptableOffer(String slaveId, String attribute, String value) {
+        return acceptableOffer(slaveId).toBuilder()
+                .addAttributes(Protos.Attribute.newBuilder()
+                        .setName(attribute)
+                        .setType(Protos.Value.Type.TEXT)
+                        .setText(Protos.Value.Text.newBuilder().setValue(value)))
+                .build();
+    }
+
+    private Protos.TaskInfo createTask(String hostname, String attribute, String value) throws InvalidProtocolBufferException {
+        return createTask(hostname).toBuilder()
+                .setData(new TaskInfoFactory(clusterState).toData(hostname, "127.0.0.1", ZonedDateTime.now(), Collections.singletonMap(attribute, value)))
+                .build();
+    }
+
+    private Protos.Offer acceptableOffer(String slaveId) {
+        return baseOfferBuilder(slaveId)
+                .addResources(portRange(9200, 9200, configuration.getFrameworkRole()))
+                .addResources(portRange(9300, 9300, configuration.getFrameworkRole()))
+                .addResources(cpus(configuration.getCpus(), configuration.getFrameworkRole()))
+                .addResources(mem(configuration.getMem(), configuration.getFrameworkRole()))
+                .addResources(disk(configuration.getDisk(), configuration.getFrameworkRole()))
+                .build();
+    }
+
     private Protos.TaskInfo createTask(String hostname) throws InvalidProtocolBufferException {
         return Protos.TaskInfo.newBuilder()
                 .setName("Test")
@@ -0,0 +1,42 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests remembering the agents of lost nodes
+ */
+public class RelaunchLocalityTest {
+    private static final long WINDOW = 1000;
+    private final Clock clock = mock(Clock.class);
+    private final Protos.SlaveID slaveID = Protos.SlaveID.newBuilder().setValue("slave1").build();
+
+    @Test
+    public void shouldForgetTheAgentAfterTheWindow() {
+        final RelaunchLocality relaunchLocality = new RelaunchLocality(WINDOW, clock);
+        when(clock.now()).thenReturn(new Date(0));
+        relaunchLocality.taskLost(slaveID);
+        assertEquals(Collections.singleton("slave1"), relaunchLocality.getWaitingSlaveIds());
+
+        when(clock.now()).thenReturn(new Date(WINDOW));
+        assertTrue(relaunchLocality.getWaitingSlaveIds().isEmpty());
+        assertEquals(1, relaunchLocality.getMetrics().expired);
+    }
+
+    @Test
+    public void shouldNotRememberAgentsWithoutAWindow() {
+        final RelaunchLocality relaunchLocality = new RelaunchLocality(0, clock);
+        when(clock.now()).thenReturn(new Date(0));
+        relaunchLocality.taskLost(slaveID);
+        assertTrue(relaunchLocality.getWaitingSlaveIds().isEmpty());
+    }
+}
@@ -39,6 +39,15 @@ public class ResourceCheckTest {
         assertTrue(resourceCheck.isEnough(resourceList, 1));
     }
 
+    @Test
+    public void givenReservedAndUnreservedResourceShouldAddThemUp() {
+        ResourceCheck resourceCheck = new ResourceCheck(Resources.RESOURCE_CPUS);
+        List<Protos.Resource> resourceList = new ArrayList<>();
+        resourceList.add(Resources.cpus(0.5, "*"));
+        resourceList.add(Resources.reserved(Resources.cpus(0.5, "elasticsearch"), "principal"));
+        assertTrue(resourceCheck.isEnough(resourceList, 1));
+    }
+
     @Test
     public void givenTooLittleResourceShouldDeny() {
         ResourceCheck resourceCheck = new ResourceCheck(Resources.RESOURCE_CPUS);
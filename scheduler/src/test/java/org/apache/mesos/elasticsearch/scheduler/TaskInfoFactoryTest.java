@@ -110,6 +110,107 @@ public class TaskInfoFactoryTest {
         assertEquals(Protos.Volume.Mode.RO, taskInfo.getContainer().getVolumes(1).getMode());
     }
 
+    @Test
+    public void shouldReserveResourcesAndCreateVolumeForFirstLaunch() {
+        usePersistentVolumes();
+        TaskInfoFactory factory = new TaskInfoFactory(clusterState);
+        Protos.Offer offer = getOffer(frameworkState.getFrameworkID());
+        Protos.TaskInfo taskInfo = factory.createTask(configuration, frameworkState, offer, clock);
+
+        assertTrue(getResourceByName(taskInfo.getResourcesList(), "cpus").hasReservation());
+        assertEquals("volume-id", getResourceByName(taskInfo.getResourcesList(), "disk").getDisk().getPersistence().getId());
+        assertEquals(Configuration.PERSISTENT_VOLUME_PATH, taskInfo.getContainer().getVolumes(0).getHostPath());
+        assertEquals(Configuration.CONTAINER_PATH_DATA, taskInfo.getContainer().getVolumes(0).getContainerPath());
+
+        List<Protos.Offer.Operation> operations = factory.createOperations(configuration, offer, taskInfo);
+        assertEquals(asList(Protos.Offer.Operation.Type.RESERVE, Protos.Offer.Operation.Type.CREATE, Protos.Offer.Operation.Type.LAUNCH),
+                operations.stream().map(Protos.Offer.Operation::getType).collect(Collectors.toList()));
+        assertEquals(3, operations.get(0).getReserve().getResourcesCount());
+        assertEquals("principal", operations.get(0).getReserve().getResources(0).getReservation().getPrincipal());
+        assertEquals(taskInfo, operations.get(2).getLaunch().getTaskInfos(0));
+    }
+
+    @Test
+    public void shouldOnlyLaunchOnExistingVolume() {
+        usePersistentVolumes();
+        TaskInfoFactory factory = new TaskInfoFactory(clusterState);
+        Protos.Offer offer = Protos.Offer.newBuilder(getOffer(frameworkState.getFrameworkID()))
+                .clearResources()
+                .addResources(Resources.singlePortRange(9200, "some-framework-role"))
+                .addResources(Resources.singlePortRange(9300, "some-framework-role"))
+                .addResources(Resources.reserved(Resources.cpus(1.0, "some-framework-role"), "principal"))
+                .addResources(Resources.reserved(Resources.mem(3.0, "some-framework-role"), "principal"))
+                .addResources(Resources.persistentVolume(2.0, "some-framework-role", "principal", "volume-id", Configuration.PERSISTENT_VOLUME_PATH))
+                .build();
+        Protos.TaskInfo taskInfo = factory.createTask(configuration, frameworkState, offer, clock);
+
+        List<Protos.Offer.Operation> operations = factory.createOperations(configuration, offer, taskInfo);
+        assertEquals(1, operations.size());
+        assertEquals(Protos.Offer.Operation.Type.LAUNCH, operations.get(0).getType());
+    }
+
+    @Test
+    public void shouldUseExistingVolumeIfTheConfiguredDiskHasChanged() {
+        usePersistentVolumes();
+        TaskInfoFactory factory = new TaskInfoFactory(clusterState);
+        Protos.Resource volume = Resources.persistentVolume(5.0, "some-framework-role", "principal", "volume-id", Configuration.PERSISTENT_VOLUME_PATH);
+        Protos.Offer offer = Protos.Offer.newBuilder(getOffer(frameworkState.getFrameworkID()))
+                .clearResources()
+                .addResources(Resources.singlePortRange(9200, "some-framework-role"))
+                .addResources(Resources.singlePortRange(9300, "some-framework-role"))
+                .addResources(Resources.reserved(Resources.cpus(1.0, "some-framework-role"), "principal"))
+                .addResources(Resources.reserved(Resources.mem(3.0, "some-framework-role"), "principal"))
+                .addResources(volume)
+                .build();
+        Protos.TaskInfo taskInfo = factory.createTask(configuration, frameworkState, offer, clock);
+
+        assertEquals(volume, getResourceByName(taskInfo.getResourcesList(), "disk"));
+        assertEquals(1, factory.createOperations(configuration, offer, taskInfo).size());
+    }
+
+    @Test
+    public void shouldDestroyAndUnreserveTheResourcesOfAnEarlierNode() {
+        usePersistentVolumes();
+        TaskInfoFactory factory = new TaskInfoFactory(clusterState);
+        Protos.Resource volume = Resources.persistentVolume(2.0, "some-framework-role", "principal", "volume-id", Configuration.PERSISTENT_VOLUME_PATH);
+        Protos.Offer offer = Protos.Offer.newBuilder(getOffer(frameworkState.getFrameworkID()))
+                .clearResources()
+                .addResources(Resources.singlePortRange(9200, "some-framework-role"))
+                .addResources(Resources.reserved(Resources.cpus(1.0, "some-framework-role"), "principal"))
+                .addResources(Resources.reserved(Resources.mem(3.0, "some-framework-role"), "other-principal"))
+                .addResources(volume)
+                .build();
+
+        List<Protos.Offer.Operation> operations = factory.createReleaseOperations(configuration, OfferResources.of(offer, "some-framework-role"));
+        assertEquals(asList(Protos.Offer.Operation.Type.DESTROY, Protos.Offer.Operation.Type.UNRESERVE),
+                operations.stream().map(Protos.Offer.Operation::getType).collect(Collectors.toList()));
+        assertEquals(Collections.singletonList(volume), operations.get(0).getDestroy().getVolumesList());
+        List<Protos.Resource> unreserved = operations.get(1).getUnreserve().getResourcesList();
+        assertEquals(asList("cpus", "disk"), unreserved.stream().map(Protos.Resource::getName).collect(Collectors.toList()));
+        assertFalse(getResourceByName(unreserved, "disk").hasDisk());
+        assertEquals("principal", getResourceByName(unreserved, "disk").getReservation().getPrincipal());
+    }
+
+    @Test
+    public void shouldNotReleaseAnythingFromAnUnreservedOffer() {
+        usePersistentVolumes();
+        TaskInfoFactory factory = new TaskInfoFactory(clusterState);
+        Protos.Offer offer = getOffer(frameworkState.getFrameworkID());
+        assertTrue(factory.createReleaseOperations(configuration, OfferResources.of(offer, "some-framework-role")).isEmpty());
+    }
+
+    private void usePersistentVolumes() {
+        when(configuration.isFrameworkUsePersistentVolumes()).thenReturn(true);
+        when(configuration.getFrameworkPrincipal()).thenReturn("principal");
+        when(configuration.persistentVolumeId()).thenReturn("volume-id");
+        when(configuration.getCpus()).thenReturn(1.0);
+        when(configuration.getMem()).thenReturn(3.0);
+        when(configuration.getDisk()).thenReturn(2.0);
+        when(configuration.getElasticsearchSettingsLocation()).thenReturn("");
+        when(clock.now()).thenReturn(new Date());
+        when(clock.nowUTC()).thenReturn(ZonedDateTime.now(ZoneOffset.UTC));
+    }
+
     private Protos.Resource getResourceByName(List<Protos.Resource> resourceList, String name) {
         return resourceList.stream().filter(resource -> resource.getName().equals(name)).findFirst().get();
     }
@@ -0,0 +1,125 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import com.google.protobuf.ByteString;
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.apache.mesos.elasticsearch.scheduler.Resources.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the scores of the weighted offer fitness function
+ */
+public class WeightedOfferFitnessTest {
+    private static final String ROLE = "elasticsearch";
+    private static final double DELTA = 0.0001;
+
+    private final Configuration configuration = mock(Configuration.class);
+    private WeightedOfferFitness fitness;
+
+    @Before
+    public void before() {
+        when(configuration.getFrameworkRole()).thenReturn(ROLE);
+        when(configuration.getCpus()).thenReturn(1.0);
+        when(configuration.getMem()).thenReturn(256.0);
+        when(configuration.getDisk()).thenReturn(1024.0);
+        fitness = new WeightedOfferFitness(configuration);
+    }
+
+    @Test
+    public void shouldOnlyBeEnabledWithAWeight() {
+        assertFalse(WeightedOfferFitness.isEnabled(configuration));
+        when(configuration.getOfferWeightSpread()).thenReturn(1.0);
+        assertTrue(WeightedOfferFitness.isEnabled(configuration));
+    }
+
+    @Test
+    public void shouldScoreHeadroom() {
+        assertEquals(0, fitness.headroom(resources(cpus(1, "*"), mem(256, "*"), disk(1024, "*"))), DELTA);
+        assertEquals(0.5, fitness.headroom(resources(cpus(2, "*"), mem(512, "*"), disk(2048, "*"))), DELTA);
+        assertEquals(0.5, fitness.headroom(resources(cpus(1, "*"), cpus(1, ROLE), mem(512, "*"), disk(2048, "*"))), DELTA);
+        assertEquals(0, fitness.headroom(resources()), DELTA);
+    }
+
+    @Test
+    public void shouldScoreSpread() {
+        final ClusterSnapshot cluster = new ClusterSnapshot(Collections.singletonList(taskOnHost("host1")));
+        assertEquals(0, fitness.spread(cluster, offer("host1")), DELTA);
+        assertEquals(1, fitness.spread(cluster, offer("host2")), DELTA);
+    }
+
+    @Test
+    public void shouldScoreLocality() {
+        assertEquals(0, fitness.locality(resources(disk(1024, "*"))), DELTA);
+        assertEquals(0.5, fitness.locality(resources(disk(1024, ROLE))), DELTA);
+        assertEquals(1, fitness.locality(resources(Protos.Resource.newBuilder(disk(1024, ROLE))
+                .setDisk(Protos.Resource.DiskInfo.newBuilder()
+                        .setPersistence(Protos.Resource.DiskInfo.Persistence.newBuilder().setId("data")))
+                .build())), DELTA);
+    }
+
+    @Test
+    public void shouldWeighScores() {
+        when(configuration.getOfferWeightHeadroom()).thenReturn(2.0);
+        when(configuration.getOfferWeightSpread()).thenReturn(3.0);
+        final Protos.Offer offer = Protos.Offer.newBuilder(offer("host2"))
+                .addResources(cpus(2, "*"))
+                .addResources(mem(512, "*"))
+                .addResources(disk(2048, "*"))
+                .build();
+        assertEquals(2 * 0.5 + 3, fitness.score(new ClusterSnapshot(Collections.emptyList()), offer), DELTA);
+    }
+
+    @Test
+    public void shouldRankPreferredAttributeValuesFirst() {
+        final Map<String, String> preferred = new LinkedHashMap<>();
+        preferred.put("zone", "a");
+        preferred.put("rack", "r1");
+        when(configuration.getPlacementPreferredAttributes()).thenReturn(preferred);
+        when(configuration.getOfferWeightSpread()).thenReturn(3.0);
+        assertTrue(WeightedOfferFitness.isEnabled(configuration));
+
+        final Protos.Offer preferredOffer = Protos.Offer.newBuilder(offer("host1")).addAttributes(attribute("zone", "a")).build();
+        assertEquals(1, fitness.preference(preferredOffer.getAttributesList()), DELTA);
+        assertEquals(0, fitness.preference(Collections.singletonList(attribute("zone", "b"))), DELTA);
+
+        final ClusterSnapshot cluster = new ClusterSnapshot(Collections.singletonList(taskOnHost("host1")));
+        assertTrue(fitness.score(cluster, preferredOffer) > fitness.score(cluster, offer("host2")));
+    }
+
+    private static OfferResources resources(Protos.Resource... resources) {
+        return OfferResources.of(asList(resources), ROLE);
+    }
+
+    private static Protos.Attribute attribute(String name, String value) {
+        return Protos.Attribute.newBuilder()
+                .setName(name)
+                .setType(Protos.Value.Type.TEXT)
+                .setText(Protos.Value.Text.newBuilder().setValue(value))
+                .build();
+    }
+
+    private Protos.TaskInfo taskOnHost(String hostname) {
+        return Protos.TaskInfo.newBuilder(ProtoTestUtil.getDefaultTaskInfo())
+                .setData(ByteString.copyFromUtf8("hostname=" + hostname + "\n"))
+                .build();
+    }
+
+    private Protos.Offer offer(String hostname) {
+        return Protos.Offer.newBuilder()
+                .setId(Protos.OfferID.newBuilder().setValue("offerId"))
+                .setFrameworkId(Protos.FrameworkID.newBuilder().setValue("frameworkId"))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue(hostname))
+                .setHostname(hostname)
+                .build();
+    }
+}
@@ -0,0 +1,147 @@
+package org.apache.mesos.elasticsearch.scheduler.cluster;
+
+import com.google.protobuf.ByteString;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.common.Discovery;
+import org.apache.mesos.elasticsearch.scheduler.Configuration;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the node liveness probe
+ */
+public class NodeLivenessProbeTest {
+    private static final long MAX_STALENESS_MS = 1000;
+
+    private final ClusterState clusterState = mock(ClusterState.class);
+    private final Configuration configuration = mock(Configuration.class);
+    private final Clock clock = mock(Clock.class);
+    private final List<Protos.TaskInfo> tasks = new ArrayList<>();
+    private HttpServer server;
+    private NodeLivenessProbe probe;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        when(configuration.getIsUseIpAddress()).thenReturn(true);
+        when(clusterState.isReady()).thenReturn(true);
+        when(clusterState.getTaskList()).thenAnswer(invocation -> new ArrayList<>(tasks));
+        when(clock.now()).thenReturn(new Date(10000));
+        probe = new NodeLivenessProbe(clusterState, configuration, 1000, 1000, MAX_STALENESS_MS, clock);
+    }
+
+    @After
+    public void after() {
+        probe.stop();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldReportRespondingNodeAsLive() {
+        addTask("live", server.getAddress().getPort());
+        probe.run();
+        assertTrue(probe.isLive("live"));
+    }
+
+    @Test
+    public void shouldReportDeadNodeAsNotLive() throws IOException {
+        addTask("dead", unusedPort());
+        probe.run();
+        assertFalse(probe.isLive("dead"));
+    }
+
+    @Test
+    public void shouldReportUnknownNodeAsNotLive() {
+        probe.run();
+        assertFalse(probe.isLive("unknown"));
+    }
+
+    @Test
+    public void shouldNotTrustStaleResults() {
+        addTask("live", server.getAddress().getPort());
+        probe.run();
+        when(clock.now()).thenReturn(new Date(10000 + MAX_STALENESS_MS + 1));
+
+        assertFalse(probe.isLive("live"));
+        final NodeLivenessProbe.Report report = probe.getReport();
+        assertEquals(1, report.nodes.size());
+        assertTrue(report.nodes.get(0).live);
+        assertTrue(report.nodes.get(0).stale);
+        assertEquals(MAX_STALENESS_MS + 1, report.nodes.get(0).stalenessMs);
+    }
+
+    @Test
+    public void shouldDropRemovedNodes() {
+        addTask("live", server.getAddress().getPort());
+        probe.run();
+        tasks.clear();
+        probe.run();
+
+        assertFalse(probe.isLive("live"));
+        assertEquals(2, probe.getReport().runs);
+        assertTrue(probe.getReport().nodes.isEmpty());
+    }
+
+    @Test
+    public void shouldReportErrors() {
+        when(clusterState.getTaskList()).thenThrow(new IllegalStateException("Not loaded"));
+        probe.run();
+        assertEquals(1, probe.getReport().runs);
+        assertNotNull(probe.getReport().lastError);
+    }
+
+    @Test
+    public void shouldOnlyReadTheInMemoryTaskList() {
+        addTask("live", server.getAddress().getPort());
+        probe.run();
+        verify(clusterState, never()).getGuiTaskList();
+        verify(clusterState, never()).getStatus(any(Protos.TaskID.class));
+    }
+
+    @Test
+    public void shouldNotProbeBeforeTheClusterStateIsLoaded() {
+        when(clusterState.isReady()).thenReturn(false);
+        probe.run();
+        verify(clusterState, never()).getTaskList();
+        assertNotNull(probe.getReport().lastError);
+    }
+
+    private void addTask(String taskId, int port) {
+        tasks.add(Protos.TaskInfo.newBuilder(ProtoTestUtil.getDefaultTaskInfo())
+                .setTaskId(Protos.TaskID.newBuilder().setValue(taskId))
+                .setData(ByteString.copyFromUtf8("hostname=localhost\nipAddress=" + InetAddress.getLoopbackAddress().getHostAddress() + "\n"))
+                .setDiscovery(Protos.DiscoveryInfo.newBuilder()
+                        .setVisibility(Protos.DiscoveryInfo.Visibility.EXTERNAL)
+                        .setPorts(Protos.Ports.newBuilder()
+                                .addPorts(Discovery.CLIENT_PORT_INDEX, Protos.Port.newBuilder().setNumber(port))
+                                .addPorts(Discovery.TRANSPORT_PORT_INDEX, Protos.Port.newBuilder().setNumber(port))))
+                .build());
+    }
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package org.apache.mesos.elasticsearch.scheduler.controllers;
 
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.state.TaskStatusHistory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.Collections;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -24,10 +31,28 @@ public class TasksControllerTest {
     @Autowired
     FrameworkState frameworkState;
 
+    @Autowired
+    ClusterState clusterState;
+
     @Test
     public void shouldNotCrashWhenFrameworkNotRegistered() {
         Mockito.when(frameworkState.isRegistered()).thenReturn(false);
         List<TasksController.GetTasksResponse> tasks = controller.getTasks();
         assertTrue(tasks.isEmpty());
     }
+
+    @Test
+    public void shouldReturnTaskHistory() {
+        List<TaskStatusHistory.Entry> history = Collections.singletonList(new TaskStatusHistory.Entry(Protos.TaskState.TASK_RUNNING, null, 1000L, true));
+        Mockito.when(clusterState.getHistory(Protos.TaskID.newBuilder().setValue("task1").build())).thenReturn(history);
+        ResponseEntity<List<TaskStatusHistory.Entry>> response = controller.getHistory("task1");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(history, response.getBody());
+    }
+
+    @Test
+    public void shouldReturnNotFoundForUnknownTaskHistory() {
+        Mockito.when(clusterState.getHistory(Protos.TaskID.newBuilder().setValue("unknown").build())).thenThrow(new IllegalArgumentException("Unknown task"));
+        assertEquals(HttpStatus.NOT_FOUND, controller.getHistory("unknown").getStatusCode());
+    }
 }
\ No newline at end of file
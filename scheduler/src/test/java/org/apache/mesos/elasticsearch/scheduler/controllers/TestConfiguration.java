@@ -4,7 +4,11 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.http.client.HttpClient;
 import org.apache.mesos.elasticsearch.common.cli.ZookeeperCLIParameter;
 import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
+import org.apache.mesos.elasticsearch.scheduler.cluster.NodeLivenessProbe;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.state.StateGarbageCollector;
+import org.apache.mesos.elasticsearch.scheduler.state.StateSizeStats;
 import org.mockito.Mockito;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -48,4 +52,24 @@ public class TestConfiguration {
     public FrameworkState getMockFrameworkState() {
         return Mockito.mock(FrameworkState.class);
     }
+
+    @Bean
+    public ClusterState getMockClusterState() {
+        return Mockito.mock(ClusterState.class);
+    }
+
+    @Bean
+    public StateSizeStats getStateSizeStats() {
+        return new StateSizeStats();
+    }
+
+    @Bean
+    public StateGarbageCollector getMockStateGarbageCollector() {
+        return Mockito.mock(StateGarbageCollector.class);
+    }
+
+    @Bean
+    public NodeLivenessProbe getMockNodeLivenessProbe() {
+        return Mockito.mock(NodeLivenessProbe.class);
+    }
 }
@@ -4,16 +4,17 @@ import org.apache.mesos.Protos;
 import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.Mockito;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -21,7 +22,9 @@ import static org.mockito.Mockito.*;
  */
 @SuppressWarnings({"PMD.TooManyMethods"})
 public class ClusterStateTest {
-    private SerializableState state = mock(SerializableState.class);
+    private static final String TASKS = "FrameworkID/" + ClusterState.TASKS_KEY;
+
+    private SerializableState state = spy(new TestSerializableStateImpl());
 
     private FrameworkState frameworkState = mock(FrameworkState.class);
 
@@ -36,24 +39,35 @@ public class ClusterStateTest {
     @Test
     public void shouldGetListFromZK() throws IOException {
         List<Protos.TaskInfo> taskList = clusterState.getTaskList();
-        verify(state, times(1)).get(anyString());
+        verify(state, times(1)).get(TASKS);
         assertEquals(0, taskList.size());
     }
 
     @Test
     public void shouldHandleGetException() throws IOException {
-        when(state.<List<String>>get(anyString())).thenThrow(new IOException("Test exception"));
+        doThrow(new IOException("Test exception")).when(state).get(anyString());
         List<Protos.TaskInfo> taskList = clusterState.getTaskList();
         verify(state, times(1)).get(anyString());
         assertEquals(0, taskList.size());
     }
 
     @Test
-    public void shouldHandleGetNull() throws IOException {
-        when(state.get(anyString())).thenReturn(null);
-        List<Protos.TaskInfo> taskList = clusterState.getTaskList();
-        verify(state, times(1)).get(anyString());
-        assertEquals(0, taskList.size());
+    public void shouldGetTasksFromTheirOwnZNodes() throws IOException {
+        Protos.TaskInfo task2 = withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task2");
+        state.set(TASKS, new ArrayList<>(Arrays.asList(ProtoTestUtil.getDefaultTaskInfo().getTaskId().getValue(), "Task2")));
+        state.set(TASKS + "/" + ProtoTestUtil.getDefaultTaskInfo().getTaskId().getValue(), ProtoTestUtil.getDefaultTaskInfo());
+        state.set(TASKS + "/Task2", task2);
+        assertEquals(Arrays.asList(ProtoTestUtil.getDefaultTaskInfo(), task2), clusterState.getTaskList());
+    }
+
+    @Test
+    public void shouldMigrateLegacyStateList() throws IOException {
+        Protos.TaskInfo task2 = withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task2");
+        state.set("FrameworkID/" + ClusterState.STATE_LIST, new ArrayList<>(Arrays.asList(ProtoTestUtil.getDefaultTaskInfo(), task2)));
+        assertEquals(Arrays.asList(ProtoTestUtil.getDefaultTaskInfo(), task2), clusterState.getTaskList());
+        assertNull(state.get("FrameworkID/" + ClusterState.STATE_LIST));
+        assertEquals(Arrays.asList(ProtoTestUtil.getDefaultTaskInfo().getTaskId().getValue(), "Task2"), state.get(TASKS));
+        assertEquals(task2, state.get(TASKS + "/Task2"));
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -63,51 +77,144 @@ public class ClusterStateTest {
 
     @Test
     public void shouldReturnStatusWhenDoesExist() throws IOException {
-        ArrayList<Protos.TaskInfo> taskInfos = new ArrayList<>();
-        taskInfos.add(ProtoTestUtil.getDefaultTaskInfo());
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
-        taskInfos.add(defaultTaskInfo);
-        when(state.get(anyString())).thenReturn(taskInfos).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_FINISHED));
+        clusterState.addTask(withTaskId(defaultTaskInfo, "Task2"));
+        clusterState.addTask(defaultTaskInfo);
         ESTaskStatus status = clusterState.getStatus(defaultTaskInfo.getTaskId());
         assertNotNull(status);
     }
 
     @Test
     public void shouldAddTask() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
-        when(state.get(anyString())).thenReturn(mock);
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
         clusterState.addTask(defaultTaskInfo);
-        verify(state, times(1)).set(anyString(), any());
-        verify(mock, times(1)).add(eq(defaultTaskInfo));
+        verify(state, times(1)).set(TASKS + "/" + defaultTaskInfo.getTaskId().getValue(), defaultTaskInfo);
+        verify(state, times(1)).compareAndSet(eq(TASKS), any(), eq(Collections.singletonList(defaultTaskInfo.getTaskId().getValue())));
+        assertEquals(Collections.singletonList(defaultTaskInfo), clusterState.getTaskList());
+    }
+
+    @Test
+    public void shouldOnlyWriteTheAddedTask() throws IOException {
+        Protos.TaskInfo task2 = withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task2");
+        clusterState.addTask(ProtoTestUtil.getDefaultTaskInfo());
+        clusterState.addTask(task2);
+        verify(state, times(1)).set(TASKS + "/" + ProtoTestUtil.getDefaultTaskInfo().getTaskId().getValue(), ProtoTestUtil.getDefaultTaskInfo());
+        verify(state, times(1)).set(TASKS + "/Task2", task2);
+    }
+
+    @Test
+    public void shouldOnlyReadListFromZKOnce() throws IOException {
+        clusterState.addTask(ProtoTestUtil.getDefaultTaskInfo());
+        ClusterState newClusterState = new ClusterState(state, frameworkState);
+        reset(state);
+        newClusterState.getTaskList();
+        newClusterState.exists(ProtoTestUtil.getDefaultTaskInfo().getTaskId());
+        newClusterState.getTask(ProtoTestUtil.getDefaultTaskInfo().getTaskId());
+        assertEquals(1, newClusterState.getTaskList().size());
+        verify(state, times(1)).get(TASKS);
+        verify(state, times(4)).get(anyString()); // The list, the task info, the task status and the status history
+    }
+
+    @Test
+    public void shouldLoadTaskStatusesWithTasks() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        clusterState.addTask(taskInfo);
+        Protos.TaskStatus status = Protos.TaskStatus.newBuilder().setTaskId(taskInfo.getTaskId()).setState(Protos.TaskState.TASK_RUNNING).build();
+        state.set(ESTaskStatus.getKey(frameworkState.getFrameworkID(), taskInfo.getTaskId()), status);
+
+        ClusterState newClusterState = new ClusterState(state, frameworkState);
+        assertFalse(newClusterState.isReady());
+        assertTrue(newClusterState.load());
+        assertTrue(newClusterState.isReady());
+        assertTrue(newClusterState.getLoadTimeMillis() >= 0);
+        reset(state);
+        assertFalse(newClusterState.taskInError(status));
+        verify(state, never()).get(anyString());
+    }
+
+    @Test
+    public void shouldNotBeReadyIfStateCannotBeLoaded() throws IOException {
+        doThrow(new IOException("Test exception")).when(state).get(anyString());
+        assertFalse(clusterState.load());
+        assertFalse(clusterState.isReady());
+    }
+
+    @Test
+    public void shouldOnlyLoadIfIdleWhenNoStatusesArePending() throws IOException {
+        TaskStatusWriter statusWriter = mock(TaskStatusWriter.class);
+        ClusterState clusterState = new ClusterState(state, frameworkState, new StatePath(state), statusWriter);
+        when(statusWriter.flush(0)).thenReturn(false);
+        assertFalse(clusterState.loadIfIdle());
+        assertFalse(clusterState.isReady());
+        when(statusWriter.flush(0)).thenReturn(true);
+        assertTrue(clusterState.loadIfIdle());
+        assertTrue(clusterState.isReady());
+    }
+
+    @Test
+    public void shouldReloadListFromZKWhenLoaded() throws IOException {
+        assertEquals(0, clusterState.getTaskList().size());
+        new ClusterState(state, frameworkState).addTask(ProtoTestUtil.getDefaultTaskInfo());
+        assertEquals(0, clusterState.getTaskList().size());
+        clusterState.load();
+        assertEquals(1, clusterState.getTaskList().size());
     }
 
     @Test
     public void shouldHandleExceptionWhenAddingTask() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
-        when(state.get(anyString())).thenReturn(mock);
         doThrow(IOException.class).when(state).set(anyString(), any());
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
-        clusterState.addTask(defaultTaskInfo);
+        assertFalse(clusterState.addTask(defaultTaskInfo));
+        assertFalse(clusterState.exists(defaultTaskInfo.getTaskId()));
+        assertTrue(clusterState.getTaskList().isEmpty());
     }
 
     @Test
     public void shouldDeleteTask() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
-        mock.add(defaultTaskInfo);
-        when(state.get(anyString())).thenReturn(mock).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_FINISHED));
+        clusterState.addTask(defaultTaskInfo);
         clusterState.removeTask(defaultTaskInfo);
-        verify(state, times(1)).set(anyString(), any());
-        verify(mock, times(1)).remove(eq(defaultTaskInfo));
+        verify(state, times(1)).compareAndSet(eq(TASKS), any(), eq(Collections.emptyList()));
+        verify(state, times(1)).delete(TASKS + "/" + defaultTaskInfo.getTaskId().getValue());
+        assertEquals(0, clusterState.getTaskList().size());
+    }
+
+    @Test
+    public void shouldAbandonTaskWithoutReadingOrWritingItsStatus() throws IOException {
+        TaskStatusWriter statusWriter = mock(TaskStatusWriter.class);
+        ClusterState clusterState = new ClusterState(state, frameworkState, new StatePath(state), statusWriter);
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        final String statusKey = "FrameworkID/" + ESTaskStatus.STATE_KEY + "/" + taskInfo.getTaskId().getValue();
+        assertTrue(clusterState.addTask(taskInfo));
+        clusterState.update(ESTaskStatus.getDefaultStatus(taskInfo));
+        assertFalse(clusterState.flush());
+        doThrow(IOException.class).when(state).get(anyString()); // Zookeeper is down
+        doThrow(IOException.class).when(state).set(anyString(), any());
+        doThrow(IOException.class).when(state).delete(anyString());
+        doThrow(IOException.class).when(state).getVersioned(anyString());
+
+        clusterState.abandonTask(taskInfo);
+
+        assertFalse(clusterState.exists(taskInfo.getTaskId()));
+        assertTrue(clusterState.getTaskList().isEmpty());
+        verify(statusWriter).discard(statusKey);
+        verify(state, never()).set(eq(statusKey), any());
+    }
+
+    @Test
+    public void shouldRemoveTheZNodesOfAnAbandonedTask() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        clusterState.addTask(taskInfo);
+        clusterState.abandonTask(taskInfo);
+        assertNull(state.get(TASKS + "/" + taskInfo.getTaskId().getValue()));
+        assertEquals(Collections.emptyList(), state.get(TASKS));
+        assertFalse(clusterState.exists(taskInfo.getTaskId()));
     }
 
     @Test
     public void shouldReturnTrueIfExists() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
-        mock.add(defaultTaskInfo);
-        when(state.get(anyString())).thenReturn(mock);
+        clusterState.addTask(defaultTaskInfo);
         assertTrue(clusterState.exists(defaultTaskInfo.getTaskId()));
         verify(state, atLeastOnce()).get(anyString());
     }
@@ -116,36 +223,177 @@ public class ClusterStateTest {
     public void shouldReturnFalseIfNotExists() throws IOException {
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
         assertFalse(clusterState.exists(defaultTaskInfo.getTaskId()));
-        verify(state, times(1)).get(anyString());
+        verify(state, times(1)).get(TASKS);
     }
 
     @Test
     public void shouldReturnCorrectNumberOfExecutors() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
-        mock.add(ProtoTestUtil.getDefaultTaskInfo());
-        Protos.TaskInfo defaultTaskInfo = Protos.TaskInfo.newBuilder().mergeFrom(ProtoTestUtil.getDefaultTaskInfo()).setTaskId(Protos.TaskID.newBuilder().setValue("Task2")).build();
-        mock.add(defaultTaskInfo);
-        when(state.get(contains(ESTaskStatus.STATE_KEY))).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING));
-        when(state.get(contains(ClusterState.STATE_LIST))).thenReturn(mock); // Be careful, the state list and state key both have the word state in them. Order is important.
+        clusterState.addTask(ProtoTestUtil.getDefaultTaskInfo());
+        Protos.TaskInfo defaultTaskInfo = withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task2");
+        clusterState.addTask(defaultTaskInfo);
         assertEquals(2, clusterState.getGuiTaskList().size());
         clusterState.removeTask(defaultTaskInfo);
         assertEquals(1, clusterState.getGuiTaskList().size());
     }
 
-    // TODO (pnw): Add test for get ES node Id. Hard to test because of protobuf. Need to add to default protobuf.
     @Test
     public void shouldIncrementEsNodeId() throws IOException {
         assertEquals(0, clusterState.getElasticNodeId().intValue());
-        when(state.get(any())).thenReturn(Collections.singletonList(ProtoTestUtil.getTaskInfoExternalVolume(0)));
+        clusterState.addTask(ProtoTestUtil.getTaskInfoExternalVolume(0));
         assertEquals(1, clusterState.getElasticNodeId().intValue());
     }
 
     @Test
     public void shouldReplaceNodeId() throws IOException {
-        when(state.get(any())).thenReturn(Collections.singletonList(ProtoTestUtil.getTaskInfoExternalVolume(1)));
+        clusterState.addTask(withTaskId(ProtoTestUtil.getTaskInfoExternalVolume(1), "Task1"));
         assertEquals(0, clusterState.getElasticNodeId().intValue());
-        when(state.get(any())).thenReturn(Arrays.asList(ProtoTestUtil.getTaskInfoExternalVolume(0), ProtoTestUtil.getTaskInfoExternalVolume(1)));
+        clusterState.addTask(withTaskId(ProtoTestUtil.getTaskInfoExternalVolume(0), "Task0"));
         assertEquals(2, clusterState.getElasticNodeId().intValue());
+    }
+
+    @Test
+    public void shouldWriteStatusUpdatesOnFlush() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        clusterState.addTask(taskInfo);
+        Protos.TaskStatus status = Protos.TaskStatus.newBuilder().setTaskId(taskInfo.getTaskId()).setState(Protos.TaskState.TASK_RUNNING).build();
+        clusterState.update(status);
+        assertTrue(clusterState.flush());
+        assertEquals(status, state.get(ESTaskStatus.getKey(frameworkState.getFrameworkID(), taskInfo.getTaskId())));
+    }
+
+    @Test
+    public void shouldFindTaskByExecutorId() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        clusterState.addTask(taskInfo);
+        assertEquals(taskInfo, clusterState.getTask(taskInfo.getExecutor().getExecutorId()));
+        clusterState.removeTask(taskInfo);
+        try {
+            clusterState.getTask(taskInfo.getExecutor().getExecutorId());
+            fail("Removed task should not be found by executor ID");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(taskInfo.getExecutor().getExecutorId().getValue()));
+        }
+    }
+
+    @Test
+    public void shouldKnowWhichSlavesAreRunningTasks() throws IOException {
+        Protos.TaskInfo task1 = withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task1");
+        Protos.TaskInfo task2 = withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task2");
+        clusterState.addTask(task1);
+        clusterState.addTask(task2);
+        assertTrue(clusterState.isSlaveRunningTask(task1.getSlaveId()));
+        clusterState.removeTask(task1);
+        assertTrue(clusterState.isSlaveRunningTask(task1.getSlaveId()));
+        clusterState.removeTask(task2);
+        assertFalse(clusterState.isSlaveRunningTask(task1.getSlaveId()));
+    }
+
+    @Test
+    public void shouldReuseNodeIdOfRemovedTask() throws IOException {
+        Protos.TaskInfo task0 = withTaskId(ProtoTestUtil.getTaskInfoExternalVolume(0), "Task0");
+        clusterState.addTask(task0);
+        clusterState.addTask(withTaskId(ProtoTestUtil.getTaskInfoExternalVolume(1), "Task1"));
+        assertEquals(2, clusterState.getElasticNodeId().intValue());
+        clusterState.removeTask(task0);
+        assertEquals(0, clusterState.getElasticNodeId().intValue());
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentUpdatesToTheTaskList() throws IOException {
+        doAnswer(invocation -> {
+            doCallRealMethod().when(state).compareAndSet(anyString(), any(), any());
+            state.set(TASKS, new ArrayList<>(Collections.singletonList("OtherTask"))); // Written by another scheduler
+            return invocation.callRealMethod();
+        }).when(state).compareAndSet(eq(TASKS), any(), any());
+        Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        clusterState.addTask(defaultTaskInfo);
+        assertEquals(Arrays.asList("OtherTask", defaultTaskInfo.getTaskId().getValue()), state.get(TASKS));
+        verify(state, times(2)).compareAndSet(eq(TASKS), any(), any());
+    }
+
+    @Test
+    public void shouldCollectGarbageOfTasksNotInTheTaskList() throws IOException {
+        Protos.TaskInfo task1 = withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task1");
+        Protos.TaskInfo task2 = withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task2");
+        clusterState.addTask(task1);
+        clusterState.addTask(task2);
+        clusterState.update(Protos.TaskStatus.newBuilder(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING)).setTaskId(task1.getTaskId()).build());
+        clusterState.update(Protos.TaskStatus.newBuilder(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING)).setTaskId(task2.getTaskId()).build());
+        assertTrue(clusterState.flush());
+        state.set(TASKS, new ArrayList<>(Collections.singletonList("Task2"))); // Crashed while removing Task1
+        assertTrue(clusterState.load());
+
+        assertEquals(Arrays.asList("FrameworkID/state/Task1", "FrameworkID/history/Task1", TASKS + "/Task1"), clusterState.collectGarbage(10));
+        assertNull(state.get("FrameworkID/state/Task1"));
+        assertNull(state.get("FrameworkID/history/Task1"));
+        assertNull(state.get(TASKS + "/Task1"));
+        assertNotNull(state.get("FrameworkID/state/Task2"));
+        assertEquals(Collections.singletonList("Task2"), state.get("FrameworkID/" + ClusterState.STATUS_INDEX_KEY));
+        assertTrue(clusterState.collectGarbage(10).isEmpty());
+    }
+
+    @Test
+    public void shouldCollectGarbageInBatches() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            clusterState.addTask(withTaskId(ProtoTestUtil.getDefaultTaskInfo(), "Task" + i));
+        }
+        state.set(TASKS, new ArrayList<>());
+        assertTrue(clusterState.load());
+        assertEquals(Arrays.asList(TASKS + "/Task0", TASKS + "/Task1"), clusterState.collectGarbage(2));
+        assertEquals(Collections.singletonList(TASKS + "/Task2"), clusterState.collectGarbage(2));
+        assertEquals(Collections.emptyList(), state.get("FrameworkID/" + ClusterState.STATUS_INDEX_KEY));
+    }
+
+    @Test
+    public void shouldNotCollectGarbageBeforeLoad() throws IOException {
+        state.set("FrameworkID/" + ClusterState.STATUS_INDEX_KEY, new ArrayList<>(Collections.singletonList("Task1")));
+        state.set(TASKS + "/Task1", ProtoTestUtil.getDefaultTaskInfo());
+        assertTrue(clusterState.collectGarbage(10).isEmpty());
+        assertNotNull(state.get(TASKS + "/Task1"));
+    }
+
+    @Test
+    public void shouldRecordStatusTransitions() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        clusterState.addTask(taskInfo);
+        clusterState.update(withState(taskInfo, Protos.TaskState.TASK_STAGING));
+        clusterState.update(withState(taskInfo, Protos.TaskState.TASK_RUNNING));
+        clusterState.update(withState(taskInfo, Protos.TaskState.TASK_RUNNING));
+        assertTrue(clusterState.flush());
+
+        List<TaskStatusHistory.Entry> history = clusterState.getHistory(taskInfo.getTaskId());
+        assertEquals(2, history.size());
+        assertEquals(Protos.TaskState.TASK_STAGING, history.get(0).state);
+        assertEquals(Protos.TaskState.TASK_RUNNING, history.get(1).state);
+
+        assertTrue(clusterState.load());
+        assertEquals(2, clusterState.getHistory(taskInfo.getTaskId()).size());
+        clusterState.removeTask(taskInfo);
+        assertNull(state.get("FrameworkID/" + ClusterState.HISTORY_KEY + "/" + taskInfo.getTaskId().getValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionWhenGetHistoryTaskIDDoesntExist() {
+        clusterState.getHistory(Protos.TaskID.newBuilder().setValue("Unknown").build());
+    }
+
+    @Test
+    public void shouldRecordChangesInTheEventLog() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        clusterState.addTask(taskInfo);
+        clusterState.update(withState(taskInfo, Protos.TaskState.TASK_RUNNING));
+        clusterState.removeTask(taskInfo);
+        List<StateEvent> events = clusterState.getRecentEvents(10);
+        assertEquals(Arrays.asList(StateEvent.Type.TASK_ADDED, StateEvent.Type.STATUS_UPDATED, StateEvent.Type.TASK_REMOVED),
+                events.stream().map(StateEvent::getType).collect(Collectors.toList()));
+        events.forEach(event -> assertEquals(taskInfo.getTaskId().getValue(), event.getTaskId()));
+    }
+
+    private Protos.TaskStatus withState(Protos.TaskInfo taskInfo, Protos.TaskState state) {
+        return Protos.TaskStatus.newBuilder().setTaskId(taskInfo.getTaskId()).setState(state).build();
+    }
 
+    private Protos.TaskInfo withTaskId(Protos.TaskInfo taskInfo, String taskId) {
+        return Protos.TaskInfo.newBuilder(taskInfo).setTaskId(Protos.TaskID.newBuilder().setValue(taskId)).build();
     }
-}
\ No newline at end of file
+}
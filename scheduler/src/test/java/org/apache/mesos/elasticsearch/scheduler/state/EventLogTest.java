@@ -0,0 +1,170 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests
+ */
+public class EventLogTest {
+    private static final String EVENTS = "FrameworkID/" + EventLog.EVENTS_KEY;
+    private static final String SNAPSHOT = "FrameworkID/" + EventLog.SNAPSHOT_KEY;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FrameworkState frameworkState = mock(FrameworkState.class);
+    private SerializableFileState state;
+    private StatePath statePath;
+    private TaskStatusWriter writer;
+    private EventLog eventLog;
+
+    @Before
+    public void before() throws IOException {
+        when(frameworkState.getFrameworkID()).thenReturn(Protos.FrameworkID.newBuilder().setValue("FrameworkID").build());
+        state = new SerializableFileState(folder.getRoot().toPath().resolve("state.log").toString());
+        statePath = new StatePath(state);
+        writer = new TaskStatusWriter(state, statePath, 10);
+        eventLog = newEventLog();
+    }
+
+    @After
+    public void after() throws IOException {
+        state.close();
+    }
+
+    @Test
+    public void shouldReplayEvents() throws IOException {
+        Protos.TaskInfo task1 = withTaskId("Task1");
+        Protos.TaskInfo task2 = withTaskId("Task2");
+        eventLog.append(StateEvent.Type.FRAMEWORK_REGISTERED, frameworkState.getFrameworkID());
+        eventLog.append(StateEvent.Type.TASK_ADDED, task1);
+        eventLog.append(StateEvent.Type.TASK_ADDED, task2);
+        eventLog.append(StateEvent.Type.STATUS_UPDATED, status(task1, Protos.TaskState.TASK_RUNNING));
+        eventLog.append(StateEvent.Type.TASK_REMOVED, task2.getTaskId());
+        assertTrue(writer.flush(1000));
+
+        EventLog.Snapshot replayed = newEventLog().replay();
+        assertEquals(5, replayed.getSequence());
+        assertEquals(frameworkState.getFrameworkID(), replayed.getFrameworkId());
+        assertEquals(Collections.singletonList(task1), new ArrayList<>(replayed.getTasks()));
+        assertEquals(Collections.singletonList(status(task1, Protos.TaskState.TASK_RUNNING)), new ArrayList<>(replayed.getStatuses()));
+    }
+
+    @Test
+    public void shouldSnapshotAndDeleteSegmentsThatAreNoLongerRetained() throws IOException {
+        for (int i = 1; i <= 12; i++) {
+            eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task" + i));
+        }
+        assertTrue(writer.flush(1000));
+        assertEquals(12, ((EventLog.Snapshot) state.get(SNAPSHOT)).getSequence());
+        for (int segment = 0; segment < 4; segment++) {
+            assertNull(state.get(EVENTS + "/" + segment));
+        }
+        assertNotNull(state.get(EVENTS + "/4"));
+        assertNotNull(state.get(EVENTS + "/5"));
+
+        EventLog.Snapshot replayed = newEventLog().replay();
+        assertEquals(12, replayed.getSequence());
+        assertEquals(12, replayed.getTasks().size());
+    }
+
+    @Test
+    public void shouldQueueTheSnapshotInsteadOfWritingItWhileAppending() throws IOException {
+        SerializableState zkState = spy(new TestSerializableStateImpl());
+        TaskStatusWriter zkWriter = mock(TaskStatusWriter.class);
+        EventLog eventLog = new EventLog(zkState, frameworkState, new StatePath(zkState), zkWriter, 2, 4);
+        for (int i = 1; i <= 4; i++) {
+            eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task" + i));
+        }
+        verify(zkWriter).write(eq(SNAPSHOT), any(TaskStatusWriter.Operation.class));
+        verify(zkWriter, never()).flush(anyLong());
+        verify(zkState, never()).set(anyString(), any());
+        verify(zkState, never()).delete(anyString());
+    }
+
+    @Test
+    public void shouldNotRetryReadingTheLogOnEveryEvent() throws IOException {
+        SerializableState unavailable = mock(SerializableState.class);
+        when(unavailable.get(anyString())).thenThrow(new IOException("Zookeeper is down"));
+        EventLog eventLog = new EventLog(unavailable, frameworkState, new StatePath(unavailable), writer, 2, 4);
+        eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task1"));
+        eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task2"));
+        assertTrue(eventLog.getRecentEvents(10).isEmpty());
+        verify(unavailable, times(1)).get(SNAPSHOT);
+    }
+
+    @Test
+    public void shouldContinueTheLogAfterRestart() throws IOException {
+        eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task1"));
+        eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task2"));
+        eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task3"));
+        assertTrue(writer.flush(1000));
+
+        EventLog restarted = newEventLog();
+        restarted.append(StateEvent.Type.TASK_REMOVED, withTaskId("Task1").getTaskId());
+        assertTrue(writer.flush(1000));
+        List<StateEvent> events = ((EventLog.Segment) state.get(EVENTS + "/1")).events;
+        assertEquals(Arrays.asList(3L, 4L), events.stream().map(StateEvent::getSequence).collect(Collectors.toList()));
+        assertEquals(StateEvent.Type.TASK_REMOVED, events.get(1).getType());
+        assertEquals("Task1", events.get(1).getTaskId());
+    }
+
+    @Test
+    public void shouldReturnRecentEvents() {
+        eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task1"));
+        eventLog.append(StateEvent.Type.STATUS_UPDATED, status(withTaskId("Task1"), Protos.TaskState.TASK_RUNNING));
+        List<StateEvent> events = eventLog.getRecentEvents(1);
+        assertEquals(1, events.size());
+        assertEquals(StateEvent.Type.STATUS_UPDATED, events.get(0).getType());
+        assertEquals(2, events.get(0).getSequence());
+    }
+
+    @Test
+    public void shouldDeleteTheLog() throws IOException {
+        for (int i = 1; i <= 5; i++) {
+            eventLog.append(StateEvent.Type.TASK_ADDED, withTaskId("Task" + i));
+        }
+        assertTrue(writer.flush(1000));
+        eventLog.destroy();
+        assertNull(state.get(SNAPSHOT));
+        assertNull(state.get(EVENTS + "/2"));
+        assertEquals(0, newEventLog().replay().getSequence());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldExceptWhenSnapshotIntervalIsNotAMultipleOfTheSegmentSize() {
+        new EventLog(state, frameworkState, statePath, writer, 3, 4);
+    }
+
+    private EventLog newEventLog() {
+        return new EventLog(state, frameworkState, statePath, writer, 2, 4);
+    }
+
+    private Protos.TaskInfo withTaskId(String taskId) {
+        return Protos.TaskInfo.newBuilder(ProtoTestUtil.getDefaultTaskInfo()).setTaskId(Protos.TaskID.newBuilder().setValue(taskId)).build();
+    }
+
+    private Protos.TaskStatus status(Protos.TaskInfo taskInfo, Protos.TaskState state) {
+        return Protos.TaskStatus.newBuilder().setTaskId(taskInfo.getTaskId()).setState(state).build();
+    }
+}
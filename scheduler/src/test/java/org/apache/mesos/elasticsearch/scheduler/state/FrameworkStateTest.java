@@ -35,6 +35,22 @@ public class FrameworkStateTest {
         assertEquals(FRAMEWORK_ID, frameworkID);
     }
 
+    @Test
+    public void shouldCacheFrameworkID() throws IOException {
+        when(state.get(anyString())).thenReturn(FRAMEWORK_ID);
+        frameworkState.getFrameworkID();
+        assertEquals(FRAMEWORK_ID, frameworkState.getFrameworkID());
+        verify(state, times(1)).get(anyString());
+    }
+
+    @Test
+    public void shouldNotReadFrameworkIDAfterRegistration() throws IOException {
+        frameworkState.markRegistered(FRAMEWORK_ID, driver);
+        assertEquals(FRAMEWORK_ID, frameworkState.getFrameworkID());
+        assertEquals(FRAMEWORK_ID, frameworkState.getFrameworkID());
+        verify(state, times(1)).get(anyString()); // Only the existence check when storing the ID
+    }
+
     @Test
     public void testGetEmptyWhenNoFrameworkID() throws IOException {
         Protos.FrameworkID frameworkID = frameworkState.getFrameworkID();
@@ -0,0 +1,144 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class SerializableFileStateTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private SerializableFileState state;
+
+    @Before
+    public void before() throws IOException {
+        path = folder.getRoot().toPath().resolve("state.log");
+        state = open();
+    }
+
+    @After
+    public void after() throws IOException {
+        state.close();
+    }
+
+    @Test
+    public void shouldReturnNullIfKeyDoesNotExist() throws IOException {
+        assertNull(state.get("test"));
+    }
+
+    @Test
+    public void shouldGetWhatWasSet() throws IOException {
+        state.set("test", ProtoTestUtil.getDefaultTaskInfo());
+        state.set("list", new ArrayList<>(Arrays.asList("a", "b")));
+        assertEquals(ProtoTestUtil.getDefaultTaskInfo(), state.get("test"));
+        assertEquals(Arrays.asList("a", "b"), state.get("list"));
+    }
+
+    @Test
+    public void shouldDeleteKey() throws IOException {
+        state.set("test", "value");
+        state.delete("test");
+        assertNull(state.get("test"));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldExceptionIfKeyDoesntExist() throws IOException {
+        state.delete("test");
+    }
+
+    @Test
+    public void shouldRecoverStateAfterRestart() throws IOException {
+        state.set("test", "value1");
+        state.set("test", "value2");
+        state.set("deleted", "value");
+        state.delete("deleted");
+        state.close();
+
+        state = open();
+        assertEquals("value2", state.get("test"));
+        assertNull(state.get("deleted"));
+    }
+
+    @Test
+    public void shouldIgnoreCorruptTail() throws IOException {
+        state.set("test", "value1");
+        final int end = state.size();
+        state.set("test", "value2");
+        state.close();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(end + 12); // Inside the payload of the last record
+            file.write(0xFF);
+        }
+
+        state = open();
+        assertEquals("value1", state.get("test"));
+        state.set("other", "value");
+        assertEquals("value", state.get("other"));
+    }
+
+    @Test
+    public void shouldCompactWhenMostOfTheLogIsGarbage() throws IOException {
+        state.close();
+        state = new SerializableFileState(path, new StateSerializer(), 4096);
+        Protos.TaskStatus status = Protos.TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue("task"))
+                .setState(Protos.TaskState.TASK_RUNNING)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            state.set("status", Protos.TaskStatus.newBuilder(status).setMessage("Update " + i).build());
+        }
+        assertTrue(state.size() < 4096);
+        assertEquals("Update 999", state.<Protos.TaskStatus>get("status").getMessage());
+
+        state.close();
+        state = open();
+        assertEquals("Update 999", state.<Protos.TaskStatus>get("status").getMessage());
+    }
+
+    @Test
+    public void shouldGrowBeyondInitialCapacity() throws IOException {
+        byte[] value = new byte[SerializableFileState.INITIAL_CAPACITY / 4];
+        for (int i = 0; i < 6; i++) {
+            state.set("key" + i, value);
+        }
+        state.close();
+        state = open();
+        for (int i = 0; i < 6; i++) {
+            assertArrayEquals(value, state.get("key" + i));
+        }
+    }
+
+    @Test
+    public void shouldOnlySetIfVersionIsCurrent() throws IOException {
+        Versioned<String> missing = state.getVersioned("test");
+        assertNull(missing.getValue());
+        assertTrue(state.compareAndSet("test", missing, "value1"));
+        assertFalse(state.compareAndSet("test", missing, "value2"));
+
+        Versioned<String> current = state.getVersioned("test");
+        assertEquals("value1", current.getValue());
+        assertTrue(state.compareAndSet("test", current, "value2"));
+        assertEquals("value2", state.get("test"));
+    }
+
+    private SerializableFileState open() throws IOException {
+        return new SerializableFileState(path.toString());
+    }
+}
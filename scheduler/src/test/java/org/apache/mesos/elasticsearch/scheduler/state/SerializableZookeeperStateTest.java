@@ -10,12 +10,15 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.nio.charset.Charset;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -112,6 +115,22 @@ public class SerializableZookeeperStateTest {
         serializableState.get("test");
     }
 
+    @Test
+    public void shouldMigrateLegacyEntries() throws IOException {
+        Variable migrated = mock(Variable.class);
+        when(variable.mutate(any(byte[].class))).thenReturn(migrated);
+        assertEquals(SERIALIZABLE_OBJECT, serializableState.get("test"));
+        verify(variable, times(1)).mutate(new StateSerializer().serialize(SERIALIZABLE_OBJECT));
+        verify(state, times(1)).store(migrated);
+    }
+
+    @Test
+    public void shouldNotMigrateCurrentEntries() throws IOException {
+        when(variable.value()).thenReturn(new StateSerializer().serialize(SERIALIZABLE_OBJECT));
+        assertEquals(SERIALIZABLE_OBJECT, serializableState.get("test"));
+        verify(state, never()).store(any(Variable.class));
+    }
+
     @Test
     public void shouldDeleteKey() throws IOException {
         serializableState.delete("test");
@@ -125,6 +144,56 @@ public class SerializableZookeeperStateTest {
         serializableState.delete("test");
     }
 
+    @Test
+    public void shouldIssueAllFetchesBeforeWaiting() throws Exception {
+        CompletableFuture<Variable> pending = new CompletableFuture<>();
+        when(state.fetch(anyString())).thenReturn(pending);
+        CompletableFuture<Map<String, String>> values = serializableState.getAll(Arrays.asList("test1", "test2", "test1"));
+        verify(state, times(1)).fetch("test1");
+        verify(state, times(1)).fetch("test2");
+        assertFalse(values.isDone());
+
+        pending.complete(variable);
+        assertEquals(Arrays.asList("test1", "test2"), new ArrayList<>(values.get(5, TimeUnit.SECONDS).keySet()));
+        assertEquals(SERIALIZABLE_OBJECT, values.get().get("test2"));
+    }
+
+    @Test
+    public void shouldCompleteExceptionallyWhenAsyncGetFails() throws Exception {
+        when(variable.value()).thenReturn("Invalid stream of bytes".getBytes(Charset.forName("UTF-8")));
+        try {
+            serializableState.getAsync("test").get(5, TimeUnit.SECONDS);
+            fail("Expected an exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+
+    @Test
+    public void shouldRecordEntrySizes() throws IOException {
+        StateSizeStats sizeStats = new StateSizeStats();
+        StateSerializer serializer = new StateSerializer();
+        serializableState = new SerializableZookeeperState(state, serializer, sizeStats);
+        serializableState.set("test", SERIALIZABLE_OBJECT);
+        byte[] bytes = serializer.serialize(SERIALIZABLE_OBJECT);
+        assertEquals(bytes.length, sizeStats.getSnapshot().keys.get("test").storedBytes);
+        assertEquals(serializer.rawSize(bytes), sizeStats.getSnapshot().keys.get("test").rawBytes);
+        assertEquals(bytes.length, sizeStats.getSnapshot().storedBytes);
+
+        serializableState.delete("test");
+        assertTrue(sizeStats.getSnapshot().keys.isEmpty());
+    }
+
+    @Test
+    public void shouldFailCompareAndSetWhenVersionIsStale() throws IOException {
+        when(variable.value()).thenReturn(new StateSerializer().serialize(SERIALIZABLE_OBJECT));
+        Versioned<String> versioned = serializableState.getVersioned("test");
+        assertEquals(SERIALIZABLE_OBJECT, versioned.getValue());
+        when(state.store(any(Variable.class))).thenReturn(CompletableFuture.completedFuture(null));
+        assertFalse(serializableState.compareAndSet("test", versioned, "New value"));
+        verify(variable).mutate(new StateSerializer().serialize("New value"));
+    }
 
     // Data must be serialized/deserialized in exactly the same way to be readable.
     private byte[] writeVariable(Object object) throws IOException {
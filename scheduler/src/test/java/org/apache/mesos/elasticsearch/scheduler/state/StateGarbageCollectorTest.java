@@ -0,0 +1,60 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests
+ */
+public class StateGarbageCollectorTest {
+    private final ClusterState clusterState = mock(ClusterState.class);
+    private final StateGarbageCollector garbageCollector = new StateGarbageCollector(clusterState, 5, 1000);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldExceptWithNullClusterState() {
+        new StateGarbageCollector(null);
+    }
+
+    @Test
+    public void shouldCollectOneBatchPerRun() throws IOException {
+        when(clusterState.collectGarbage(5)).thenReturn(Arrays.asList("a", "b")).thenReturn(Collections.singletonList("c"));
+        garbageCollector.run();
+        garbageCollector.run();
+        verify(clusterState, times(2)).collectGarbage(5);
+        StateGarbageCollector.Report report = garbageCollector.getReport();
+        assertEquals(2, report.runs);
+        assertEquals(3, report.keysRemoved);
+        assertEquals(Arrays.asList("c", "b", "a"), report.recentlyRemoved);
+        assertNull(report.lastError);
+    }
+
+    @Test
+    public void shouldOnlyReportTheMostRecentKeys() throws IOException {
+        String[] keys = new String[StateGarbageCollector.MAX_REPORTED_KEYS + 1];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+        }
+        when(clusterState.collectGarbage(5)).thenReturn(Arrays.asList(keys));
+        garbageCollector.run();
+        StateGarbageCollector.Report report = garbageCollector.getReport();
+        assertEquals(keys.length, report.keysRemoved);
+        assertEquals(StateGarbageCollector.MAX_REPORTED_KEYS, report.recentlyRemoved.size());
+        assertEquals(keys[keys.length - 1], report.recentlyRemoved.get(0));
+    }
+
+    @Test
+    public void shouldSurviveErrors() throws IOException {
+        when(clusterState.collectGarbage(5)).thenThrow(new IOException("Test exception"));
+        garbageCollector.run();
+        StateGarbageCollector.Report report = garbageCollector.getReport();
+        assertEquals(1, report.runs);
+        assertEquals(0, report.keysRemoved);
+        assertTrue(report.lastError.contains("Test exception"));
+    }
+}
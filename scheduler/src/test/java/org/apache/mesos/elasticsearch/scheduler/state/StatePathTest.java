@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.*;
 
 /**
  * Tests State class.
@@ -34,6 +35,30 @@ public class StatePathTest {
         statePath.mkdir("/mesos/");
     }
 
+    @Test
+    public void shouldOnlyCheckPathsOnce() throws IOException {
+        SerializableState state = spy(new TestSerializableStateImpl());
+        StatePath statePath = new StatePath(state);
+        statePath.mkdir("mesos/framework/task");
+        statePath.mkdir("mesos/framework/task");
+        statePath.mkdir("mesos/framework/task2");
+        verify(state, times(1)).get("mesos");
+        verify(state, times(1)).get("mesos/framework");
+        verify(state, times(1)).get("mesos/framework/task");
+    }
+
+    @Test
+    public void shouldForgetRemovedPaths() throws IOException {
+        SerializableState state = spy(new TestSerializableStateImpl());
+        StatePath statePath = new StatePath(state);
+        statePath.mkdir("mesos/framework");
+        state.set("mesos/framework", "data");
+        statePath.rm("mesos/framework");
+        statePath.mkdir("mesos/framework");
+        verify(state, times(1)).get("mesos");
+        verify(state, times(2)).get("mesos/framework");
+    }
+
     @Test
     public void testMkDirOk() throws InterruptedException, ExecutionException, ClassNotFoundException, IOException {
         statePath.mkdir("/mesos");
@@ -0,0 +1,119 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class StateSerializerTest {
+    private final StateSerializer serializer = new StateSerializer();
+
+    @Test
+    public void shouldRoundTripTaskInfoList() throws IOException, ClassNotFoundException {
+        List<Protos.TaskInfo> taskInfos = Arrays.asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getTaskInfoExternalVolume(1));
+        byte[] bytes = serializer.serialize(new ArrayList<>(taskInfos));
+        assertEquals(ProtobufStateCodec.ID, bytes[3]);
+        assertEquals(taskInfos, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void shouldRoundTripEmptyList() throws IOException, ClassNotFoundException {
+        assertEquals(new ArrayList<>(), serializer.deserialize(serializer.serialize(new ArrayList<>())));
+    }
+
+    @Test
+    public void shouldRoundTripTaskStatus() throws IOException, ClassNotFoundException {
+        Protos.TaskStatus status = ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING);
+        assertEquals(status, serializer.deserialize(serializer.serialize(status)));
+    }
+
+    @Test
+    public void shouldFallBackToJavaSerialization() throws IOException, ClassNotFoundException {
+        byte[] bytes = serializer.serialize("Serializable object");
+        assertEquals(JavaSerializationStateCodec.ID, bytes[3]);
+        assertEquals("Serializable object", serializer.deserialize(bytes));
+        assertNull(serializer.deserialize(serializer.serialize(null)));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJavaSerialization() throws IOException, ClassNotFoundException {
+        ArrayList<Protos.TaskInfo> taskInfos = new ArrayList<>(Arrays.asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getTaskInfoExternalVolume(1)));
+        assertTrue(serializer.serialize(taskInfos).length < javaSerialize(taskInfos).length);
+    }
+
+    @Test
+    public void shouldReadLegacyJavaSerializedEntries() throws IOException, ClassNotFoundException {
+        ArrayList<Protos.TaskInfo> taskInfos = new ArrayList<>(Arrays.asList(ProtoTestUtil.getDefaultTaskInfo()));
+        byte[] legacy = javaSerialize(taskInfos);
+        assertTrue(serializer.isLegacy(legacy));
+        assertFalse(serializer.isLegacy(serializer.serialize(taskInfos)));
+        assertEquals(taskInfos, serializer.deserialize(legacy));
+    }
+
+    @Test
+    public void shouldCompressLargeEntries() throws IOException, ClassNotFoundException {
+        ArrayList<Protos.TaskInfo> taskInfos = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            taskInfos.add(ProtoTestUtil.getTaskInfoExternalVolume(i));
+        }
+        byte[] compressed = serializer.serialize(taskInfos);
+        byte[] uncompressed = new StateSerializer(Integer.MAX_VALUE).serialize(taskInfos);
+        assertEquals(StateSerializer.FLAG_COMPRESSED, compressed[4]);
+        assertEquals(0, uncompressed[4]);
+        assertTrue(compressed.length < uncompressed.length);
+        assertEquals(uncompressed.length - 5, serializer.rawSize(compressed));
+        assertEquals(taskInfos, serializer.deserialize(compressed));
+    }
+
+    @Test
+    public void shouldNotCompressSmallEntries() throws IOException, ClassNotFoundException {
+        byte[] bytes = serializer.serialize(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING));
+        assertEquals(0, bytes[4]);
+        assertEquals(bytes.length - 5, serializer.rawSize(bytes));
+    }
+
+    @Test
+    public void shouldReadVersionOneEntries() throws IOException, ClassNotFoundException {
+        Protos.TaskStatus status = ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeShort(StateSerializer.MAGIC);
+            out.writeByte(1);
+            out.writeByte(ProtobufStateCodec.ID);
+            new ProtobufStateCodec().encode(status, out);
+        }
+        assertEquals(status, serializer.deserialize(bos.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldExceptOnUnknownCodec() throws IOException, ClassNotFoundException {
+        byte[] bytes = serializer.serialize("Serializable object");
+        bytes[3] = 42;
+        serializer.deserialize(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldExceptOnInvalidHeader() throws IOException, ClassNotFoundException {
+        serializer.deserialize(new byte[]{1, 2, 3, 4, 5});
+    }
+
+    private byte[] javaSerialize(Object object) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(object);
+        }
+        return bos.toByteArray();
+    }
+}
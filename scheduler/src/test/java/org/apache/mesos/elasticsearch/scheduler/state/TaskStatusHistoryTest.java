@@ -0,0 +1,91 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class TaskStatusHistoryTest {
+    @Test
+    public void shouldOnlyRecordTransitions() {
+        TaskStatusHistory history = new TaskStatusHistory();
+        assertTrue(history.record(status(Protos.TaskState.TASK_RUNNING, 1.0)));
+        assertFalse(history.record(status(Protos.TaskState.TASK_RUNNING, 2.0)));
+        assertTrue(history.record(Protos.TaskStatus.newBuilder(status(Protos.TaskState.TASK_RUNNING, 3.0)).setHealthy(false).build()));
+        assertTrue(history.record(Protos.TaskStatus.newBuilder(status(Protos.TaskState.TASK_RUNNING, 4.0)).setHealthy(true).build()));
+        assertEquals(3, history.size());
+        List<TaskStatusHistory.Entry> entries = history.getEntries();
+        assertNull(entries.get(0).healthy);
+        assertEquals(1000L, entries.get(0).timestamp);
+        assertFalse(entries.get(1).healthy);
+        assertTrue(entries.get(2).healthy);
+    }
+
+    @Test
+    public void shouldKeepOnlyTheMostRecentEntries() {
+        TaskStatusHistory history = new TaskStatusHistory(3);
+        for (int i = 0; i < 5; i++) {
+            history.record(status(i % 2 == 0 ? Protos.TaskState.TASK_RUNNING : Protos.TaskState.TASK_STAGING, i));
+        }
+        List<TaskStatusHistory.Entry> entries = history.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals(2000L, entries.get(0).timestamp);
+        assertEquals(3000L, entries.get(1).timestamp);
+        assertEquals(4000L, entries.get(2).timestamp);
+        assertEquals(Protos.TaskState.TASK_RUNNING, entries.get(2).state);
+    }
+
+    @Test
+    public void shouldRecordReasons() {
+        TaskStatusHistory history = new TaskStatusHistory();
+        history.record(Protos.TaskStatus.newBuilder(status(Protos.TaskState.TASK_FAILED, 1.0)).setReason(Protos.TaskStatus.Reason.REASON_EXECUTOR_TERMINATED).build());
+        assertEquals(Protos.TaskStatus.Reason.REASON_EXECUTOR_TERMINATED, history.getEntries().get(0).reason);
+    }
+
+    @Test
+    public void shouldNotBeChangedByCopy() {
+        TaskStatusHistory history = new TaskStatusHistory(2);
+        history.record(status(Protos.TaskState.TASK_STAGING, 1.0));
+        TaskStatusHistory copy = history.copy();
+        history.record(status(Protos.TaskState.TASK_RUNNING, 2.0));
+        assertEquals(1, copy.size());
+        assertEquals(2, copy.getCapacity());
+    }
+
+    @Test
+    public void shouldRoundTripThroughTheSerializer() throws IOException, ClassNotFoundException {
+        TaskStatusHistory history = new TaskStatusHistory(4);
+        for (int i = 0; i < 6; i++) {
+            history.record(Protos.TaskStatus.newBuilder(status(Protos.TaskState.TASK_RUNNING, i)).setHealthy(i % 2 == 0).build());
+        }
+        StateSerializer serializer = new StateSerializer();
+        byte[] bytes = serializer.serialize(history);
+        assertEquals(TaskStatusHistoryCodec.ID, bytes[3]);
+        TaskStatusHistory read = (TaskStatusHistory) serializer.deserialize(bytes);
+        assertEquals(history.getCapacity(), read.getCapacity());
+        assertEquals(history.size(), read.size());
+        for (int i = 0; i < history.size(); i++) {
+            assertEquals(history.getEntries().get(i).timestamp, read.getEntries().get(i).timestamp);
+            assertEquals(history.getEntries().get(i).healthy, read.getEntries().get(i).healthy);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldExceptOnInvalidCapacity() {
+        new TaskStatusHistory(0);
+    }
+
+    private Protos.TaskStatus status(Protos.TaskState state, double timestamp) {
+        return Protos.TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue("task"))
+                .setState(state)
+                .setTimestamp(timestamp)
+                .build();
+    }
+}
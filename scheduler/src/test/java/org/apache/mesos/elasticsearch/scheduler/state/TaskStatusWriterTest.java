@@ -0,0 +1,84 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests
+ */
+public class TaskStatusWriterTest {
+    private static final String KEY = "FrameworkID/state/Task1";
+
+    private SerializableState state = spy(new TestSerializableStateImpl());
+
+    private TaskStatusWriter writer = new TaskStatusWriter(state, new StatePath(state), 10000);
+
+    @Test
+    public void shouldWriteStatusOnFlush() throws IOException {
+        writer.write(KEY, status(Protos.TaskState.TASK_RUNNING));
+        assertTrue(writer.flush(5000));
+        assertEquals(status(Protos.TaskState.TASK_RUNNING), state.get(KEY));
+    }
+
+    @Test
+    public void shouldWriteStatusWithinFlushDelay() throws Exception {
+        TaskStatusWriter writer = new TaskStatusWriter(state, new StatePath(state), 10);
+        writer.write(KEY, status(Protos.TaskState.TASK_RUNNING));
+        verify(state, timeout(5000)).set(KEY, status(Protos.TaskState.TASK_RUNNING));
+    }
+
+    @Test
+    public void shouldCoalesceStatusesForTheSameTask() throws IOException {
+        writer.write(KEY, status(Protos.TaskState.TASK_STAGING));
+        writer.write(KEY, status(Protos.TaskState.TASK_STARTING));
+        writer.write(KEY, status(Protos.TaskState.TASK_RUNNING));
+        assertTrue(writer.flush(5000));
+        verify(state, never()).set(KEY, status(Protos.TaskState.TASK_STAGING));
+        verify(state, never()).set(KEY, status(Protos.TaskState.TASK_STARTING));
+        verify(state).set(KEY, status(Protos.TaskState.TASK_RUNNING));
+
+        TaskStatusWriter.Metrics metrics = writer.getMetrics();
+        assertEquals(1, metrics.statusesCommitted);
+        assertEquals(2, metrics.statusesCoalesced);
+        assertEquals(0, metrics.queueDepth);
+    }
+
+    @Test
+    public void shouldRetryFailedWrites() throws IOException {
+        doThrow(new IOException("Test exception")).doCallRealMethod().when(state).set(eq(KEY), any());
+        writer.write(KEY, status(Protos.TaskState.TASK_RUNNING));
+        assertTrue(writer.flush(5000));
+        assertEquals(status(Protos.TaskState.TASK_RUNNING), state.get(KEY));
+        assertEquals(1, writer.getMetrics().commitFailures);
+    }
+
+    @Test
+    public void shouldNotWriteDiscardedStatus() throws IOException {
+        writer.write(KEY, status(Protos.TaskState.TASK_RUNNING));
+        writer.discard(KEY);
+        assertTrue(writer.flush(5000));
+        verify(state, never()).set(KEY, status(Protos.TaskState.TASK_RUNNING));
+    }
+
+    @Test
+    public void shouldTimeoutFlushWhenStateIsUnavailable() throws IOException {
+        doThrow(new IOException("Test exception")).when(state).set(eq(KEY), any());
+        writer.write(KEY, status(Protos.TaskState.TASK_RUNNING));
+        assertFalse(writer.flush(100));
+        assertEquals(1, writer.getMetrics().queueDepth);
+    }
+
+    private Protos.TaskStatus status(Protos.TaskState taskState) {
+        return Protos.TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue("Task1"))
+                .setState(taskState)
+                .build();
+    }
+}
@@ -3,33 +3,64 @@ package org.apache.mesos.elasticsearch.scheduler.state;
 import java.io.IOException;
 import java.io.NotSerializableException;
 import java.security.InvalidParameterException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Dummy storage class to replace zookeeper.
+ * Dummy storage class to replace zookeeper. Synchronized, since the TaskStatusWriter thread writes to it as well.
  */
 @SuppressWarnings("unchecked")
 public class TestSerializableStateImpl implements SerializableState {
     Map<String, Object> map = new HashMap<>();
+    Map<String, Integer> versions = new HashMap<>();
 
     @Override
-    public <T> T get(String key) throws IOException {
+    public synchronized <T> T get(String key) throws IOException {
         return (T) map.getOrDefault(key, null);
     }
 
     @Override
-    public <T> void set(String key, T object) throws IOException {
+    public synchronized <T> void set(String key, T object) throws IOException {
         if (key.endsWith("/") && !key.equals("/")) {
             throw new NotSerializableException("Trailing slashes are not allowed");
         }
         map.put(key, object);
+        versions.merge(key, 1, Integer::sum);
     }
 
     @Override
-    public void delete(String key) throws IOException {
+    public synchronized void delete(String key) throws IOException {
         if (map.remove(key) == null) {
             throw new InvalidParameterException("Unable to delete key.");
         }
+        versions.merge(key, 1, Integer::sum);
     }
-}
\ No newline at end of file
+
+    @Override
+    public synchronized <T> Versioned<T> getVersioned(String key) throws IOException {
+        return new Versioned<>(get(key), versions.getOrDefault(key, 0));
+    }
+
+    @Override
+    public synchronized <T> boolean compareAndSet(String key, Versioned<T> expected, T object) throws IOException {
+        if (!expected.getVersion().equals(versions.getOrDefault(key, 0))) {
+            return false;
+        }
+        set(key, object);
+        return true;
+    }
+
+    // Mockito 1.x cannot call the real default methods of a spy, so they are overridden here.
+
+    @Override
+    public <T> CompletableFuture<T> getAsync(String key) {
+        return SerializableState.super.getAsync(key);
+    }
+
+    @Override
+    public <T> CompletableFuture<Map<String, T>> getAll(Collection<String> keys) {
+        return SerializableState.super.getAll(keys);
+    }
+}